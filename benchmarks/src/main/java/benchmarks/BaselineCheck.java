@@ -0,0 +1,126 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Compares JMH JSON results with a baseline and fails if a result is more
+ * than a given percentage worse. Higher is better for throughput results,
+ * lower is better for all time-based modes.
+ * <br>
+ * Usage: {@code BaselineCheck result.json baseline.json thresholdPercent}
+ */
+public final class BaselineCheck {
+
+    private BaselineCheck() {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: BaselineCheck result.json "
+                    + "baseline.json thresholdPercent");
+            System.exit(2);
+        }
+
+        if (!Files.exists(Paths.get(args[1]))) {
+            System.err.println("No baseline found at " + args[1]
+                    + ". Copy a result file there to create one.");
+            System.exit(2);
+        }
+
+        Map<String, JSONObject> results = read(args[0]);
+        Map<String, JSONObject> baseline = read(args[1]);
+        double threshold = Double.parseDouble(args[2]);
+        int regressions = 0;
+
+        for (Map.Entry<String, JSONObject> e : baseline.entrySet()) {
+            JSONObject result = results.get(e.getKey());
+
+            if (result == null) {
+                System.out.println("MISSING     " + e.getKey());
+                continue;
+            }
+
+            double base = score(e.getValue());
+            double current = score(result);
+            boolean higherIsBetter = "thrpt".equals(result.getString("mode"));
+            double change = (base == 0) ? 0 : (current - base) / base * 100;
+            double worse = higherIsBetter ? -change : change;
+            boolean failed = worse > threshold;
+
+            if (failed) {
+                regressions++;
+            }
+
+            System.out.printf("%-11s %s: %.3f -> %.3f %s (%+.1f%%)%n",
+                    failed ? "REGRESSION" : "OK", e.getKey(), base, current,
+                    result.getJSONObject("primaryMetric")
+                            .getString("scoreUnit"), change);
+        }
+
+        if (regressions > 0) {
+            System.out.println(regressions + " result(s) more than "
+                    + threshold + "% worse than the baseline");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Read a JMH JSON result file.
+     *
+     * @param path the file path
+     * @return the results by benchmark, mode and parameters
+     * @throws IOException if the file could not be read
+     */
+    private static Map<String, JSONObject> read(String path)
+            throws IOException {
+        Map<String, JSONObject> result = new TreeMap<>();
+        JSONArray array = new JSONArray(new String(
+                Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8));
+
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject obj = array.getJSONObject(i);
+            result.put(key(obj), obj);
+        }
+
+        return result;
+    }
+
+    /**
+     * Build the key of a result from its benchmark, mode and parameters.
+     *
+     * @param obj the result
+     * @return the key
+     */
+    private static String key(JSONObject obj) {
+        StringBuilder sb = new StringBuilder(obj.getString("benchmark"))
+                .append(" [").append(obj.getString("mode")).append(']');
+        JSONObject params = obj.optJSONObject("params");
+
+        if (params != null) {
+            for (String name : new TreeSet<>(params.keySet())) {
+                sb.append(' ').append(name).append('=')
+                        .append(params.get(name));
+            }
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Get the primary score of a result.
+     *
+     * @param obj the result
+     * @return the score
+     */
+    private static double score(JSONObject obj) {
+        return obj.getJSONObject("primaryMetric").getDouble("score");
+    }
+}
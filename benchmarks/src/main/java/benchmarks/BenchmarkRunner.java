@@ -0,0 +1,47 @@
+package benchmarks;
+
+import java.util.Arrays;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler (allocation rate) and saves the
+ * results as JSON, so that runs can be compared.
+ * <br>
+ * Usage: {@code java -jar benchmarks.jar [result.json] [JMH options]},
+ * e. g. {@code java -jar benchmarks.jar r.json -p size=1000,10000 Loading}.
+ */
+public final class BenchmarkRunner {
+
+    /** The default result file. */
+    private static final String DEFAULT_RESULT = "jmh-result.json";
+
+    private BenchmarkRunner() {}
+
+    public static void main(String[] args)
+            throws RunnerException, CommandLineOptionException {
+        String result = DEFAULT_RESULT;
+        String[] jmhArgs = args;
+
+        if ((args.length > 0) && args[0].endsWith(".json")) {
+            result = args[0];
+            jmhArgs = Arrays.copyOfRange(args, 1, args.length);
+        }
+
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(jmhArgs))
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(result)
+                .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,164 @@
+package benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * A class that generates clients and tariffs files of a given size for the
+ * benchmarks. The data is random but reproducible, and each file is only
+ * generated once and then reused from the temporary directory.
+ */
+public final class DataGenerator {
+
+    /** The directory the generated files are stored in. */
+    private static final File DIR = new File(
+            System.getProperty("java.io.tmpdir"), "mobilecompany-benchmarks");
+
+    /** The seed of the random data. */
+    private static final long SEED = 42;
+
+    /** The number of tariffs the generated clients refer to. */
+    private static final int CLIENT_TARIFFS = 100;
+
+    private DataGenerator() {}
+
+    /**
+     * Get a clients file with a given number of entries.
+     *
+     * @param size the number of clients
+     * @return the clients file
+     * @throws IOException if the file could not be written
+     */
+    public static synchronized File clients(int size) throws IOException {
+        File file = new File(DIR, "clients-" + size + ".txt");
+
+        if (file.exists()) {
+            return file;
+        }
+
+        Random rnd = new Random(SEED);
+        File tmp = temporary(file);
+
+        try (Writer w = writer(tmp)) {
+            w.write("For correct parsing there should be no line-breaks "
+                    + "within entries.\n");
+
+            for (int id = 1; id <= size; id++) {
+                w.write("{\"name\" : \"Name" + rnd.nextInt(10000)
+                        + "\", \"surname\" : \"Surname" + rnd.nextInt(100000)
+                        + "\", \"id\" : " + id
+                        + ", \"tariff_id\" : "
+                        + (rnd.nextInt(CLIENT_TARIFFS) + 1)
+                        + " }\n");
+            }
+        }
+
+        return publish(tmp, file);
+    }
+
+    /**
+     * Get a tariffs file with a given number of entries, half of them
+     * prepaid and half contract tariffs.
+     *
+     * @param size the number of tariffs
+     * @return the tariffs file
+     * @throws IOException if the file could not be written
+     */
+    public static synchronized File tariffs(int size) throws IOException {
+        File file = new File(DIR, "tariffs-" + size + ".txt");
+
+        if (file.exists()) {
+            return file;
+        }
+
+        Random rnd = new Random(SEED);
+        File tmp = temporary(file);
+
+        try (Writer w = writer(tmp)) {
+            for (int id = 1; id <= size; id++) {
+                boolean prepaid = rnd.nextBoolean();
+
+                w.write("{\n"
+                        + "\t\"id\" : " + id + ",\n"
+                        + "\t\"type\" : \"" + (prepaid ? "prepaid" : "contract")
+                        + "\",\n"
+                        + "\t\"name\" : \"Tariff " + id + "\",\n"
+                        + "\t\"monthly\" : " + money(rnd, 60) + ",\n"
+                        + "\t\"innerCalls\" : " + money(rnd, 0.5) + ",\n"
+                        + "\t\"outerCalls\" : " + money(rnd, 0.5) + ",\n"
+                        + "\t\"landlines\" : " + money(rnd, 0.5) + ",\n"
+                        + "\t\"sms\" : " + money(rnd, 0.2) + ",\n"
+                        + "\t\"internet\" : " + money(rnd, 0.3) + ",\n"
+                        + "\t\"smsPackage\" : " + rnd.nextInt(500) + ",\n"
+                        + "\t\"dataPackage\" : " + rnd.nextInt(5000) + ",\n"
+                        + (prepaid
+                                ? "\t\"activation\" : " + money(rnd, 10) + "\n"
+                                : "\t\"abroadCalls\" : " + money(rnd, 3)
+                                        + ",\n\t\"dailyMinutes\" : "
+                                        + rnd.nextInt(120) + "\n")
+                        + "}\n\n");
+            }
+        }
+
+        return publish(tmp, file);
+    }
+
+    /**
+     * Generate a random amount of money.
+     *
+     * @param rnd the random generator
+     * @param max the upper boundary
+     * @return the amount with two decimal places
+     */
+    private static String money(Random rnd, double max) {
+        return String.format(Locale.ROOT, "%.2f", rnd.nextDouble() * max);
+    }
+
+    /**
+     * Get a temporary file next to the file to be generated.
+     *
+     * @param file the file to be generated
+     * @return the temporary file
+     * @throws IOException if the directory could not be created
+     */
+    private static File temporary(File file) throws IOException {
+        Files.createDirectories(DIR.toPath());
+        return new File(DIR, file.getName() + ".tmp");
+    }
+
+    /**
+     * Rename a completely written temporary file to its final name.
+     *
+     * @param tmp the temporary file
+     * @param file the final file
+     * @return the final file
+     * @throws IOException if the file could not be renamed
+     */
+    private static File publish(File tmp, File file) throws IOException {
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Could not create " + file);
+        }
+
+        return file;
+    }
+
+    /**
+     * Open a buffered UTF-8 writer.
+     *
+     * @param file the file
+     * @return the writer
+     * @throws IOException if the file could not be opened
+     */
+    private static Writer writer(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(
+                Files.newOutputStream(file.toPath()),
+                StandardCharsets.UTF_8), 1 << 16);
+    }
+}
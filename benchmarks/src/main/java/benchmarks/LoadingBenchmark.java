@@ -0,0 +1,117 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mobilecompany.MobileCompany;
+
+/**
+ * Benchmarks of loading the clients and tariffs files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LoadingBenchmark {
+
+    /** The number of records in the loaded file. */
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    /** The generated clients file. */
+    private File clientsFile;
+
+    /** The generated tariffs file. */
+    private File tariffsFile;
+
+    /**
+     * Generate the data files.
+     *
+     * @throws IOException if the files could not be written
+     */
+    @Setup
+    public void setUp() throws IOException {
+        clientsFile = DataGenerator.clients(size);
+        tariffsFile = DataGenerator.tariffs(size);
+    }
+
+    /**
+     * Load the clients file.
+     *
+     * @param mapping whether the file is memory-mapped
+     * @return the loaded company
+     */
+    @Benchmark
+    public MobileCompany loadClients(Mapping mapping) {
+        MobileCompany company = newCompany();
+        company.setMemoryMapped(mapping.memoryMapped);
+        company.loadClients();
+        return company;
+    }
+
+    /**
+     * Load the clients file in parallel. The parallel loader reads ranges
+     * of the file in its own way, whether the files are memory-mapped or
+     * not, so it is run once for both.
+     *
+     * @return the loaded company
+     */
+    @Benchmark
+    public MobileCompany loadClientsInParallel() {
+        MobileCompany company = newCompany();
+        company.loadClientsInParallel();
+        return company;
+    }
+
+    /**
+     * Load the tariffs file.
+     *
+     * @param mapping whether the file is memory-mapped
+     * @return the loaded company
+     */
+    @Benchmark
+    public MobileCompany loadTariffs(Mapping mapping) {
+        MobileCompany company = newCompany();
+        company.setMemoryMapped(mapping.memoryMapped);
+        company.loadTariffs();
+        return company;
+    }
+
+    /**
+     * Create a company reading the generated files.
+     *
+     * @return the company
+     */
+    private MobileCompany newCompany() {
+        MobileCompany company = new MobileCompany("Benchmark");
+        company.setClientsFile(clientsFile);
+        company.setTariffsFile(tariffsFile);
+        return company;
+    }
+
+    /**
+     * The way the files are read by the loaders which have a choice.
+     */
+    @State(Scope.Benchmark)
+    public static class Mapping {
+
+        /** Whether the files are memory-mapped. */
+        @Param({"false", "true"})
+        public boolean memoryMapped;
+    }
+}
@@ -0,0 +1,102 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mobilecompany.MobileCompany;
+import mobilecompany.RatingEngine;
+
+/**
+ * Benchmarks of rating usage events. The score is in events per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RatingBenchmark {
+
+    /** The number of events rated per invocation. */
+    private static final int EVENTS = 1 << 20;
+
+    /** The number of tariffs. */
+    private static final int TARIFFS = 1000;
+
+    /** The number of clients. */
+    @Param({"10000", "1000000"})
+    public int clients;
+
+    /** The rating engine. */
+    private RatingEngine engine;
+
+    /** The client ids of the events. */
+    private int[] clientIds;
+
+    /** The types of the events. */
+    private int[] types;
+
+    /** The quantities of the events. */
+    private double[] quantities;
+
+    /** The times of the events. */
+    private long[] timestamps;
+
+    /**
+     * Load the clients and tariffs and generate the events, which are
+     * spread over one month.
+     *
+     * @throws IOException if the data files could not be written
+     */
+    @Setup
+    public void setUp() throws IOException {
+        MobileCompany company = new MobileCompany("Benchmark");
+        company.setClientsFile(DataGenerator.clients(clients));
+        company.setTariffsFile(DataGenerator.tariffs(TARIFFS));
+        company.loadClients();
+        company.loadTariffs();
+        engine = company.createRatingEngine();
+
+        Random rnd = new Random(1);
+        long start = TimeUnit.DAYS.toMillis(19723);
+        long step = TimeUnit.DAYS.toMillis(30) / EVENTS;
+
+        clientIds = new int[EVENTS];
+        types = new int[EVENTS];
+        quantities = new double[EVENTS];
+        timestamps = new long[EVENTS];
+
+        for (int i = 0; i < EVENTS; i++) {
+            clientIds[i] = rnd.nextInt(clients) + 1;
+            types[i] = rnd.nextInt(RatingEngine.DATA + 1);
+            quantities[i] = rnd.nextInt(20) + 1;
+            timestamps[i] = start + i * step;
+        }
+    }
+
+    /**
+     * Rate a batch of events.
+     *
+     * @return the total charge
+     */
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public double rateEvents() {
+        return engine.rate(clientIds, types, quantities, timestamps, null,
+                0, EVENTS);
+    }
+}
@@ -0,0 +1,139 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import mobilecompany.ConsoleHelper;
+import mobilecompany.MobileCompany;
+import tariffs.Tariff;
+
+/**
+ * Benchmarks of filtering and sorting tariffs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TariffsBenchmark {
+
+    /** The filtered field. */
+    private static final String FIELD = "monthly";
+
+    /** The number of tariffs. */
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    /** The company with loaded tariffs. */
+    private MobileCompany company;
+
+    /** All loaded tariffs. */
+    private List<Tariff> tariffs;
+
+    /** The console filter predicate. */
+    private Predicate<Tariff> predicate;
+
+    /**
+     * Load the tariffs. The query cache is disabled, so the filters are
+     * evaluated on every call instead of being answered from the cache.
+     *
+     * @throws IOException if the data file could not be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        company = new MobileCompany("Benchmark");
+        company.setTariffsFile(DataGenerator.tariffs(size));
+        company.setQueryCacheLimits(0, 0);
+        company.loadTariffs();
+        tariffs = company.filterTariffs(t -> true);
+        predicate = ConsoleHelper.getInstance().getPredicate(FIELD, 5, 20);
+    }
+
+    /**
+     * Filter all tariffs with the console predicate.
+     *
+     * @return the filtered tariffs
+     */
+    @Benchmark
+    public List<Tariff> filterTariffsByPredicate() {
+        return company.filterTariffs(predicate);
+    }
+
+    /**
+     * Filter all tariffs by a field range, without the query cache.
+     *
+     * @return the filtered tariffs
+     */
+    @Benchmark
+    public List<Tariff> filterTariffsByField() {
+        return company.filterTariffs(FIELD, 5, 20);
+    }
+
+    /**
+     * Test the console predicate on every tariff.
+     *
+     * @param bh the blackhole consuming the results
+     */
+    @Benchmark
+    public void filterPredicateTest(Blackhole bh) {
+        for (Tariff t : tariffs) {
+            bh.consume(predicate.test(t));
+        }
+    }
+
+    /**
+     * Sort the tariffs of a company by monthly rates with
+     * {@link MobileCompany#sortTariffsByMonthly()}, which publishes a sorted
+     * copy of the tariffs with a new table. The sort changes the company,
+     * so the company is loaded again before each call, and each call sorts
+     * the tariffs in the file order; the loading is not measured.
+     *
+     * @param unsorted the company with the tariffs in the file order
+     * @return the company with the sorted tariffs
+     */
+    @Benchmark
+    public MobileCompany sortTariffsByMonthly(Unsorted unsorted) {
+        unsorted.company.sortTariffsByMonthly();
+        return unsorted.company;
+    }
+
+    /**
+     * A company with the tariffs in the file order.
+     */
+    @State(Scope.Thread)
+    public static class Unsorted {
+
+        /** The company. */
+        private MobileCompany company;
+
+        /**
+         * Load the tariffs.
+         *
+         * @param b the benchmark state
+         * @throws IOException if the data file could not be written
+         */
+        @Setup(Level.Invocation)
+        public void setUp(TariffsBenchmark b) throws IOException {
+            company = new MobileCompany("Benchmark");
+            company.setTariffsFile(DataGenerator.tariffs(b.size));
+            company.loadTariffs();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package mobilecompany;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntFunction;
+
+import tariffs.TariffRecommender;
+import tariffs.TariffTable;
+import tariffs.UsageProfile;
+
+/**
+ * A class that finds the cheapest tariff for each client of a store in
+ * parallel. The store is split into partitions by its spliterator and
+ * each partition is processed by a fork/join task, which passes the results
+ * to a sink as soon as they are computed and only keeps the savings totals
+ * by tariff, so the memory used does not depend on the number of clients.
+ * <br>
+ * The search for each client is bounded by the cost of the client's current
+ * tariff, see {@link TariffRecommender#cheapest(UsageProfile, double)}.
+ */
+class BulkRecommender {
+
+    /** The smallest number of clients processed by one task. */
+    private static final long MIN_PARTITION_SIZE = 1 << 14;
+
+    /** The number of partitions per worker thread, for load balancing. */
+    private static final int PARTITIONS_PER_THREAD = 8;
+
+    /** The pool the tasks are run on. */
+    private final ForkJoinPool pool;
+
+    /** The recommender of the tariffs. */
+    private final TariffRecommender recommender;
+
+    /** The tariff ids by row. */
+    private final int[] tariffIds;
+
+    /** The tariff rows by tariff id. */
+    private final IntIntMap tariffRows;
+
+    /**
+     * Instantiates a new bulk recommender.
+     *
+     * @param pool the pool the tasks are run on
+     * @param table the tariffs
+     */
+    public BulkRecommender(ForkJoinPool pool, TariffTable table) {
+        int idColumn = table.columnIndex("id");
+        TariffTable.Columns columns = table.columns();
+
+        this.pool = pool;
+        this.recommender = new TariffRecommender(table);
+        this.tariffIds = new int[table.size()];
+        this.tariffRows = new IntIntMap(table.size());
+
+        for (int r = 0; r < tariffIds.length; r++) {
+            tariffIds[r] = (int) columns.getValue(idColumn, r);
+            tariffRows.put(tariffIds[r], r);
+        }
+    }
+
+    /**
+     * Find the cheapest tariff for each client. Clients without usage are
+     * skipped. The store must not be changed during the run.
+     * @param clients the clients.
+     * @param usage the monthly usage profiles by client id, null for the
+     * clients without usage.
+     * @param sink the receiver of the results.
+     * @return the total monthly savings by the current tariff id, for each
+     * tariff having clients, in the tariff table order.
+     */
+    public Map<Integer, Double> run(ClientStore clients,
+            IntFunction<UsageProfile> usage, RecommendationSink sink) {
+        long partitionSize = Math.max(MIN_PARTITION_SIZE, clients.size()
+                / ((long) pool.getParallelism() * PARTITIONS_PER_THREAD));
+        Totals totals = pool.invoke(new PartitionTask(clients.spliterator(),
+                partitionSize, usage, sink));
+        Map<Integer, Double> result = new LinkedHashMap<>();
+
+        for (int r = 0; r < tariffIds.length; r++) {
+            if (totals.clients[r] > 0) {
+                result.put(tariffIds[r], totals.savings[r]);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Find the cheapest tariff for a client and pass it to the sink.
+     * @param c the client.
+     * @param model the cost model of the task, set to the client's usage.
+     * @param sink the receiver of the results.
+     * @param totals the totals to add the saving to.
+     */
+    private void recommend(Client c, TariffRecommender.CostModel model,
+            RecommendationSink sink, Totals totals) {
+        int row = tariffRows.get(c.getTariffId(), -1);
+        double current = (row < 0) ? Double.NaN : model.cost(row);
+        boolean known = !Double.isNaN(current);
+        int best = model.cheapest(known ? current : Double.POSITIVE_INFINITY);
+        int bestTariffId = (best < 0) ? c.getTariffId() : tariffIds[best];
+        double saving = Double.NaN;
+
+        if (known) {
+            saving = (best < 0) ? 0 : current - model.getCheapestCost();
+            totals.savings[row] += saving;
+            totals.clients[row]++;
+        }
+
+        sink.accept(c.getId(), c.getTariffId(), bestTariffId, saving);
+    }
+
+    /**
+     * The savings totals by tariff row.
+     */
+    private class Totals {
+
+        /** The total savings by current tariff row. */
+        final double[] savings = new double[tariffIds.length];
+
+        /** The numbers of clients with known savings by tariff row. */
+        final long[] clients = new long[tariffIds.length];
+
+        /**
+         * Add other totals to these.
+         * @param other the other totals.
+         * @return these totals.
+         */
+        Totals add(Totals other) {
+            for (int r = 0; r < savings.length; r++) {
+                savings[r] += other.savings[r];
+                clients[r] += other.clients[r];
+            }
+
+            return this;
+        }
+    }
+
+    /**
+     * A task that processes a partition of the clients, splitting it while
+     * it is large.
+     */
+    private class PartitionTask extends RecursiveTask<Totals> {
+
+        private static final long serialVersionUID = 1L;
+
+        /** The clients of the partition. */
+        private final transient Spliterator<Client> clients;
+
+        /** The size of the partitions processed without splitting. */
+        private final long partitionSize;
+
+        /** The usage profiles by client id. */
+        private final transient IntFunction<UsageProfile> usage;
+
+        /** The receiver of the results. */
+        private final transient RecommendationSink sink;
+
+        /**
+         * Instantiates a new partition task.
+         *
+         * @param clients the clients of the partition
+         * @param partitionSize the size of the partitions processed
+         * without splitting
+         * @param usage the usage profiles by client id
+         * @param sink the receiver of the results
+         */
+        PartitionTask(Spliterator<Client> clients, long partitionSize,
+                IntFunction<UsageProfile> usage, RecommendationSink sink) {
+            this.clients = clients;
+            this.partitionSize = partitionSize;
+            this.usage = usage;
+            this.sink = sink;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.concurrent.RecursiveTask#compute()
+         */
+        @Override
+        protected Totals compute() {
+            Spliterator<Client> half;
+
+            if ((clients.estimateSize() > partitionSize)
+                    && ((half = clients.trySplit()) != null)) {
+                PartitionTask left = new PartitionTask(half, partitionSize,
+                        usage, sink);
+
+                left.fork();
+                Totals right = compute();
+                return right.add(left.join());
+            }
+
+            Totals totals = new Totals();
+            TariffRecommender.CostModel model = recommender.newCostModel();
+
+            clients.forEachRemaining(c -> {
+                UsageProfile profile = usage.apply(c.getId());
+
+                if (profile != null) {
+                    recommend(c, model.setProfile(profile), sink, totals);
+                }
+            });
+
+            return totals;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package mobilecompany;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A reusable character sequence view of ASCII bytes in a buffer. Each byte
+ * is one character, so no bytes are decoded or copied until a string is
+ * requested. The view has to be used for ASCII data only.
+ */
+class ByteCharSequence implements CharSequence {
+
+    /** The buffer holding the bytes. */
+    private ByteBuffer buf;
+
+    /** The position of the first byte in the buffer. */
+    private int start;
+
+    /** The number of bytes. */
+    private int length;
+
+    /**
+     * Point the view at a region of a buffer.
+     * @param buf the buffer.
+     * @param start the region beginning.
+     * @param end the region end (exclusive).
+     * @return this view.
+     */
+    public ByteCharSequence set(ByteBuffer buf, int start, int end) {
+        this.buf = buf;
+        this.start = start;
+        this.length = end - start;
+        return this;
+    }
+
+    /**
+     * Check if a region of a buffer contains ASCII bytes only.
+     * @param buf the buffer.
+     * @param start the region beginning.
+     * @param end the region end (exclusive).
+     * @return true if all bytes are ASCII.
+     */
+    public static boolean isAscii(ByteBuffer buf, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buf.get(i) < 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Decode a region of a buffer as a UTF-8 string.
+     * @param buf the buffer.
+     * @param start the region beginning.
+     * @param end the region end (exclusive).
+     * @return the decoded string.
+     */
+    public static String decode(ByteBuffer buf, int start, int end) {
+        ByteBuffer region = buf.duplicate();
+        region.limit(end).position(start);
+        return StandardCharsets.UTF_8.decode(region).toString();
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.CharSequence#length()
+     */
+    @Override
+    public int length() {
+        return length;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.CharSequence#charAt(int)
+     */
+    @Override
+    public char charAt(int index) {
+        return (char) buf.get(start + index);
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.CharSequence#subSequence(int, int)
+     */
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        char[] chars = new char[to - from];
+
+        // ASCII bytes map to chars one to one
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) buf.get(start + from + i);
+        }
+
+        return new String(chars);
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return subSequence(0, length).toString();
+    }
+}
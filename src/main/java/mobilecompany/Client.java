@@ -34,6 +34,15 @@ class Client {
         this.tariffId = tariffId;
     }
 
+    /**
+     * Instantiates a new copy of a client.
+     *
+     * @param c the client
+     */
+    public Client(Client c) {
+        this(c.name, c.surname, c.id, c.tariffId);
+    }
+
     /**
      * Gets the name.
      *
@@ -128,7 +137,8 @@ class Client {
         
         Client other = (Client) that;
         
-        return this.name.equals(other.name)
+        return (this.id == other.id)
+                && this.name.equals(other.name)
                 && (this.surname.equals(other.surname))
                 && (this.tariffId == other.tariffId);
     }
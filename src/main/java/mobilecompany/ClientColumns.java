@@ -0,0 +1,124 @@
+package mobilecompany;
+
+/**
+ * Clients held as columns, the way a snapshot stores them: the ids, the
+ * tariff ids and the indexes of the names and surnames in a table of
+ * distinct strings. A client store is filled from the columns at once by
+ * {@link ClientStore#putAll(ClientColumns)}, so no {@code Client} is made
+ * for a row unless the store keeps one.
+ */
+final class ClientColumns {
+
+    /** The distinct names and surnames. */
+    private final String[] strings;
+
+    /** The client ids. */
+    private final int[] ids;
+
+    /** The tariff ids. */
+    private final int[] tariffIds;
+
+    /** The indexes of the names in the string table. */
+    private final int[] names;
+
+    /** The indexes of the surnames in the string table. */
+    private final int[] surnames;
+
+    /**
+     * Instantiates new columns of a number of clients, to be filled by
+     * {@link #set(int, int, int, int, int)}.
+     *
+     * @param strings the distinct names and surnames
+     * @param size the number of clients
+     */
+    ClientColumns(String[] strings, int size) {
+        this.strings = strings;
+        ids = new int[size];
+        tariffIds = new int[size];
+        names = new int[size];
+        surnames = new int[size];
+    }
+
+    /**
+     * Gets the number of clients.
+     *
+     * @return the number of rows
+     */
+    int size() {
+        return ids.length;
+    }
+
+    /**
+     * Set a row.
+     *
+     * @param row the row
+     * @param id the client id
+     * @param tariffId the tariff id
+     * @param name the index of the name in the string table
+     * @param surname the index of the surname in the string table
+     */
+    void set(int row, int id, int tariffId, int name, int surname) {
+        ids[row] = id;
+        tariffIds[row] = tariffId;
+        names[row] = name;
+        surnames[row] = surname;
+    }
+
+    /**
+     * Gets the string table.
+     *
+     * @return the distinct names and surnames, which must not be changed
+     */
+    String[] getStrings() {
+        return strings;
+    }
+
+    /**
+     * Gets the client ids.
+     *
+     * @return the ids by row, which must not be changed
+     */
+    int[] getIds() {
+        return ids;
+    }
+
+    /**
+     * Gets the tariff ids.
+     *
+     * @return the tariff ids by row, which must not be changed
+     */
+    int[] getTariffIds() {
+        return tariffIds;
+    }
+
+    /**
+     * Gets the index of the name of a client in the string table.
+     *
+     * @param row the row
+     * @return the string index
+     */
+    int getName(int row) {
+        return names[row];
+    }
+
+    /**
+     * Gets the index of the surname of a client in the string table.
+     *
+     * @param row the row
+     * @return the string index
+     */
+    int getSurname(int row) {
+        return surnames[row];
+    }
+
+    /**
+     * Create the client of a row.
+     *
+     * @param row the row
+     * @return a new client
+     */
+    Client client(int row) {
+        return new Client(strings[names[row]], strings[surnames[row]],
+                ids[row], tariffIds[row]);
+    }
+}
@@ -0,0 +1,416 @@
+package mobilecompany;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * A registry of clients keyed by their int ids. The clients are kept in an
+ * array in the order they were first put, and the ids are mapped to the
+ * array positions by an {@code IntIntMap}, so a lookup is one probe
+ * sequence in primitive arrays, whatever the size, and nothing is boxed.
+ * <br>
+ * Removed clients leave holes in the array, which are skipped by the
+ * iteration and compacted away once they outnumber the clients.
+ * <br>
+ * The array is made of fixed-size chunks, so a {@link #fork()} of the
+ * registry shares them, like the map of the positions, and the changes made
+ * to either registry afterwards only copy the chunks they touch.
+ * <br>
+ * The registry must not be changed while it is iterated.
+ */
+class ClientRegistry implements ClientStore {
+
+    /** The initial capacity. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** The number of bits of the position within a chunk. */
+    private static final int CHUNK_BITS = 12;
+
+    /** The number of clients of a chunk. */
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    /** The positions of the clients by id. */
+    private IntIntMap positions;
+
+    /**
+     * The chunks of the clients in the insertion order, null for removed
+     * ones. The first chunk is smaller while it is the only one.
+     */
+    private Client[][] clients;
+
+    /** The flags telling which chunks are not shared with a fork. */
+    private boolean[] owned;
+
+    /** The number of used positions, including holes. */
+    private int end;
+
+    /** The number of clients. */
+    private int size;
+
+    /**
+     * Instantiates a new empty registry.
+     */
+    public ClientRegistry() {
+        clear();
+    }
+
+    /**
+     * Instantiates a new fork of a registry.
+     *
+     * @param from the registry
+     */
+    private ClientRegistry(ClientRegistry from) {
+        positions = from.positions.fork();
+        clients = from.clients.clone();
+        owned = new boolean[clients.length];
+        Arrays.fill(from.owned, false);
+        end = from.end;
+        size = from.size;
+    }
+
+    /* (non-Javadoc)
+     * @see mobilecompany.ClientStore#fork()
+     */
+    @Override
+    public ClientRegistry fork() {
+        return new ClientRegistry(this);
+    }
+
+    /* (non-Javadoc)
+     * @see mobilecompany.ClientStore#get(int)
+     */
+    @Override
+    public Client get(int id) {
+        int pos = positions.get(id, -1);
+        return (pos < 0) ? null : client(pos);
+    }
+
+    /**
+     * Check if there is a client with a given id.
+     *
+     * @param id the client id
+     * @return true if there is such client
+     */
+    public boolean contains(int id) {
+        return positions.containsKey(id);
+    }
+
+    /* (non-Javadoc)
+     * @see mobilecompany.ClientStore#put(mobilecompany.Client)
+     */
+    @Override
+    public Client put(Client c) {
+        int pos = positions.get(c.getId(), -1);
+
+        if (pos >= 0) {
+            Client old = client(pos);
+            setClient(pos, c);
+            return old;
+        }
+
+        if (end == capacity()) {
+            if (end - size > size) {
+                compact();
+            } else {
+                grow();
+            }
+        }
+
+        positions.put(c.getId(), end);
+        setClient(end++, c);
+        size++;
+        return null;
+    }
+
+    /* (non-Javadoc)
+     * @see mobilecompany.ClientStore#putAll(mobilecompany.ClientColumns)
+     */
+    @Override
+    public void putAll(ClientColumns columns) {
+        int n = columns.size();
+
+        if ((end > 0) || (n <= INITIAL_CAPACITY)) {
+            ClientStore.super.putAll(columns);
+            return;
+        }
+
+        int[] rows = new int[n];
+        int chunks = (n + CHUNK_SIZE - 1) >>> CHUNK_BITS;
+
+        clients = new Client[chunks][];
+        owned = new boolean[chunks];
+        for (int c = 0; c < chunks; c++) {
+            clients[c] = new Client[(chunks == 1)
+                    ? Integer.highestOneBit(n - 1) << 1 : CHUNK_SIZE];
+            owned[c] = true;
+        }
+
+        for (int i = 0; i < n; i++) {
+            clients[i >>> CHUNK_BITS][i & (CHUNK_SIZE - 1)] =
+                    columns.client(i);
+            rows[i] = i;
+        }
+
+        positions = new IntIntMap(n);
+        positions.putAll(columns.getIds(), rows, n);
+        end = n;
+        size = n;
+
+        // duplicate ids: the later clients replace the earlier ones in place
+        if (positions.size() < n) {
+            clear();
+            ClientStore.super.putAll(columns);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see mobilecompany.ClientStore#remove(int)
+     */
+    @Override
+    public Client remove(int id) {
+        int pos = positions.get(id, -1);
+
+        if (pos < 0) {
+            return null;
+        }
+
+        Client old = client(pos);
+        positions.remove(id);
+        setClient(pos, null);
+        size--;
+        return old;
+    }
+
+    /* (non-Javadoc)
+     * @see mobilecompany.ClientStore#size()
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Iterable#forEach(java.util.function.Consumer)
+     */
+    @Override
+    public void forEach(Consumer<? super Client> action) {
+        for (int i = 0; i < end; i++) {
+            Client c = client(i);
+
+            if (c != null) {
+                action.accept(c);
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Iterable#iterator()
+     */
+    @Override
+    public Iterator<Client> iterator() {
+        return Spliterators.iterator(spliterator());
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Iterable#spliterator()
+     */
+    @Override
+    public Spliterator<Client> spliterator() {
+        return new RangeSpliterator(0, end, end == size);
+    }
+
+    /**
+     * Remove all clients.
+     */
+    private void clear() {
+        positions = new IntIntMap(INITIAL_CAPACITY);
+        clients = new Client[][] {new Client[INITIAL_CAPACITY]};
+        owned = new boolean[] {true};
+        end = 0;
+        size = 0;
+    }
+
+    /**
+     * Get the client at a position.
+     *
+     * @param pos the position
+     * @return the client or null if it was removed
+     */
+    private Client client(int pos) {
+        return clients[pos >>> CHUNK_BITS][pos & (CHUNK_SIZE - 1)];
+    }
+
+    /**
+     * Set the client at a position, copying its chunk first if it is
+     * shared.
+     *
+     * @param pos the position
+     * @param c the client or null
+     */
+    private void setClient(int pos, Client c) {
+        int chunk = pos >>> CHUNK_BITS;
+
+        if (!owned[chunk]) {
+            clients[chunk] = clients[chunk].clone();
+            owned[chunk] = true;
+        }
+
+        clients[chunk][pos & (CHUNK_SIZE - 1)] = c;
+    }
+
+    /**
+     * Gets the number of positions.
+     *
+     * @return the capacity of the chunks
+     */
+    private int capacity() {
+        return (clients.length == 1) ? clients[0].length
+                : clients.length << CHUNK_BITS;
+    }
+
+    /**
+     * Double the first chunk while it is smaller than a chunk, or add a
+     * chunk.
+     */
+    private void grow() {
+        if (clients[0].length < CHUNK_SIZE) {
+            clients[0] = Arrays.copyOf(clients[0], clients[0].length * 2);
+            owned[0] = true;
+            return;
+        }
+
+        int n = clients.length;
+
+        clients = Arrays.copyOf(clients, n + 1);
+        owned = Arrays.copyOf(owned, n + 1);
+        clients[n] = new Client[CHUNK_SIZE];
+        owned[n] = true;
+    }
+
+    /**
+     * Move the clients to the beginning of the array, removing the holes.
+     * The clients are moved into new chunks, so the chunks shared with a
+     * fork are not changed.
+     */
+    private void compact() {
+        Client[][] old = clients;
+        int oldEnd = end;
+
+        clients = new Client[old.length][];
+        owned = new boolean[old.length];
+        for (int i = 0; i < clients.length; i++) {
+            clients[i] = new Client[old[i].length];
+            owned[i] = true;
+        }
+
+        positions = new IntIntMap(size);
+        end = 0;
+
+        for (int i = 0; i < oldEnd; i++) {
+            Client c = old[i >>> CHUNK_BITS][i & (CHUNK_SIZE - 1)];
+
+            if (c != null) {
+                positions.put(c.getId(), end);
+                clients[end >>> CHUNK_BITS][end & (CHUNK_SIZE - 1)] = c;
+                end++;
+            }
+        }
+    }
+
+    /**
+     * A spliterator over a range of positions, which splits it in halves.
+     */
+    private class RangeSpliterator implements Spliterator<Client> {
+
+        /** The next position. */
+        private int from;
+
+        /** The position after the last one. */
+        private final int to;
+
+        /** Whether there are no holes in the range. */
+        private final boolean sized;
+
+        /**
+         * Instantiates a new range spliterator.
+         *
+         * @param from the first position
+         * @param to the position after the last one
+         * @param sized whether there are no holes in the range
+         */
+        RangeSpliterator(int from, int to, boolean sized) {
+            this.from = from;
+            this.to = to;
+            this.sized = sized;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.Spliterator#tryAdvance(java.util.function.Consumer)
+         */
+        @Override
+        public boolean tryAdvance(Consumer<? super Client> action) {
+            while (from < to) {
+                Client c = client(from++);
+
+                if (c != null) {
+                    action.accept(c);
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.Spliterator#forEachRemaining(
+         * java.util.function.Consumer)
+         */
+        @Override
+        public void forEachRemaining(Consumer<? super Client> action) {
+            while (from < to) {
+                Client c = client(from++);
+
+                if (c != null) {
+                    action.accept(c);
+                }
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.Spliterator#trySplit()
+         */
+        @Override
+        public Spliterator<Client> trySplit() {
+            int mid = (from + to) >>> 1;
+
+            if (mid <= from) {
+                return null;
+            }
+
+            Spliterator<Client> prefix = new RangeSpliterator(from, mid,
+                    sized);
+            from = mid;
+            return prefix;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.Spliterator#estimateSize()
+         */
+        @Override
+        public long estimateSize() {
+            return to - from;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.Spliterator#characteristics()
+         */
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL | DISTINCT
+                    | (sized ? SIZED | SUBSIZED : 0);
+        }
+    }
+}
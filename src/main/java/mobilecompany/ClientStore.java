@@ -0,0 +1,79 @@
+package mobilecompany;
+
+/**
+ * A store of mobile company clients, unique by id. Stores are iterated in
+ * the order the clients were first put.
+ * <br>
+ * A store may keep the clients put into it, and share them with its forks,
+ * so the clients put into a store, and the ones got from it, must not be
+ * changed.
+ */
+interface ClientStore extends Iterable<Client> {
+
+    /**
+     * Get a client by id.
+     *
+     * @param id the client id
+     * @return the client or null if there is no such client
+     */
+    Client get(int id);
+
+    /**
+     * Put a client. A client with the same id is replaced, keeping its
+     * position in the iteration order.
+     *
+     * @param c the client
+     * @return the replaced client or null if there was no client with the
+     * same id
+     */
+    Client put(Client c);
+
+    /**
+     * Replace a client with the same id, if there is one.
+     *
+     * @param c the client
+     * @return the replaced client or null if there was no client with the
+     * same id, in which case nothing is put
+     */
+    default Client replace(Client c) {
+        return (get(c.getId()) == null) ? null : put(c);
+    }
+
+    /**
+     * Put the clients of columns, with the same result as putting them one
+     * by one in the order of the rows. An empty store is filled at once,
+     * which is much faster for many clients.
+     *
+     * @param columns the clients
+     */
+    default void putAll(ClientColumns columns) {
+        for (int row = 0; row < columns.size(); row++) {
+            put(columns.client(row));
+        }
+    }
+
+    /**
+     * Remove a client.
+     *
+     * @param id the client id
+     * @return the removed client or null if there was no such client
+     */
+    Client remove(int id);
+
+    /**
+     * Create a copy of the store which shares the unchanged parts with it,
+     * so that the cost of the copy and of the changes made to it afterwards
+     * is about the size of the changes, not the number of clients. Either
+     * store may be changed afterwards without affecting the other.
+     *
+     * @return the copy
+     */
+    ClientStore fork();
+
+    /**
+     * Gets the number of clients.
+     *
+     * @return the number of clients
+     */
+    int size();
+}
@@ -0,0 +1,275 @@
+package mobilecompany;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A class that follows a text file which is being appended to, like
+ * {@code tail -f}. It remembers the position up to which the file has been
+ * read and, whenever the file changes, reads only the complete lines
+ * appended after it. A line that has not been terminated yet is read once
+ * its line break is written.
+ * <br>
+ * If the file gets shorter (it was truncated) or is replaced by another file
+ * (it was rotated), the follower is reset and the file is read again from
+ * the beginning.
+ * <br>
+ * Changes are detected with a {@code WatchService} on the parent directory;
+ * the file is also checked periodically in case an event is lost.
+ */
+class ClientsFileFollower implements Closeable {
+
+    /** The logger. */
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /** The size of the buffer used to read the file. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The period of the checks made without a change event, in ms. */
+    private static final long CHECK_PERIOD = 1000;
+
+    /** The followed file. */
+    private final Path path;
+
+    /** The handler of the lines read. */
+    private final MappedTextFile.RecordHandler handler;
+
+    /** The action called before the file is read again from the start. */
+    private final Runnable reset;
+
+    /** The action called after the lines of a check have been handled. */
+    private final Runnable flush;
+
+    /** The reusable view of ASCII lines. */
+    private final ByteCharSequence view = new ByteCharSequence();
+
+    /** The buffer the file is read into. */
+    private ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /** The position after the last complete line read. */
+    private long offset;
+
+    /** The key of the followed file, which changes on rotation. */
+    private Object fileKey;
+
+    /** The watch service, null if not started. */
+    private WatchService watcher;
+
+    /** The thread waiting for changes, null if not started. */
+    private Thread thread;
+
+    /**
+     * Instantiates a new follower of a file.
+     *
+     * @param file the followed file
+     * @param handler the handler of the lines read, called with each line
+     * (without the line break) and its position in the file
+     * @param reset the action called before the file is read again from the
+     * beginning after truncation or rotation
+     * @param flush the action called after each check, once the lines read
+     * by it have been passed to the handler, so that they can be applied at
+     * once
+     */
+    public ClientsFileFollower(File file, MappedTextFile.RecordHandler handler,
+            Runnable reset, Runnable flush) {
+        this.path = file.getAbsoluteFile().toPath();
+        this.handler = handler;
+        this.reset = reset;
+        this.flush = flush;
+    }
+
+    /**
+     * Gets the position after the last complete line read.
+     *
+     * @return the position in the file
+     */
+    public synchronized long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Read the whole file and start following it on a daemon thread.
+     * @throws IOException if the file could not be read or watched.
+     */
+    public synchronized void start() throws IOException {
+        if (thread != null) {
+            return;
+        }
+
+        check();
+
+        watcher = FileSystems.getDefault().newWatchService();
+        path.getParent().register(watcher,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+
+        thread = new Thread(this::watch, "clients-file-follower");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Read the lines appended since the last check, or the whole file again
+     * if it has been truncated or rotated.
+     * @throws IOException if the file could not be read.
+     */
+    public synchronized void check() throws IOException {
+        BasicFileAttributes attrs;
+
+        try {
+            attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            // rotated away, the new file has not been created yet
+            return;
+        }
+
+        Object key = attrs.fileKey();
+        long size = attrs.size();
+
+        if ((size < offset) || ((fileKey != null) && (key != null)
+                && !Objects.equals(key, fileKey))) {
+            reset.run();
+            offset = 0;
+        }
+
+        fileKey = key;
+
+        try {
+            if (size > offset) {
+                try (FileChannel channel = FileChannel.open(path,
+                        StandardOpenOption.READ)) {
+                    readLines(channel, size);
+                }
+            }
+        } finally {
+            flush.run();
+        }
+    }
+
+    /**
+     * Stop following the file.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (thread != null) {
+            thread.interrupt();
+            watcher.close();
+            thread = null;
+            watcher = null;
+        }
+    }
+
+    /**
+     * Wait for the changes of the file and read the appended lines until
+     * the follower is closed.
+     */
+    private void watch() {
+        WatchService ws;
+        Path name = path.getFileName();
+
+        synchronized (this) {
+            ws = watcher;
+        }
+
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = ws.poll(CHECK_PERIOD, TimeUnit.MILLISECONDS);
+                boolean changed = (key == null);
+
+                if (key != null) {
+                    for (WatchEvent<?> e : key.pollEvents()) {
+                        changed |= name.equals(e.context()) || (e.kind()
+                                == StandardWatchEventKinds.OVERFLOW);
+                    }
+                    key.reset();
+                }
+
+                if (changed) {
+                    try {
+                        check();
+                    } catch (IOException e) {
+                        LOGGER.error("Could not read from clients db file.");
+                        LOGGER.error(e);
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    /**
+     * Read the complete lines between the offset and a given position.
+     * @param channel the file channel.
+     * @param end the position to read up to.
+     * @throws IOException if the file could not be read.
+     */
+    private void readLines(FileChannel channel, long end) throws IOException {
+        while (offset < end) {
+            buf.clear();
+            if (buf.capacity() > end - offset) {
+                buf.limit((int) (end - offset));
+            }
+
+            int n = channel.read(buf, offset);
+            if (n <= 0) {
+                return;
+            }
+
+            int start = 0;
+            for (int i = 0; i < n; i++) {
+                if (buf.get(i) == '\n') {
+                    handleLine(start, i, offset + start);
+                    start = i + 1;
+                }
+            }
+
+            if ((start == 0) && (n == buf.capacity())) {
+                // a line longer than the buffer
+                buf = ByteBuffer.allocate(buf.capacity() * 2);
+            } else if (start == 0) {
+                // the last line is not complete yet
+                return;
+            }
+
+            offset += start;
+        }
+    }
+
+    /**
+     * Pass a line in the buffer to the handler.
+     * @param start the line beginning in the buffer.
+     * @param end the line break position in the buffer.
+     * @param position the position of the line in the file.
+     */
+    private void handleLine(int start, int end, long position) {
+        if ((end > start) && (buf.get(end - 1) == '\r')) {
+            end--;
+        }
+
+        if (ByteCharSequence.isAscii(buf, start, end)) {
+            handler.handle(view.set(buf, start, end), position);
+        } else {
+            handler.handle(ByteCharSequence.decode(buf, start, end), position);
+        }
+    }
+}
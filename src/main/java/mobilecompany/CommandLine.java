@@ -0,0 +1,202 @@
+package mobilecompany;
+
+/**
+ * A console command line split into words: the command name and its
+ * arguments. The line is split by one pass over its characters and the
+ * numeric arguments are checked by hand, so no regular expressions are
+ * compiled or matched for a command.
+ */
+final class CommandLine {
+
+    /** The largest number of words of a line. */
+    private static final int MAX_WORDS = 32;
+
+    /** The line. */
+    private final String line;
+
+    /** The start of each word in the line. */
+    private final int[] starts;
+
+    /** The end of each word in the line, exclusive. */
+    private final int[] ends;
+
+    /** The number of words. */
+    private final int count;
+
+    /**
+     * Instantiates a new command line.
+     *
+     * @param line the line
+     * @param starts the start of each word
+     * @param ends the end of each word
+     * @param count the number of words
+     */
+    private CommandLine(String line, int[] starts, int[] ends, int count) {
+        this.line = line;
+        this.starts = starts;
+        this.ends = ends;
+        this.count = count;
+    }
+
+    /**
+     * Split a line into words separated by white space. Only the first
+     * {@value #MAX_WORDS} words are kept; the rest of the line is a part of
+     * the last one.
+     *
+     * @param line the line
+     * @return the command line
+     */
+    static CommandLine parse(String line) {
+        int[] starts = new int[MAX_WORDS];
+        int[] ends = new int[MAX_WORDS];
+        int count = 0;
+        int len = line.length();
+        int i = 0;
+
+        while (true) {
+            while ((i < len) && Character.isWhitespace(line.charAt(i))) {
+                i++;
+            }
+
+            if (i == len) {
+                break;
+            }
+
+            starts[count] = i;
+            if (count == MAX_WORDS - 1) {
+                i = len;
+                while (Character.isWhitespace(line.charAt(i - 1))) {
+                    i--;
+                }
+            } else {
+                while ((i < len) && !Character.isWhitespace(line.charAt(i))) {
+                    i++;
+                }
+            }
+
+            ends[count++] = i;
+        }
+
+        return new CommandLine(line, starts, ends, count);
+    }
+
+    /**
+     * Gets the command name, the first word.
+     *
+     * @return the command name, empty if the line is blank
+     */
+    String getName() {
+        return (count == 0) ? "" : line.substring(starts[0], ends[0]);
+    }
+
+    /**
+     * Checks if the command has a given name.
+     *
+     * @param name the name
+     * @return true if the first word is {@code name}
+     */
+    boolean is(String name) {
+        return (count > 0) && (ends[0] - starts[0] == name.length())
+                && line.startsWith(name, starts[0]);
+    }
+
+    /**
+     * Gets the number of arguments.
+     *
+     * @return the number of words after the command name
+     */
+    int getArgCount() {
+        return Math.max(0, count - 1);
+    }
+
+    /**
+     * Get an argument.
+     *
+     * @param i the argument index, from 0
+     * @return the argument
+     */
+    String getArg(int i) {
+        return line.substring(starts[i + 1], ends[i + 1]);
+    }
+
+    /**
+     * Get the text of some arguments, with the spaces between them.
+     *
+     * @param from the index of the first argument
+     * @param to the index after the last argument
+     * @return the text, empty if there are no such arguments
+     */
+    String getText(int from, int to) {
+        return (from >= to) ? ""
+                : line.substring(starts[from + 1], ends[to]);
+    }
+
+    /**
+     * Get a numeric argument: an optional sign, digits and an optional
+     * fraction, e. g. '-1.5' or '.25'.
+     *
+     * @param i the argument index
+     * @return the number
+     * @throws NumberFormatException if the argument is not a number
+     */
+    double getNumber(int i) {
+        int start = starts[i + 1];
+        int end = ends[i + 1];
+        int p = start;
+        int digits = 0;
+
+        if ((p < end)
+                && ((line.charAt(p) == '-') || (line.charAt(p) == '+'))) {
+            p++;
+        }
+
+        for (; (p < end) && isDigit(line.charAt(p)); p++) {
+            digits++;
+        }
+
+        if ((p < end) && (line.charAt(p) == '.')) {
+            for (p++; (p < end) && isDigit(line.charAt(p)); p++) {
+                digits++;
+            }
+        }
+
+        if ((p < end) || (digits == 0)) {
+            throw new NumberFormatException("Not a number: "
+                    + line.substring(start, end));
+        }
+
+        return Double.parseDouble(line.substring(start, end));
+    }
+
+    /**
+     * Get a non-negative integer argument.
+     *
+     * @param i the argument index
+     * @return the integer
+     * @throws NumberFormatException if the argument is not a non-negative
+     * integer
+     */
+    int getInt(int i) {
+        int start = starts[i + 1];
+        int end = ends[i + 1];
+
+        for (int p = start; p < end; p++) {
+            if (!isDigit(line.charAt(p))) {
+                throw new NumberFormatException("Not an integer: "
+                        + line.substring(start, end));
+            }
+        }
+
+        return Integer.parseInt(line.substring(start, end));
+    }
+
+    /**
+     * Check if a character is an ASCII digit.
+     *
+     * @param c the character
+     * @return true for '0'..'9'
+     */
+    private static boolean isDigit(char c) {
+        return (c >= '0') && (c <= '9');
+    }
+}
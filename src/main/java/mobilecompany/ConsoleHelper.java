@@ -3,16 +3,17 @@ package mobilecompany;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Formatter;
 import java.util.List;
 import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
 
 import tariffs.ContractTariff;
 import tariffs.PrepaidTariff;
 import tariffs.Tariff;
+import tariffs.TariffAccessors;
 
 /**
  * A class that contains auxiliary methods for working with console of a
@@ -28,9 +29,12 @@ public class ConsoleHelper {
     
     /**
      * Commands which can be used to filter tariffs list. Basically,
-     * these are the names of {@code Tariff} and its subclasses' fields.
+     * these are the names of {@code Tariff} and its subclasses' numeric
+     * fields.
+     * The list is replaced as a whole, so concurrent console sessions
+     * always see a complete one.
      */
-    private List<String> filterCommands;
+    private volatile List<String> filterCommands;
 
     /**
      * The pattern to validate correct filter syntax.
@@ -39,6 +43,12 @@ public class ConsoleHelper {
     private String filterCmdPattern = "\\s*([a-zA-Z]+)\\s+([-\\+]?\\d*\\.?\\d+)"
             + "\\s+([-\\+]?\\d*.?\\d+)\\s*";
     
+    /** The number of recommended tariffs if not given. */
+    static final int DEFAULT_TOP_K = 5;
+    
+    /** The largest number of characters of a line of the help. */
+    private static final int HELP_WIDTH = 80;
+    
     /**
      * The pattern to match getter methods names
      */
@@ -58,33 +68,36 @@ public class ConsoleHelper {
 
     /**
      * Initialise the list of console commands which can be used to filter
-     * the tariffs list. Basically, get a list of all fields in {@code
-     * Tariffs} class and its subclasses.
+     * the tariffs list. Basically, get a list of all numeric fields in
+     * {@code Tariffs} class and its subclasses; the other fields, e. g. the
+     * name, cannot be filtered by a range.
      */
     public void initFilterCommands() {
-        filterCommands = new ArrayList<>();
+        List<String> commands = new ArrayList<>();
         String cmd;
 
         for (Method m : Tariff.class.getDeclaredMethods()) {
             cmd = getterToCmd(m.getName());
-            if (cmd.length() > 1) {
-                filterCommands.add(cmd);
+            if ((cmd.length() > 1) && (TariffAccessors.get(cmd) != null)) {
+                commands.add(cmd);
             }
         }
         
         for (Method m : PrepaidTariff.class.getDeclaredMethods()) {
             cmd = getterToCmd(m.getName());
-            if (cmd.length() > 1) {
-                filterCommands.add(cmd);
+            if ((cmd.length() > 1) && (TariffAccessors.get(cmd) != null)) {
+                commands.add(cmd);
             }
         }
         
         for (Method m : ContractTariff.class.getDeclaredMethods()) {
             cmd = getterToCmd(m.getName());
-            if (cmd.length() > 1) {
-                filterCommands.add(cmd);
+            if ((cmd.length() > 1) && (TariffAccessors.get(cmd) != null)) {
+                commands.add(cmd);
             }
         }
+        
+        filterCommands = commands;
     }
 
     /**
@@ -101,6 +114,15 @@ public class ConsoleHelper {
         return filterCommands.contains(cmd);
     }
 
+    /**
+     * Check if a field name can be used as a filter command.
+     * @param field a field name.
+     * @return true if tariffs can be filtered by {@code field}
+     */
+    boolean isFilterCommand(String field) {
+        return filterCommands.contains(field);
+    }
+
     /**
      * Extract the command name from the filter command string.
      * <br>
@@ -172,17 +194,128 @@ public class ConsoleHelper {
      * Show help on the supported console commands.
      */
     public void showHelp() {
-	String shortFormat = "%16s -- %-20s %n";
-	String longFormat = "%16s -- %-40s %n";
-        System.out.printf(shortFormat, "ls", "list matched tariffs");
-        System.out.printf(shortFormat, "ls all", "list all tariffs");
-        System.out.printf(shortFormat, "clear", "reset filters");
-        System.out.printf(shortFormat, "exit", "exit the program");
-        System.out.printf(longFormat, "field min max",
-                          "filter tariffs with field having"
-                                  + "value between min and max");
-        System.out.println("\nList of available fields:\n");
-        filterCommands.stream().forEach(System.out::println);
+	Formatter out = new Formatter(System.out);
+	
+	showHelp(out);
+	out.flush();
+    }
+
+    /**
+     * Show help on the supported console commands.
+     * @param out the formatter to write the help to.
+     */
+    void showHelp(Formatter out) {
+	String[][] commands = {
+		{"ls", "list matched tariffs"},
+		{"ls all", "list all tariffs"},
+		{"ls n", "list matched tariffs by pages of n tariffs"},
+		{"next", "list the next page"},
+		{"stats", "show the counts, throughput and latencies of the "
+			+ "loads, filters and commands"},
+		{"format compact|full",
+			"list tariffs as a table or with all fields"},
+		{"clear", "reset filters"},
+		{"exit", "exit the program"},
+		{"field min max", "filter tariffs with field having "
+			+ "value between min and max"},
+		{"where expression", "filter tariffs with an expression of "
+			+ "fields, e. g. monthly <= 20 and (sms < 0.1 "
+			+ "or type = contract)"},
+		{"sort keys [top k]", "list matched tariffs (or k first of "
+			+ "them) sorted by fields, e. g. monthly asc, "
+			+ "dataPackage desc"},
+		{"recommend usage [k]", "list k (default " + DEFAULT_TOP_K
+			+ ") cheapest tariffs for monthly usage: inner, "
+			+ "outer, landline, abroad minutes, sms, MB"}};
+	int labelWidth = 0;
+	
+	for (String[] c : commands) {
+	    labelWidth = Math.max(labelWidth, c[0].length());
+	}
+	
+	String format = "%" + labelWidth + "s -- %s%n";
+	String continued = "%" + labelWidth + "s    %s%n";
+	int width = HELP_WIDTH - labelWidth - " -- ".length();
+	
+	for (String[] c : commands) {
+	    List<String> lines = wrap(c[1], width);
+	    
+	    out.format(format, c[0], lines.get(0));
+	    for (String line : lines.subList(1, lines.size())) {
+		out.format(continued, "", line);
+	    }
+	}
+	
+        out.format("%nList of available fields:%n%n");
+        filterCommands.stream().forEach(cmd -> out.format("%s%n", cmd));
+    }
+    
+    /**
+     * Split a text into lines of at most the given width, breaking it
+     * between words. A word longer than the width is a line of its own.
+     * @param text the text.
+     * @param width the largest number of characters of a line.
+     * @return the lines.
+     */
+    static List<String> wrap(String text, int width) {
+	List<String> lines = new ArrayList<>();
+	StringBuilder line = new StringBuilder();
+	
+	for (String word : text.split(" ")) {
+	    if ((line.length() > 0)
+		    && (line.length() + 1 + word.length() > width)) {
+		lines.add(line.toString());
+		line.setLength(0);
+	    }
+	    
+	    if (line.length() > 0) {
+		line.append(' ');
+	    }
+	    line.append(word);
+	}
+	
+	lines.add(line.toString());
+	return lines;
+    }
+    
+    /**
+     * Print the statistics of the timed operations which have been run as
+     * a table.
+     * @param stats the statistics of the operations.
+     */
+    public void showStats(List<OperationStats> stats) {
+	Formatter out = new Formatter(System.out);
+	
+	showStats(stats, out);
+	out.flush();
+    }
+    
+    /**
+     * Print the statistics of the timed operations which have been run as
+     * a table.
+     * @param stats the statistics of the operations.
+     * @param out the formatter to write the table to.
+     */
+    void showStats(List<OperationStats> stats, Formatter out) {
+	String format = "%-24s %8s %10s %12s %9s %10s %10s %10s %10s %10s%n";
+	
+	out.format(format, "operation", "count", "records",
+		"records/s", "MB/s", "mean us", "p50 us", "p99 us",
+		"p99.9 us", "max us");
+	for (OperationStats s : stats) {
+	    if (s.getCount() == 0) {
+		continue;
+	    }
+	    
+	    out.format(format, s.getName(), s.getCount(),
+		    s.getRecords(), String.format("%.0f", s.getRecordsPerSecond()),
+		    String.format("%.2f", s.getBytesPerSecond() / (1 << 20)),
+		    String.format("%.1f", s.getMeanMicros()),
+		    String.format("%.1f", s.getP50Micros()),
+		    String.format("%.1f", s.getP99Micros()),
+		    String.format("%.1f", s.getP999Micros()),
+		    String.format("%.1f", s.getMaxMicros()));
+	}
     }
     
     /**
@@ -200,7 +333,8 @@ public class ConsoleHelper {
     
     
     /**
-     * A class for filter predicates used to filter tariffs.
+     * A class for filter predicates used to filter tariffs. The field
+     * accessor is resolved once, when the predicate is created.
      */
     private static class FilterPredicate implements Predicate<Tariff> {
 	
@@ -213,6 +347,9 @@ public class ConsoleHelper {
 	/** Upper boundary for the respective {@code Tariff} field (inclusive)*/
 	private double max;
 	
+	/** The accessor of the field, null if there is no numeric field */
+	private ToDoubleFunction<Tariff> accessor;
+	
 
 	/**
 	 * Instantiates a new filter predicate.
@@ -225,6 +362,11 @@ public class ConsoleHelper {
 	    this.cmd = cmd;
 	    this.min = min;
 	    this.max = max;
+	    this.accessor = TariffAccessors.get(cmd);
+	    
+	    if (accessor == null) {
+		LOGGER.error("No numeric field to filter by: " + cmd);
+	    }
 	}
 
 	/* (non-Javadoc)
@@ -232,57 +374,16 @@ public class ConsoleHelper {
 	 */
 	@Override
 	public boolean test(Tariff t) {
-	    ConsoleHelper h = ConsoleHelper.getInstance();
-	    String methodName = h.cmdToGetter(cmd);
-	    Method method = null;
-	    double val = 0;
-
-	    // check if there is such a method for current tariff object
-	    boolean isMethodExists = Arrays
-		    .stream(t.getClass().getMethods())
-		    .map(m -> m.getName())
-		    .anyMatch(methodName::equals);
-
-	    /*
-	     * if no such method is found, we have a wrong class and
-	     * the tariff should not be included in the final query result
-	     */
-	    if (!isMethodExists) {
+	    if (accessor == null) {
 		return false;
 	    }
-
-	    // if such a method is found, we proceed
-	    try {
-		method = t.getClass().getMethod(methodName);
-	    } catch (NoSuchMethodException | SecurityException e) {
-		LOGGER.error(e);
-		return false;
-	    }
-
+	    
 	    /*
-	     * method can return Double or Integer, so we need to provide
-	     * specific casting for each case
+	     * tariffs of a wrong class give NaN, so they are not included
+	     * in the final query result
 	     */
-	    try {
-		switch (method.getReturnType().getName()) {
-		case "double":
-		    val = (double) method.invoke(t);
-		    break;
-		case "int":
-		    val = (int) method.invoke(t);
-		    break;
-		default:
-		    String msg = "Could not invoke method " 
-			    + method.getReturnType().getName() 
-			    + method.getName();
-		    LOGGER.error(msg);
-		}
-	    } catch (IllegalAccessException | IllegalArgumentException
-		    | InvocationTargetException e) {
-		LOGGER.error(e);
-		return false;
-	    }
-
+	    double val = accessor.applyAsDouble(t);
+	    
 	    return (val >= min) && (val <= max);
 	}
     }
@@ -0,0 +1,521 @@
+package mobilecompany;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import tariffs.FilterExpression;
+import tariffs.FilterParser;
+import tariffs.RowBitmap;
+import tariffs.TariffFilter;
+import tariffs.TariffRecommender;
+import tariffs.TariffSorter;
+import tariffs.TariffTable;
+import tariffs.UsageProfile;
+
+/**
+ * A console session of a mobile company: the state of the queries of the
+ * console and the dispatch of its commands. A command line is split into
+ * words once and dispatched by its first word, and all output goes through
+ * a buffered {@link TariffRenderer}.
+ * <br>
+ * An interactive session shows a prompt and flushes the output after every
+ * command. A batch session runs the commands of a script without a prompt,
+ * flushes the output only when the buffer is full and prints the timings
+ * of its commands at the end.
+ * <br>
+ * The session works on the data of the moment it starts, until the
+ * filters are cleared, so its queries are not disturbed by reloads.
+ */
+final class ConsoleSession {
+
+    /** The number of nanoseconds in a millisecond. */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /** The largest number of characters of a command line. */
+    static final int MAX_LINE_LENGTH = 4096;
+
+    /** The mobile company. */
+    private final MobileCompany company;
+
+    /** The console helper. */
+    private final ConsoleHelper h = ConsoleHelper.getInstance();
+
+    /** The output. */
+    private final TariffRenderer out;
+
+    /** The timings of the commands of this session, null if interactive. */
+    private final Metrics batchMetrics;
+
+    /** The tariff table of the data the queries run on. */
+    private TariffTable table;
+
+    /** The number of clients of the data the queries run on. */
+    private int clientCount;
+
+    /** The rows matching the filters. */
+    private RowBitmap queryResult;
+
+    /** The version of the table columns the matching rows are for. */
+    private long version;
+
+    /** The filters, null if some of them cannot be cached. */
+    private List<FilterExpression> filters;
+
+    /** The rows listed by pages, null if not listing. */
+    private int[] listing;
+
+    /** The index of the first row of the next page. */
+    private int cursor;
+
+    /** The number of rows of a page. */
+    private int pageSize;
+
+    /** The number of executed commands. */
+    private long executed;
+
+    /** The characters of the command line being read. */
+    private final StringBuilder line = new StringBuilder();
+
+    /**
+     * Instantiates a new console session. The filter commands of the
+     * console helper must have been initialised.
+     *
+     * @param company the mobile company
+     * @param out the output
+     * @param interactive true to prompt for commands and flush the output
+     * after each of them
+     */
+    ConsoleSession(MobileCompany company, TariffRenderer out,
+            boolean interactive) {
+        this.company = company;
+        this.out = out;
+        this.batchMetrics = interactive ? null : new Metrics();
+
+        clear();
+    }
+
+    /**
+     * Run the commands read from a reader until the 'exit' command or the
+     * end of the input. A command line longer than {@link #MAX_LINE_LENGTH}
+     * characters is skipped.
+     *
+     * @param in the reader of the commands
+     * @throws IOException if the commands cannot be read
+     */
+    void run(BufferedReader in) throws IOException {
+        long start = System.nanoTime();
+
+        if (batchMetrics == null) {
+            out.println(company.getName());
+            out.println("Number of clients: " + clientCount);
+            out.println("Number of tariffs: " + table.size());
+            out.println("\n");
+            out.println("Please, type 'help' to get the console help");
+            out.println("\n");
+        }
+
+        try {
+            while (true) {
+                if (batchMetrics == null) {
+                    out.print(">> ");
+                    out.flush();
+                }
+
+                if (!readLine(in)) {
+                    break;
+                }
+
+                if (line.length() > MAX_LINE_LENGTH) {
+                    out.println("The command line is too long");
+                } else if (!execute(line.toString())) {
+                    break;
+                }
+
+                if (out.checkError()) {
+                    break;
+                }
+            }
+
+            if (batchMetrics != null) {
+                double millis = (System.nanoTime() - start) / NANOS_PER_MILLI;
+
+                out.printf("%nExecuted %d commands in %.1f ms"
+                        + " (%.0f commands/s)%n%n", executed, millis,
+                        (millis == 0) ? 0 : executed * 1e3 / millis);
+                h.showStats(batchMetrics.getAll(), out.getFormatter());
+            }
+        } finally {
+            out.flush();
+        }
+    }
+
+    /**
+     * Read a command line into the line buffer, without its terminator.
+     * At most a couple of characters more than {@link #MAX_LINE_LENGTH} are
+     * kept, so the buffer stays small whatever the input; the rest of a
+     * longer line is skipped.
+     *
+     * @param in the reader of the commands
+     * @return false at the end of the input
+     * @throws IOException if the line cannot be read
+     */
+    private boolean readLine(BufferedReader in) throws IOException {
+        int c = in.read();
+
+        if (c < 0) {
+            return false;
+        }
+
+        long length = 0;
+
+        line.setLength(0);
+        while ((c >= 0) && (c != '\n')) {
+            if (length++ <= MAX_LINE_LENGTH + 1) {
+                line.append((char) c);
+            }
+            c = in.read();
+        }
+
+        if ((length == line.length()) && (length > 0)
+                && (line.charAt(line.length() - 1) == '\r')) {
+            line.setLength(line.length() - 1);
+        }
+
+        return true;
+    }
+
+    /**
+     * Execute a command line. The command is timed as
+     * {@code console.<command>} in the company metrics and, in a batch
+     * session, in the session timings.
+     *
+     * @param line the command line
+     * @return false if the command is 'exit'
+     */
+    boolean execute(String line) {
+        long start = System.nanoTime();
+        String operation = dispatch(CommandLine.parse(line));
+
+        if (operation == null) {
+            return false;
+        }
+
+        long elapsed = System.nanoTime() - start;
+
+        company.getMetricsRegistry().get(operation).record(elapsed, 1, 0);
+        if (batchMetrics != null) {
+            batchMetrics.get(operation).record(elapsed, 1, 0);
+        }
+
+        executed++;
+        return true;
+    }
+
+    /**
+     * Dispatch a command line to its command.
+     *
+     * @param cmd the command line
+     * @return the operation name of the command, null if it is 'exit'
+     */
+    private String dispatch(CommandLine cmd) {
+        int n = cmd.getArgCount();
+
+        try {
+            switch (cmd.getName()) {
+            case "exit":
+                if (n == 0) {
+                    return null;
+                }
+                break;
+            case "ls":
+                if (list(cmd)) {
+                    return "console.ls";
+                }
+                break;
+            case "next":
+                if (n == 0) {
+                    next();
+                    return "console.next";
+                }
+                break;
+            case "stats":
+                if (n == 0) {
+                    h.showStats(company.getMetrics(), out.getFormatter());
+                    return "console.stats";
+                }
+                break;
+            case "format":
+                if ((n == 1) && (cmd.getArg(0).equals("compact")
+                        || cmd.getArg(0).equals("full"))) {
+                    out.setCompact(cmd.getArg(0).equals("compact"));
+                    return "console.format";
+                }
+                break;
+            case "help":
+                if (n == 0) {
+                    h.showHelp(out.getFormatter());
+                    return "console.help";
+                }
+                break;
+            case "clear":
+                if (n == 0) {
+                    clear();
+                    return "console.clear";
+                }
+                break;
+            case "recommend":
+                if (recommend(cmd)) {
+                    return "console.recommend";
+                }
+                break;
+            case "sort":
+                if (n > 0) {
+                    sort(cmd);
+                    return "console.sort";
+                }
+                break;
+            case "where":
+                if (n > 0) {
+                    where(cmd.getText(0, n));
+                    return "console.where";
+                }
+                break;
+            default:
+                if ((n == 2) && h.isFilterCommand(cmd.getName())) {
+                    filter(cmd.getName(), cmd.getNumber(0), cmd.getNumber(1));
+                    return "console.filter";
+                }
+            }
+        } catch (NumberFormatException e) {
+            // an invalid argument
+        }
+
+        out.println("Invalid command");
+        out.println("Enter 'help' to get a list of available commands");
+        return "console.invalid";
+    }
+
+    /**
+     * List the filtered tariffs (ls), all of the tariffs (ls all) or the
+     * first page of the filtered tariffs (ls n).
+     *
+     * @param cmd the command line
+     * @return false if the arguments are invalid
+     */
+    private boolean list(CommandLine cmd) {
+        if (cmd.getArgCount() == 0) {
+            if (queryResult.isEmpty()) {
+                out.println("Nothing to output.");
+            } else {
+                int[] rows = queryResult.toArray();
+
+                out.render(table, rows, 0, rows.length);
+                out.println("Found " + rows.length + " tariffs");
+            }
+            return true;
+        }
+
+        if (cmd.getArgCount() != 1) {
+            return false;
+        }
+
+        if (cmd.getArg(0).equals("all")) {
+            int[] rows = table.allRows();
+
+            out.render(table, rows, 0, rows.length);
+            return true;
+        }
+
+        int size = cmd.getInt(0);
+
+        if (size == 0) {
+            return false;
+        }
+
+        listing = queryResult.toArray();
+        pageSize = size;
+        cursor = 0;
+
+        if (listing.length == 0) {
+            out.println("Nothing to output.");
+        } else {
+            next();
+        }
+
+        return true;
+    }
+
+    /**
+     * List the next page of the filtered tariffs (next).
+     */
+    private void next() {
+        if ((listing == null) || (cursor >= listing.length)) {
+            out.println("No more tariffs.");
+            return;
+        }
+
+        int end = (int) Math.min((long) cursor + pageSize, listing.length);
+
+        out.render(table, listing, cursor, end);
+        out.println("Tariffs " + (cursor + 1) + "-" + end + " of "
+                + listing.length + ((end < listing.length)
+                        ? ", type 'next' for more" : ""));
+        cursor = end;
+    }
+
+    /**
+     * Reset the filters (clear) and take the current data of the company.
+     */
+    private void clear() {
+        Dataset data = company.getDataset();
+
+        table = data.getTariffTable();
+        clientCount = data.getClients().size();
+        TariffTable.Columns columns = table.columns();
+        version = columns.getVersion();
+        queryResult = RowBitmap.full(table.size());
+        filters = new ArrayList<>();
+        listing = null;
+    }
+
+    /**
+     * Recommend the cheapest tariffs for a usage profile
+     * (recommend usage [k]).
+     *
+     * @param cmd the command line
+     * @return false if the arguments are invalid
+     */
+    private boolean recommend(CommandLine cmd) {
+        int n = cmd.getArgCount();
+
+        if ((n != 6) && (n != 7)) {
+            return false;
+        }
+
+        double[] usage = new double[6];
+
+        for (int i = 0; i < usage.length; i++) {
+            char c = cmd.getArg(i).charAt(0);
+
+            if ((c == '-') || (c == '+')) {
+                return false;
+            }
+
+            usage[i] = cmd.getNumber(i);
+        }
+
+        int k = (n == 7) ? cmd.getInt(6) : ConsoleHelper.DEFAULT_TOP_K;
+        UsageProfile profile = new UsageProfile.Builder()
+                .innerMinutes(usage[0])
+                .outerMinutes(usage[1])
+                .landlineMinutes(usage[2])
+                .abroadMinutes(usage[3])
+                .sms(usage[4])
+                .data(usage[5])
+                .build();
+        TariffRecommender r = new TariffRecommender(table);
+        int[] rows = r.recommend(profile, k);
+
+        if (rows.length == 0) {
+            out.println("Nothing to output.");
+        }
+
+        for (int row : rows) {
+            out.printf("%10.2f  %s%n", r.cost(profile, row),
+                    r.getTable().get(row));
+        }
+
+        return true;
+    }
+
+    /**
+     * List the filtered tariffs sorted (sort keys [top k]).
+     *
+     * @param cmd the command line
+     */
+    private void sort(CommandLine cmd) {
+        int n = cmd.getArgCount();
+        String keys = cmd.getText(0, n);
+        int k = -1;
+
+        if ((n > 2) && cmd.getArg(n - 2).equals("top")) {
+            try {
+                k = cmd.getInt(n - 1);
+                keys = cmd.getText(0, n - 2);
+            } catch (NumberFormatException e) {
+                // 'top' is a part of the keys
+            }
+        }
+
+        try {
+            TariffSorter sorter = new TariffSorter(table,
+                    TariffSorter.parseKeys(keys));
+            int[] rows = (k < 0) ? sorter.sort(queryResult.toArray())
+                    : sorter.top(queryResult.toArray(), k);
+
+            if (rows.length == 0) {
+                out.println("Nothing to output.");
+            } else {
+                out.render(table, rows, 0, rows.length);
+            }
+        } catch (ParseException e) {
+            out.println("Invalid sort: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Filter the tariffs by an expression (where expression).
+     *
+     * @param expression the expression
+     */
+    private void where(String expression) {
+        try {
+            addFilter(new FilterParser().parse(expression));
+        } catch (ParseException e) {
+            out.println("Invalid filter: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Filter the tariffs by a field value in min..max inclusively
+     * (field min max).
+     *
+     * @param field the field name
+     * @param min the lower boundary for the field
+     * @param max the upper boundary for the field
+     */
+    private void filter(String field, double min, double max) {
+        if (table.hasColumn(field)) {
+            addFilter(MobileCompany.rangeFilter(field, min, max));
+        } else {
+            queryResult = queryResult.and(
+                    company.filterBitmap(table, field, min, max));
+            filters = null;
+        }
+    }
+
+    /**
+     * Add a filter to the filters of the query and find the rows matching
+     * all of them, in the query cache if the filters can be cached. On a
+     * cache miss only the added filter is checked, on the rows matching
+     * the others, unless the table has changed since they were found.
+     *
+     * @param filter the added filter
+     */
+    private void addFilter(FilterExpression filter) {
+        if (filters == null) {
+            queryResult = TariffFilter.compile(filter, table).select(queryResult);
+            return;
+        }
+
+        TariffTable.Columns columns = table.columns();
+
+        filters.add(filter);
+        queryResult = company.select(table, columns, filters,
+                (columns.getVersion() == version) ? queryResult : null);
+        version = columns.getVersion();
+    }
+}
@@ -0,0 +1,234 @@
+package mobilecompany;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import tariffs.Tariff;
+import tariffs.TariffTable;
+
+/**
+ * An immutable state of the data of a mobile company: the clients, the
+ * tariffs and the views built from them, which are always consistent with
+ * each other. A dataset is never changed once it has been published; a
+ * change builds a new dataset, sharing the unchanged parts with the old one,
+ * so a reader holding a dataset sees the same data for as long as it needs.
+ * <br>
+ * The client objects are shared with the forks of the clients and must not
+ * be changed; the company only hands out copies of them.
+ * <br>
+ * The tariff objects are the exception: they are shared by all datasets
+ * and may be changed through their setters. The tariff table follows the
+ * changes in new versions of its columns, so a reader which needs stable
+ * tariff values reads them from one {@link TariffTable#columns()} version
+ * rather than from the tariff objects.
+ */
+final class Dataset {
+
+    /** The clients, not changed after the dataset is created. */
+    private final ClientStore clients;
+
+    /** The ids of the clients on each tariff. */
+    private final TariffClientsIndex clientsByTariff;
+
+    /** The unmodifiable list of the tariffs. */
+    private final List<Tariff> tariffs;
+
+    /** The columnar view of the tariffs list. */
+    private final TariffTable tariffTable;
+
+    /**
+     * Instantiates a new dataset.
+     *
+     * @param clients the clients
+     * @param clientsByTariff the ids of the clients on each tariff
+     * @param tariffs the tariffs, which must not be changed afterwards
+     * @param tariffTable the columnar view of {@code tariffs}
+     */
+    private Dataset(ClientStore clients, TariffClientsIndex clientsByTariff,
+            List<Tariff> tariffs, TariffTable tariffTable) {
+        this.clients = clients;
+        this.clientsByTariff = clientsByTariff;
+        this.tariffs = Collections.unmodifiableList(tariffs);
+        this.tariffTable = tariffTable;
+    }
+
+    /**
+     * Create a dataset without clients and tariffs.
+     *
+     * @param clients an empty client store
+     * @return the dataset
+     */
+    static Dataset empty(ClientStore clients) {
+        List<Tariff> tariffs = new ArrayList<>();
+
+        return new Dataset(clients, new TariffClientsIndex(), tariffs,
+                new TariffTable(tariffs));
+    }
+
+    /**
+     * Gets the clients. The store must not be changed.
+     *
+     * @return the clients
+     */
+    ClientStore getClients() {
+        return clients;
+    }
+
+    /**
+     * Gets the ids of the clients on each tariff. The index must not be
+     * changed.
+     *
+     * @return the index
+     */
+    TariffClientsIndex getClientsByTariff() {
+        return clientsByTariff;
+    }
+
+    /**
+     * Gets the tariffs. The list cannot be changed, but the tariffs in it
+     * may be, as told in the class description.
+     *
+     * @return the unmodifiable list of the tariffs
+     */
+    List<Tariff> getTariffs() {
+        return tariffs;
+    }
+
+    /**
+     * Gets the columnar view of the tariffs.
+     *
+     * @return the tariff table
+     */
+    TariffTable getTariffTable() {
+        return tariffTable;
+    }
+
+    /**
+     * Create a dataset with other clients and the tariffs of this one.
+     *
+     * @param builder the builder of the clients, which must not be used
+     * afterwards
+     * @return the new dataset
+     */
+    Dataset withClients(ClientsBuilder builder) {
+        return new Dataset(builder.clients, builder.clientsByTariff, tariffs,
+                tariffTable);
+    }
+
+    /**
+     * Create a dataset with other tariffs and the clients of this one.
+     *
+     * @param list the tariffs, which must not be changed afterwards
+     * @param table the columnar view of {@code list}
+     * @return the new dataset
+     */
+    Dataset withTariffs(List<Tariff> list, TariffTable table) {
+        return new Dataset(clients, clientsByTariff, list, table);
+    }
+
+    /**
+     * A builder of the clients of a new dataset. It fills a client store
+     * and its reverse index off to the side, so the published datasets are
+     * not touched: either new ones, or forks of the ones of a dataset, which
+     * share the unchanged parts with it.
+     */
+    static final class ClientsBuilder {
+
+        /** The clients being built. */
+        private final ClientStore clients;
+
+        /** The ids of the clients on each tariff. */
+        private final TariffClientsIndex clientsByTariff;
+
+        /**
+         * Instantiates a new builder.
+         *
+         * @param clients an empty client store
+         */
+        ClientsBuilder(ClientStore clients) {
+            this(clients, new TariffClientsIndex());
+        }
+
+        /**
+         * Instantiates a new builder of clients restored at once, as by
+         * {@link ClientStore#putAll(ClientColumns)}, with their index
+         * built at once too.
+         *
+         * @param clients an empty client store
+         * @param columns the clients, with distinct ids
+         */
+        ClientsBuilder(ClientStore clients, ClientColumns columns) {
+            this(clients, new TariffClientsIndex(columns.getTariffIds(),
+                    columns.getIds()));
+            clients.putAll(columns);
+        }
+
+        /**
+         * Instantiates a new builder starting with the clients of a
+         * dataset. The store and the index are forked, so the cost of the
+         * builder is about the size of the changes made with it.
+         *
+         * @param from the dataset
+         */
+        ClientsBuilder(Dataset from) {
+            this(from.clients.fork(), from.clientsByTariff.fork());
+        }
+
+        /**
+         * Instantiates a new builder of a store and its index.
+         *
+         * @param clients the client store
+         * @param clientsByTariff the ids of the clients of the store on
+         * each tariff
+         */
+        private ClientsBuilder(ClientStore clients,
+                TariffClientsIndex clientsByTariff) {
+            this.clients = clients;
+            this.clientsByTariff = clientsByTariff;
+        }
+
+        /**
+         * Gets the clients built so far.
+         *
+         * @return the clients
+         */
+        ClientStore getClients() {
+            return clients;
+        }
+
+        /**
+         * Put a client, replacing the client with the same id if there is
+         * one.
+         *
+         * @param c the client
+         * @return the replaced client or null if there was no such client
+         */
+        Client put(Client c) {
+            Client old = clients.put(c);
+
+            if (old != null) {
+                clientsByTariff.remove(old.getTariffId(), old.getId());
+            }
+
+            clientsByTariff.add(c.getTariffId(), c.getId());
+            return old;
+        }
+
+        /**
+         * Remove a client.
+         *
+         * @param id the client id
+         * @return the removed client or null if there was no such client
+         */
+        Client remove(int id) {
+            Client old = clients.remove(id);
+
+            if (old != null) {
+                clientsByTariff.remove(old.getTariffId(), id);
+            }
+
+            return old;
+        }
+    }
+}
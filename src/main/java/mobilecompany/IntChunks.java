@@ -0,0 +1,134 @@
+package mobilecompany;
+
+import java.util.Arrays;
+
+/**
+ * A growable int array made of fixed-size chunks. A fork of the array shares
+ * the chunks with it, and a shared chunk is copied by the first write to it
+ * on either side, so a fork and a few changes cost about the number of
+ * chunks and the size of the changed ones, not the length of the array.
+ * <br>
+ * An array smaller than a chunk is one chunk of its own size, so that small
+ * arrays stay small.
+ */
+final class IntChunks {
+
+    /** The number of bits of the index within a chunk. */
+    private static final int CHUNK_BITS = 12;
+
+    /** The number of values of a chunk. */
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    /** The chunks. */
+    private int[][] chunks;
+
+    /** The flags telling which chunks are not shared with a fork. */
+    private boolean[] owned;
+
+    /**
+     * Instantiates a new array of zeros.
+     *
+     * @param capacity the length of the array
+     */
+    IntChunks(int capacity) {
+        if (capacity <= CHUNK_SIZE) {
+            chunks = new int[][] {new int[capacity]};
+        } else {
+            chunks = new int[(capacity + CHUNK_SIZE - 1) >>> CHUNK_BITS][];
+            for (int c = 0; c < chunks.length; c++) {
+                chunks[c] = new int[CHUNK_SIZE];
+            }
+        }
+
+        owned = new boolean[chunks.length];
+        Arrays.fill(owned, true);
+    }
+
+    /**
+     * Instantiates a new fork of an array.
+     *
+     * @param from the array, which does not own its chunks afterwards
+     */
+    private IntChunks(IntChunks from) {
+        chunks = from.chunks.clone();
+        owned = new boolean[chunks.length];
+        Arrays.fill(from.owned, false);
+    }
+
+    /**
+     * Create a fork of the array, sharing the chunks with it.
+     *
+     * @return the fork
+     */
+    IntChunks fork() {
+        return new IntChunks(this);
+    }
+
+    /**
+     * Gets the length of the array.
+     *
+     * @return the number of values the array can hold
+     */
+    int capacity() {
+        return (chunks.length == 1) ? chunks[0].length
+                : chunks.length << CHUNK_BITS;
+    }
+
+    /**
+     * Get a value.
+     *
+     * @param i the index
+     * @return the value
+     */
+    int get(int i) {
+        return chunks[i >>> CHUNK_BITS][i & (CHUNK_SIZE - 1)];
+    }
+
+    /**
+     * Set a value, copying its chunk first if it is shared.
+     *
+     * @param i the index
+     * @param value the value
+     */
+    void set(int i, int value) {
+        int c = i >>> CHUNK_BITS;
+
+        if (!owned[c]) {
+            chunks[c] = chunks[c].clone();
+            owned[c] = true;
+        }
+
+        chunks[c][i & (CHUNK_SIZE - 1)] = value;
+    }
+
+    /**
+     * Make the array at least as long as given, keeping its values; the new
+     * values are zeros.
+     *
+     * @param capacity the smallest length
+     */
+    void grow(int capacity) {
+        if (capacity <= capacity()) {
+            return;
+        }
+
+        if (chunks.length == 1) {
+            chunks[0] = Arrays.copyOf(chunks[0],
+                    Math.min(capacity, CHUNK_SIZE));
+            owned[0] = true;
+        }
+
+        int n = (capacity + CHUNK_SIZE - 1) >>> CHUNK_BITS;
+
+        if (n > chunks.length) {
+            int old = chunks.length;
+
+            chunks = Arrays.copyOf(chunks, n);
+            owned = Arrays.copyOf(owned, n);
+            for (int c = old; c < n; c++) {
+                chunks[c] = new int[CHUNK_SIZE];
+                owned[c] = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package mobilecompany;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash map from int keys to int values. Keys and values
+ * are stored in primitive arrays and looked up with linear probing, so
+ * nothing is boxed.
+ * <br>
+ * The arrays are {@link IntChunks}, so a {@link #fork()} of the map shares
+ * them and the changes made to either map afterwards only copy the chunks
+ * they touch.
+ */
+class IntIntMap {
+
+    /** The largest ratio of entries to slots before the arrays grow. */
+    private static final double LOAD_FACTOR = 0.6;
+
+    /** The size in bits of the ranges of slots of {@link #sortBySlot}. */
+    private static final int ORDER_BITS = 12;
+
+    /** The keys of the slots. */
+    private IntChunks keys;
+
+    /** The values of the slots. */
+    private IntChunks values;
+
+    /** The bits telling which slots are used, 32 slots per value. */
+    private IntChunks used;
+
+    /** The number of slots, a power of two. */
+    private int capacity;
+
+    /** The number of entries. */
+    private int size;
+
+    /** The number of entries at which the arrays grow. */
+    private int threshold;
+
+    /**
+     * Instantiates a new map.
+     *
+     * @param expectedSize the expected number of entries
+     */
+    public IntIntMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * Instantiates a new fork of a map.
+     *
+     * @param from the map
+     */
+    private IntIntMap(IntIntMap from) {
+        keys = from.keys.fork();
+        values = from.values.fork();
+        used = from.used.fork();
+        capacity = from.capacity;
+        size = from.size;
+        threshold = from.threshold;
+    }
+
+    /**
+     * Create a copy of the map which shares the arrays with it until either
+     * of them is changed.
+     *
+     * @return the copy
+     */
+    public IntIntMap fork() {
+        return new IntIntMap(this);
+    }
+
+    /**
+     * Gets the number of entries.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the value of a key.
+     *
+     * @param key the key
+     * @param defaultValue the value returned if there is no such key
+     * @return the value or {@code defaultValue}
+     */
+    public int get(int key, int defaultValue) {
+        int slot = find(key);
+        return isUsed(slot) ? values.get(slot) : defaultValue;
+    }
+
+    /**
+     * Checks if there is an entry with a given key.
+     *
+     * @param key the key
+     * @return true if the key is present
+     */
+    public boolean containsKey(int key) {
+        return isUsed(find(key));
+    }
+
+    /**
+     * Put an entry, replacing the value of an existing key.
+     *
+     * @param key the key
+     * @param value the value
+     */
+    public void put(int key, int value) {
+        int slot = find(key);
+
+        if (!isUsed(slot)) {
+            if (size >= threshold) {
+                grow();
+                slot = find(key);
+            }
+
+            setUsed(slot, true);
+            keys.set(slot, key);
+            size++;
+        }
+
+        values.set(slot, value);
+    }
+
+    /**
+     * Put many entries, with the same result as putting them one by one in
+     * the order of the arrays. The arrays are grown once, and the entries
+     * are sorted by {@link #sortBySlot} and put range of slots by range of
+     * slots, so that a large number of them is put with few cache misses.
+     *
+     * @param keys the keys
+     * @param values the values of the keys
+     * @param n the number of entries, taken from the start of the arrays
+     */
+    public void putAll(int[] keys, int[] values, int n) {
+        if (size == 0) {
+            allocate(Math.max(capacity, capacityFor(n)));
+        } else {
+            while (size + n > threshold) {
+                grow();
+            }
+        }
+
+        int[][] sorted = sortBySlot(keys, values, n, capacity);
+
+        for (int i = 0; i < n; i++) {
+            put(sorted[0][i], sorted[1][i]);
+        }
+    }
+
+    /**
+     * Remove an entry. The entries after it in its probe sequence are moved
+     * back, so no deleted markers are left in the table.
+     *
+     * @param key the key
+     * @return true if the key was present
+     */
+    public boolean remove(int key) {
+        int slot = find(key);
+
+        if (!isUsed(slot)) {
+            return false;
+        }
+
+        int mask = capacity - 1;
+        int hole = slot;
+        int next = (slot + 1) & mask;
+
+        while (isUsed(next)) {
+            int home = mix(keys.get(next)) & mask;
+
+            // move the entry into the hole unless its home slot lies
+            // cyclically between the hole and its current slot
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys.set(hole, keys.get(next));
+                values.set(hole, values.get(next));
+                hole = next;
+            }
+
+            next = (next + 1) & mask;
+        }
+
+        setUsed(hole, false);
+        size--;
+        return true;
+    }
+
+    /**
+     * Get all keys.
+     *
+     * @return the keys in no particular order
+     */
+    public int[] keys() {
+        int[] result = new int[size];
+        int n = 0;
+
+        for (int i = 0; i < capacity; i++) {
+            if (isUsed(i)) {
+                result[n++] = keys.get(i);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Find the slot of a key or the free slot where it would be put.
+     *
+     * @param key the key
+     * @return the slot
+     */
+    private int find(int key) {
+        int mask = capacity - 1;
+        int slot = mix(key) & mask;
+
+        while (isUsed(slot) && (keys.get(slot) != key)) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    /**
+     * Check if a slot is used.
+     *
+     * @param slot the slot
+     * @return true if the slot holds an entry
+     */
+    private boolean isUsed(int slot) {
+        return ((used.get(slot >>> 5) >>> slot) & 1) != 0;
+    }
+
+    /**
+     * Mark a slot as used or free.
+     *
+     * @param slot the slot
+     * @param flag true if the slot holds an entry
+     */
+    private void setUsed(int slot, boolean flag) {
+        int bits = used.get(slot >>> 5);
+
+        used.set(slot >>> 5, flag ? (bits | (1 << slot))
+                : (bits & ~(1 << slot)));
+    }
+
+    /**
+     * Double the capacity and put all entries again.
+     */
+    private void grow() {
+        IntChunks oldKeys = keys;
+        IntChunks oldValues = values;
+        IntChunks oldUsed = used;
+        int oldCapacity = capacity;
+
+        allocate(capacity * 2);
+
+        for (int i = 0; i < oldCapacity; i++) {
+            if (((oldUsed.get(i >>> 5) >>> i) & 1) != 0) {
+                int slot = find(oldKeys.get(i));
+                setUsed(slot, true);
+                keys.set(slot, oldKeys.get(i));
+                values.set(slot, oldValues.get(i));
+            }
+        }
+    }
+
+    /**
+     * Allocate empty arrays.
+     *
+     * @param capacity the number of slots, a power of two
+     */
+    private void allocate(int capacity) {
+        keys = new IntChunks(capacity);
+        values = new IntChunks(capacity);
+        used = new IntChunks((capacity + 31) >>> 5);
+        this.capacity = capacity;
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * Get the number of slots for a number of entries.
+     *
+     * @param expectedSize the number of entries
+     * @return the number of slots, a power of two
+     */
+    private static int capacityFor(int expectedSize) {
+        return Integer.highestOneBit(
+                Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+    }
+
+    /**
+     * Sort entries by the ranges of 2^12 slots their home slots fall in, in
+     * a table of a given number of slots hashed by {@link #mix(int)}. The
+     * entries are moved into new arrays rather than ordered by index, so
+     * that they are read in sequence afterwards. The sort is stable, so
+     * equal keys keep their order.
+     *
+     * @param keys the keys
+     * @param values the values of the keys
+     * @param n the number of entries, taken from the start of the arrays
+     * @param capacity the number of slots, a power of two
+     * @return the sorted keys and the sorted values
+     */
+    static int[][] sortBySlot(int[] keys, int[] values, int n,
+            int capacity) {
+        int mask = capacity - 1;
+        int shift = Math.max(0,
+                Integer.numberOfTrailingZeros(capacity) - ORDER_BITS);
+        int[] starts = new int[(mask >>> shift) + 2];
+        int[] sortedKeys = new int[n];
+        int[] sortedValues = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            starts[((mix(keys[i]) & mask) >>> shift) + 1]++;
+        }
+
+        for (int b = 1; b < starts.length; b++) {
+            starts[b] += starts[b - 1];
+        }
+
+        for (int i = 0; i < n; i++) {
+            int to = starts[(mix(keys[i]) & mask) >>> shift]++;
+
+            sortedKeys[to] = keys[i];
+            sortedValues[to] = values[i];
+        }
+
+        return new int[][] {sortedKeys, sortedValues};
+    }
+
+    /**
+     * Spread the bits of a key (the murmur3 finalizer).
+     *
+     * @param key the key
+     * @return the hash
+     */
+    static int mix(int key) {
+        int h = key;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "IntIntMap" + Arrays.toString(keys());
+    }
+}
@@ -0,0 +1,132 @@
+package mobilecompany;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A class that reads flat JSON objects one at a time from a character
+ * stream. The stream is read in fixed-size chunks and only the current
+ * entry is kept in memory, so the memory used does not depend on the size
+ * of the stream. Entries may span several lines.
+ */
+class JSONObjectReader implements Closeable {
+
+    /** The default size of a chunk read from the stream. */
+    private static final int DEFAULT_CHUNK_SIZE = 8192;
+
+    /** The underlying character stream. */
+    private final Reader reader;
+
+    /** The chunk of characters read from the stream. */
+    private final char[] chunk;
+
+    /** The number of valid characters in the chunk. */
+    private int chunkLength;
+
+    /** The position of the next character to be processed in the chunk. */
+    private int chunkPos;
+
+    /** The current JSON entry (reused for each entry). */
+    private final StringBuilder entry;
+
+    /**
+     * Instantiates a new JSON object reader.
+     *
+     * @param reader the character stream to read from
+     */
+    public JSONObjectReader(Reader reader) {
+        this(reader, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Instantiates a new JSON object reader.
+     *
+     * @param reader the character stream to read from
+     * @param chunkSize the number of characters read from the stream at once
+     */
+    public JSONObjectReader(Reader reader, int chunkSize) {
+        this.reader = reader;
+        this.chunk = new char[chunkSize];
+        this.entry = new StringBuilder();
+    }
+
+    /**
+     * Read the next JSON object from the stream. Everything between objects
+     * is skipped. Line breaks are dropped, as if the lines of the stream
+     * were joined together.
+     * @return true if an object was read, false at the end of the stream.
+     * @throws IOException if the stream could not be read.
+     */
+    public boolean next() throws IOException {
+        boolean inObject = false;
+        boolean inString = false;
+        int c;
+
+        entry.setLength(0);
+
+        while ((c = read()) != -1) {
+            if ((c == '\n') || (c == '\r')) {
+                continue;
+            }
+
+            if (!inObject) {
+                if (c == '{') {
+                    inObject = true;
+                    entry.append('{');
+                }
+
+                continue;
+            }
+
+            entry.append((char) c);
+
+            if (c == '"') {
+                inString = !inString;
+            } else if ((c == '}') && !inString) {
+                return true;
+            }
+        }
+
+        // an incomplete entry at the end of the stream is dropped
+        entry.setLength(0);
+        return false;
+    }
+
+    /**
+     * Gets the current JSON object. The returned buffer is reused by the
+     * next call of {@link #next()}.
+     *
+     * @return the current JSON object
+     */
+    public CharSequence current() {
+        return entry;
+    }
+
+    /**
+     * Read the next character from the chunk, refilling it if needed.
+     * @return the next character or -1 at the end of the stream.
+     * @throws IOException if the stream could not be read.
+     */
+    private int read() throws IOException {
+        if (chunkPos == chunkLength) {
+            chunkLength = reader.read(chunk, 0, chunk.length);
+            chunkPos = 0;
+
+            if (chunkLength <= 0) {
+                chunkLength = 0;
+                return -1;
+            }
+        }
+
+        return chunk[chunkPos++];
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
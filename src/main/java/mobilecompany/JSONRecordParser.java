@@ -0,0 +1,462 @@
+package mobilecompany;
+
+import java.text.ParseException;
+
+import tariffs.ContractTariff;
+import tariffs.PrepaidTariff;
+import tariffs.Tariff;
+
+/**
+ * A single-pass parser for flat JSON records of clients and tariffs. A record
+ * is scanned once, the values of the known fields are located on the way and
+ * then written straight into a {@code Client} or a {@code Tariff} builder,
+ * without building an intermediate JSON object. Unknown fields are skipped.
+ * <br>
+ * The accepted syntax is an object of one or more {@code "key" : value}
+ * pairs, where a key consists of word characters and a value is either
+ * a string without quotes or an unsigned number, e. g. 12 or 4.90.
+ * <br>
+ * The parser keeps its state between calls, so an instance should not be
+ * shared between threads.
+ */
+class JSONRecordParser {
+
+    /** The field names of a client record. */
+    private static final String[] CLIENT_KEYS = {
+        "name", "surname", "id", "tariff_id"
+    };
+
+    /** The field names of a tariff record. */
+    private static final String[] TARIFF_KEYS = {
+        "id", "type", "name", "monthly", "innerCalls", "outerCalls",
+        "landlines", "sms", "internet", "smsPackage", "dataPackage",
+        "activation", "abroadCalls", "dailyMinutes"
+    };
+
+    /** The largest number of decimal digits converted without rounding. */
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    /** Exact powers of ten used to scale fractional numbers. */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12,
+        1e13, 1e14, 1e15
+    };
+
+    /** The record being parsed. */
+    private CharSequence in;
+
+    /** The current position in the record. */
+    private int pos;
+
+    /** The start positions of the values of known fields. */
+    private final int[] valueStart = new int[TARIFF_KEYS.length];
+
+    /** The end positions (exclusive) of the values of known fields. */
+    private final int[] valueEnd = new int[TARIFF_KEYS.length];
+
+    /** The flags telling whether a value of a known field is a string. */
+    private final boolean[] isString = new boolean[TARIFF_KEYS.length];
+
+    /** The key positions of known fields, used in error messages. */
+    private final int[] keyStart = new int[TARIFF_KEYS.length];
+
+    /**
+     * Parse a client from a JSON record.
+     * @param json the JSON record.
+     * @return {@code Client} object parsed from {@code json}.
+     * @throws ParseException if the record is malformed or lacks a field.
+     */
+    public Client parseClient(CharSequence json) throws ParseException {
+        scan(json, CLIENT_KEYS);
+
+        return new Client(getString(CLIENT_KEYS, 0),
+                getString(CLIENT_KEYS, 1),
+                getInt(CLIENT_KEYS, 2),
+                getInt(CLIENT_KEYS, 3));
+    }
+
+    /**
+     * Parse a tariff from a JSON record.
+     * @param json the JSON record.
+     * @return {@code Tariff} object parsed from {@code json}.
+     * @throws ParseException if the record is malformed, lacks a field or
+     * has an illegal tariff type.
+     */
+    public Tariff parseTariff(CharSequence json) throws ParseException {
+        Tariff.Builder<?> tb = null;
+
+        scan(json, TARIFF_KEYS);
+
+        // set up field specific for each Tariff subclass
+        if (valueEquals(TARIFF_KEYS, 1, "prepaid")) {
+            tb = new PrepaidTariff.Builder()
+                    .activation(getDouble(TARIFF_KEYS, 11));
+        } else if (valueEquals(TARIFF_KEYS, 1, "contract")) {
+            tb = new ContractTariff.Builder()
+                    .abroadCalls(getDouble(TARIFF_KEYS, 12))
+                    .dailyMinutes(getInt(TARIFF_KEYS, 13));
+        } else {
+            throw new ParseException("Illegal tariff type: "
+                    + getString(TARIFF_KEYS, 1), valueStart[1]);
+        }
+
+        // set up fields shared by each Tariff class/subclass
+        return tb.id(getInt(TARIFF_KEYS, 0))
+                .name(getString(TARIFF_KEYS, 2))
+                .monthly(getDouble(TARIFF_KEYS, 3))
+                .innerCalls(getDouble(TARIFF_KEYS, 4))
+                .outerCalls(getDouble(TARIFF_KEYS, 5))
+                .landlines(getDouble(TARIFF_KEYS, 6))
+                .sms(getDouble(TARIFF_KEYS, 7))
+                .internet(getDouble(TARIFF_KEYS, 8))
+                .smsPackage(getInt(TARIFF_KEYS, 9))
+                .dataPackage(getInt(TARIFF_KEYS, 10))
+                .build();
+    }
+
+    /**
+     * Scan a whole record once, checking its syntax and remembering where
+     * the values of the known fields are.
+     * @param json the JSON record.
+     * @param keys the known field names.
+     * @throws ParseException if the record is malformed.
+     */
+    private void scan(CharSequence json, String[] keys)
+            throws ParseException {
+        int key;
+        int start;
+
+        in = json;
+        pos = 0;
+
+        for (int i = 0; i < keys.length; i++) {
+            valueStart[i] = -1;
+        }
+
+        expect('{');
+
+        do {
+            skipWhitespace();
+            start = pos;
+
+            // key
+            expect('"');
+            while ((pos < in.length()) && isWordChar(in.charAt(pos))) {
+                pos++;
+            }
+            if (pos == start + 1) {
+                throw error("Field name expected");
+            }
+            key = indexOfKey(keys, start + 1, pos);
+            expect('"');
+
+            if ((key >= 0) && (valueStart[key] >= 0)) {
+                throw new ParseException("Duplicate field \"" + keys[key]
+                        + "\" at position " + start, start);
+            }
+
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+
+            // value
+            if (key >= 0) {
+                keyStart[key] = start;
+                isString[key] = peek() == '"';
+            }
+
+            if (peek() == '"') {
+                pos++;
+                start = pos;
+                while ((pos < in.length()) && (in.charAt(pos) != '"')) {
+                    pos++;
+                }
+                if (pos == in.length()) {
+                    throw error("Unterminated string");
+                }
+                pos++;
+                setValue(key, start, pos - 1);
+            } else if (isDigit(peek())) {
+                start = pos;
+                skipDigits();
+                if (peek() == '.') {
+                    pos++;
+                    skipDigits();
+                }
+                setValue(key, start, pos);
+            } else {
+                throw error("String or unsigned number expected");
+            }
+
+            skipWhitespace();
+        } while (accept(','));
+
+        expect('}');
+
+        if (pos != in.length()) {
+            throw error("Unexpected characters after the end of the record");
+        }
+    }
+
+    /**
+     * Remember the value position of a known field.
+     * @param key the field index or -1 for an unknown field.
+     * @param start the start of the value.
+     * @param end the end of the value (exclusive).
+     */
+    private void setValue(int key, int start, int end) {
+        if (key >= 0) {
+            valueStart[key] = start;
+            valueEnd[key] = end;
+        }
+    }
+
+    /**
+     * Get the value of a string field.
+     * @param keys the known field names.
+     * @param key the field index.
+     * @return the value.
+     * @throws ParseException if the field is missing or is not a string.
+     */
+    private String getString(String[] keys, int key) throws ParseException {
+        checkValue(keys, key, true);
+        return in.subSequence(valueStart[key], valueEnd[key]).toString();
+    }
+
+    /**
+     * Get the value of an integer field. A fractional part is truncated.
+     * @param keys the known field names.
+     * @param key the field index.
+     * @return the value.
+     * @throws ParseException if the field is missing, is not a number or
+     * is out of range.
+     */
+    private int getInt(String[] keys, int key) throws ParseException {
+        long value = 0;
+        char c;
+
+        checkValue(keys, key, false);
+
+        for (int i = valueStart[key]; i < valueEnd[key]; i++) {
+            c = in.charAt(i);
+
+            if (c == '.') {
+                break;
+            }
+
+            value = value * 10 + (c - '0');
+
+            if (value > Integer.MAX_VALUE) {
+                throw new ParseException("Number out of range for \""
+                        + keys[key] + "\" at position " + valueStart[key],
+                        valueStart[key]);
+            }
+        }
+
+        return (int) value;
+    }
+
+    /**
+     * Get the value of a floating-point field.
+     * @param keys the known field names.
+     * @param key the field index.
+     * @return the value.
+     * @throws ParseException if the field is missing or is not a number.
+     */
+    private double getDouble(String[] keys, int key) throws ParseException {
+        long mantissa = 0;
+        int digits = 0;
+        int fraction = -1;
+        char c;
+
+        checkValue(keys, key, false);
+
+        for (int i = valueStart[key]; i < valueEnd[key]; i++) {
+            c = in.charAt(i);
+
+            if (c == '.') {
+                fraction = 0;
+                continue;
+            }
+
+            mantissa = mantissa * 10 + (c - '0');
+
+            if (fraction >= 0) {
+                fraction++;
+            }
+
+            // leading zeros do not count
+            if (((mantissa != 0) && (++digits > MAX_EXACT_DIGITS))
+                    || (fraction > MAX_EXACT_DIGITS)) {
+                return Double.parseDouble(in.subSequence(
+                        valueStart[key], valueEnd[key]).toString());
+            }
+        }
+
+        // both operands are exact, so the quotient is correctly rounded
+        return (fraction > 0)
+                ? mantissa / POWERS_OF_TEN[fraction]
+                : mantissa;
+    }
+
+    /**
+     * Check that a field is present and has a value of the expected kind.
+     * @param keys the known field names.
+     * @param key the field index.
+     * @param string true if a string value is expected.
+     * @throws ParseException if the check fails.
+     */
+    private void checkValue(String[] keys, int key, boolean string)
+            throws ParseException {
+        if (valueStart[key] < 0) {
+            throw new ParseException("Missing field \"" + keys[key] + "\"",
+                    in.length());
+        }
+
+        if (isString[key] != string) {
+            throw new ParseException("Field \"" + keys[key] + "\" at position "
+                    + keyStart[key] + " should be a "
+                    + (string ? "string" : "number"), keyStart[key]);
+        }
+    }
+
+    /**
+     * Check if the value of a field equals a given string.
+     * @param keys the known field names.
+     * @param key the field index.
+     * @param str the string to compare with.
+     * @return true if the value equals {@code str}.
+     * @throws ParseException if the field is missing or is not a string.
+     */
+    private boolean valueEquals(String[] keys, int key, String str)
+            throws ParseException {
+        checkValue(keys, key, true);
+        return regionEquals(valueStart[key], valueEnd[key], str);
+    }
+
+    /**
+     * Find the index of the field name located in the record.
+     * @param keys the known field names.
+     * @param start the start of the field name.
+     * @param end the end of the field name (exclusive).
+     * @return the field index or -1 for an unknown field.
+     */
+    private int indexOfKey(String[] keys, int start, int end) {
+        for (int i = 0; i < keys.length; i++) {
+            if (regionEquals(start, end, keys[i])) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Compare a region of the record with a string.
+     * @param start the start of the region.
+     * @param end the end of the region (exclusive).
+     * @param str the string to compare with.
+     * @return true if the region equals {@code str}.
+     */
+    private boolean regionEquals(int start, int end, String str) {
+        if (end - start != str.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < str.length(); i++) {
+            if (in.charAt(start + i) != str.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Get the current character without consuming it.
+     * @return the current character or 0 at the end of the record.
+     */
+    private char peek() {
+        return (pos < in.length()) ? in.charAt(pos) : 0;
+    }
+
+    /**
+     * Consume the current character if it is the given one.
+     * @param c the expected character.
+     * @return true if the character was consumed.
+     */
+    private boolean accept(char c) {
+        if (peek() == c) {
+            pos++;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Consume the current character, which must be the given one.
+     * @param c the expected character.
+     * @throws ParseException if another character is found.
+     */
+    private void expect(char c) throws ParseException {
+        if (!accept(c)) {
+            throw error("'" + c + "' expected");
+        }
+    }
+
+    /**
+     * Skip whitespace characters.
+     */
+    private void skipWhitespace() {
+        char c;
+
+        while (pos < in.length()) {
+            c = in.charAt(pos);
+
+            if ((c != ' ') && (c != '\t') && (c != '\n') && (c != '\r')
+                    && (c != '\f') && (c != '\u000B')) {
+                return;
+            }
+
+            pos++;
+        }
+    }
+
+    /**
+     * Skip decimal digits.
+     */
+    private void skipDigits() {
+        while (isDigit(peek())) {
+            pos++;
+        }
+    }
+
+    /**
+     * Create an exception for a syntax error at the current position.
+     * @param msg the error description.
+     * @return the exception.
+     */
+    private ParseException error(String msg) {
+        return new ParseException(msg + " at position " + pos, pos);
+    }
+
+    /**
+     * Check if a character is a decimal digit.
+     * @param c the character.
+     * @return true if {@code c} is a digit.
+     */
+    private static boolean isDigit(char c) {
+        return (c >= '0') && (c <= '9');
+    }
+
+    /**
+     * Check if a character is a word character (as {@code \w} in regex).
+     * @param c the character.
+     * @return true if {@code c} is a word character.
+     */
+    private static boolean isWordChar(char c) {
+        return isDigit(c) || ((c >= 'a') && (c <= 'z'))
+                || ((c >= 'A') && (c <= 'Z')) || (c == '_');
+    }
+}
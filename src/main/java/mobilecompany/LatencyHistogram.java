@@ -0,0 +1,119 @@
+package mobilecompany;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies in nanoseconds with log-linear buckets,
+ * in the manner of an HDR histogram: every power of two range is split
+ * into {@value #SUB_BUCKETS} equal buckets, so a recorded value is known
+ * within about 3% whatever its magnitude, from nanoseconds to hours, in a
+ * fixed amount of memory. Recording a value is a single atomic increment.
+ */
+final class LatencyHistogram {
+
+    /** The number of bits of a value kept below its highest bit. */
+    private static final int SUB_BITS = 5;
+
+    /** The number of buckets in each power of two range. */
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /** The number of buckets, enough for any non-negative long. */
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    /** The number of values recorded in each bucket. */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Record a value.
+     *
+     * @param nanos the value, negative values are recorded as 0
+     */
+    void record(long nanos) {
+        counts.incrementAndGet(bucketOf(Math.max(0, nanos)));
+    }
+
+    /**
+     * Get a percentile of the recorded values. Values recorded concurrently
+     * may or may not be taken into account.
+     *
+     * @param percent the percentile, e. g. 99.9
+     * @return the value below which the given percent of the values lie,
+     * the middle of its bucket; 0 if no values are recorded
+     */
+    long getPercentile(double percent) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(total * percent / 100));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return (lowerBound(i) + upperBound(i)) >>> 1;
+            }
+        }
+
+        return upperBound(BUCKETS - 1);
+    }
+
+    /**
+     * Get the bucket of a value. The values below {@value #SUB_BUCKETS}
+     * have a bucket each; a larger value is put by its highest
+     * {@code SUB_BITS + 1} bits into one of the buckets of its power of two
+     * range.
+     *
+     * @param value the non-negative value
+     * @return the bucket index
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        int mantissa = (int) (value >>> shift);
+
+        return (shift + 1) * SUB_BUCKETS + mantissa - SUB_BUCKETS;
+    }
+
+    /**
+     * Get the smallest value of a bucket.
+     *
+     * @param bucket the bucket index
+     * @return the smallest value
+     */
+    private static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        int shift = bucket / SUB_BUCKETS - 1;
+        long mantissa = SUB_BUCKETS + bucket % SUB_BUCKETS;
+
+        return mantissa << shift;
+    }
+
+    /**
+     * Get the largest value of a bucket.
+     *
+     * @param bucket the bucket index
+     * @return the largest value
+     */
+    private static long upperBound(int bucket) {
+        if (bucket == BUCKETS - 1) {
+            return Long.MAX_VALUE;
+        }
+
+        return lowerBound(bucket + 1) - 1;
+    }
+}
@@ -0,0 +1,256 @@
+package mobilecompany;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A class that reads a UTF-8 text file through memory-mapped windows and
+ * hands its lines or JSON objects over as character sequences. ASCII records
+ * are passed as views of the mapped bytes, without copying them; records
+ * with other characters are decoded into strings. A file larger than one
+ * window (and thus larger than 2 GB) is mapped window by window, each window
+ * starting at the first record not finished in the previous one.
+ */
+class MappedTextFile {
+
+    /** The default size of a mapped window. */
+    private static final long DEFAULT_WINDOW_SIZE = 1L << 30;
+
+    /** The file. */
+    private final File file;
+
+    /** The largest size of a mapped window. */
+    private final long windowSize;
+
+    /** The reusable view of ASCII records. */
+    private final ByteCharSequence view = new ByteCharSequence();
+
+    /**
+     * A handler of the records read from a file.
+     */
+    interface RecordHandler {
+
+        /**
+         * Handle a record. The record is only valid during the call.
+         * @param record the record.
+         * @param offset the position of the record in the file.
+         */
+        void handle(CharSequence record, long offset);
+    }
+
+    /**
+     * A scanner of a mapped window, which finds the records in it.
+     */
+    private interface WindowScanner {
+
+        /**
+         * Handle all complete records of a window.
+         * @param window the mapped window.
+         * @param base the position of the window in the file.
+         * @param last true if the window reaches the end of the file.
+         * @return the number of bytes consumed from the window start.
+         */
+        int scan(ByteBuffer window, long base, boolean last);
+    }
+
+    /**
+     * Instantiates a new mapped text file.
+     *
+     * @param file the file
+     */
+    public MappedTextFile(File file) {
+        this(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Instantiates a new mapped text file.
+     *
+     * @param file the file
+     * @param windowSize the largest size of a mapped window
+     */
+    MappedTextFile(File file, long windowSize) {
+        this.file = file;
+        this.windowSize = Math.min(windowSize, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Read all lines of the file. Line breaks are not passed to the handler.
+     * @param handler the line handler.
+     * @throws IOException if the file could not be read.
+     */
+    public void forEachLine(RecordHandler handler) throws IOException {
+        scan((window, base, last) -> {
+            int lineStart = 0;
+            int limit = window.limit();
+
+            for (int i = 0; i < limit; i++) {
+                if (window.get(i) == '\n') {
+                    handleLine(handler, window, lineStart, i, base);
+                    lineStart = i + 1;
+                }
+            }
+
+            // the last line of the file may have no line break
+            if (last && (lineStart < limit)) {
+                handleLine(handler, window, lineStart, limit, base);
+                lineStart = limit;
+            }
+
+            return lineStart;
+        });
+    }
+
+    /**
+     * Read all JSON objects of the file. Everything between objects is
+     * skipped and line breaks within objects are dropped, just like
+     * {@link JSONObjectReader} does.
+     * @param handler the object handler.
+     * @throws IOException if the file could not be read.
+     */
+    public void forEachObject(RecordHandler handler) throws IOException {
+        scan((window, base, last) -> {
+            int limit = window.limit();
+            int start = -1;
+            boolean inString = false;
+            boolean needsCopy = false;
+            byte prev = 0;
+            byte c;
+
+            for (int i = 0; i < limit; i++) {
+                c = window.get(i);
+
+                if (start < 0) {
+                    if (c == '{') {
+                        start = i;
+                        inString = false;
+                        needsCopy = false;
+                        prev = c;
+                    }
+
+                    continue;
+                }
+
+                if ((c == '\n') || (c == '\r')) {
+                    /*
+                     * a line break only needs to be dropped if it splits
+                     * a string or a number, otherwise the parser takes it
+                     * for whitespace
+                     */
+                    needsCopy |= inString || (isNumberChar(prev)
+                            && (i + 1 < limit)
+                            && isNumberChar(window.get(i + 1)));
+                    continue;
+                }
+
+                needsCopy |= c < 0;
+                prev = c;
+
+                if (c == '"') {
+                    inString = !inString;
+                } else if ((c == '}') && !inString) {
+                    handleObject(handler, window, start, i + 1, base,
+                            needsCopy);
+                    start = -1;
+                }
+            }
+
+            // an incomplete object at the end of the file is dropped
+            return ((start < 0) || last) ? limit : start;
+        });
+    }
+
+    /**
+     * Map the file window by window and scan each window.
+     * @param scanner the window scanner.
+     * @throws IOException if the file could not be read or a record does
+     * not fit into one window.
+     */
+    private void scan(WindowScanner scanner) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            long pos = 0;
+
+            while (pos < size) {
+                long length = Math.min(windowSize, size - pos);
+                boolean last = pos + length == size;
+                MappedByteBuffer window = channel.map(
+                        FileChannel.MapMode.READ_ONLY, pos, length);
+                int consumed = scanner.scan(window, pos, last);
+
+                if ((consumed == 0) && !last) {
+                    throw new IOException("A record at byte " + pos
+                            + " does not fit into a window of " + windowSize
+                            + " bytes");
+                }
+
+                pos += consumed;
+            }
+        }
+    }
+
+    /**
+     * Pass a line to the handler, dropping a trailing carriage return.
+     * @param handler the line handler.
+     * @param window the mapped window.
+     * @param start the line beginning.
+     * @param end the line end (exclusive).
+     * @param base the position of the window in the file.
+     */
+    private void handleLine(RecordHandler handler, ByteBuffer window,
+            int start, int end, long base) {
+        if ((end > start) && (window.get(end - 1) == '\r')) {
+            end--;
+        }
+
+        if (ByteCharSequence.isAscii(window, start, end)) {
+            handler.handle(view.set(window, start, end), base + start);
+        } else {
+            handler.handle(ByteCharSequence.decode(window, start, end),
+                    base + start);
+        }
+    }
+
+    /**
+     * Pass an object to the handler.
+     * @param handler the object handler.
+     * @param window the mapped window.
+     * @param start the object beginning.
+     * @param end the object end (exclusive).
+     * @param base the position of the window in the file.
+     * @param needsCopy true if the object has to be decoded and have its
+     * line breaks dropped.
+     */
+    private void handleObject(RecordHandler handler, ByteBuffer window,
+            int start, int end, long base, boolean needsCopy) {
+        if (!needsCopy) {
+            handler.handle(view.set(window, start, end), base + start);
+            return;
+        }
+
+        String str = ByteCharSequence.decode(window, start, end);
+        StringBuilder sb = new StringBuilder(str.length());
+
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if ((c != '\n') && (c != '\r')) {
+                sb.append(c);
+            }
+        }
+
+        handler.handle(sb, base + start);
+    }
+
+    /**
+     * Check if a byte can be a part of a number.
+     * @param c the byte.
+     * @return true if {@code c} is a digit or a decimal point.
+     */
+    private static boolean isNumberChar(byte c) {
+        return ((c >= '0') && (c <= '9')) || (c == '.');
+    }
+}
@@ -0,0 +1,189 @@
+package mobilecompany;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A registry of the statistics of the timed operations of a mobile company,
+ * by operation name. The statistics can be exported as MBeans of the
+ * platform MBean server, named
+ * {@code mobilecompany:type=Metrics,company=...,operation=...}; the
+ * statistics of the operations first run after the export are exported as
+ * they are created. The MBeans keep the registry alive until they are
+ * unregistered by {@link #unexport()}.
+ */
+final class Metrics {
+
+    /** The logger. */
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /** The statistics by operation name. */
+    private final ConcurrentMap<String, OperationStats> stats =
+            new ConcurrentHashMap<>();
+
+    /** Whether the operations are timed. */
+    private volatile boolean enabled = true;
+
+    /** The company name used in the MBean names, null if not exported. */
+    private volatile String exportedAs;
+
+    /** The names of the MBeans registered by this registry. */
+    private final List<ObjectName> registered = new ArrayList<>();
+
+    /**
+     * Checks if the operations are timed.
+     *
+     * @return true if the statistics are recorded
+     */
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sets if the operations are timed.
+     *
+     * @param enabled true to record the statistics
+     */
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Get the statistics of an operation, creating them if the operation
+     * has not been run yet.
+     *
+     * @param operation the operation name
+     * @return the statistics
+     */
+    OperationStats get(String operation) {
+        return get(operation, 1);
+    }
+
+    /**
+     * Get the statistics of an operation of which only some runs are timed,
+     * creating them if the operation has not been run yet.
+     *
+     * @param operation the operation name
+     * @param samplePeriod the number of runs of which one is timed, a power
+     * of two; only used when the statistics are created
+     * @return the statistics
+     */
+    OperationStats get(String operation, int samplePeriod) {
+        OperationStats s = stats.get(operation);
+
+        if (s == null) {
+            OperationStats created = new OperationStats(operation, this,
+                    samplePeriod);
+
+            s = stats.putIfAbsent(operation, created);
+            if (s == null) {
+                s = created;
+                if (exportedAs != null) {
+                    register(s);
+                }
+            }
+        }
+
+        return s;
+    }
+
+    /**
+     * Gets the statistics of all operations.
+     *
+     * @return the statistics ordered by operation name
+     */
+    List<OperationStats> getAll() {
+        List<OperationStats> result = new ArrayList<>(stats.values());
+
+        Collections.sort(result, (OperationStats a, OperationStats b)
+                -> a.getName().compareTo(b.getName()));
+        return result;
+    }
+
+    /**
+     * Export the statistics as MBeans of the platform MBean server.
+     *
+     * @param company the company name used in the MBean names
+     */
+    synchronized void export(String company) {
+        if (exportedAs != null) {
+            return;
+        }
+
+        exportedAs = company;
+
+        Collection<OperationStats> existing = new ArrayList<>(stats.values());
+        for (OperationStats s : existing) {
+            register(s);
+        }
+    }
+
+    /**
+     * Unregister the MBeans exported by {@link #export(String)}. The
+     * statistics are still recorded and can be exported again.
+     */
+    synchronized void unexport() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        for (ObjectName name : registered) {
+            try {
+                server.unregisterMBean(name);
+            } catch (InstanceNotFoundException e) {
+                // unregistered by someone else
+            } catch (JMException e) {
+                LOGGER.warn("Could not unregister " + name + ".");
+                LOGGER.warn(e);
+            }
+        }
+
+        registered.clear();
+        exportedAs = null;
+    }
+
+    /**
+     * Register the MBean of the statistics of an operation, if the
+     * statistics are exported.
+     *
+     * @param s the statistics
+     */
+    private synchronized void register(OperationStats s) {
+        String company = exportedAs;
+
+        if (company == null) {
+            return;
+        }
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            ObjectName name = new ObjectName("mobilecompany:type=Metrics,"
+                    + "company=" + ObjectName.quote(company)
+                    + ",operation=" + ObjectName.quote(s.getName()));
+
+            server.registerMBean(s, name);
+            registered.add(name);
+        } catch (InstanceAlreadyExistsException e) {
+            LOGGER.warn("The statistics of " + s.getName() + " are already"
+                    + " exported by another company named " + company
+                    + ".");
+        } catch (JMException e) {
+            LOGGER.warn("Could not export the statistics of "
+                    + s.getName() + ".");
+            LOGGER.warn(e);
+        }
+    }
+}
@@ -5,51 +5,105 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Scanner;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
 import java.util.function.Predicate;
-import java.util.regex.Matcher;
 import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.json.JSONObject;
 
 import tariffs.ContractTariff;
+import tariffs.FilterExpression;
+import tariffs.FilterParser;
 import tariffs.PrepaidTariff;
+import tariffs.RowBitmap;
 import tariffs.Tariff;
+import tariffs.TariffFilter;
+import tariffs.TariffRecommender;
+import tariffs.TariffSorter;
+import tariffs.TariffTable;
+import tariffs.UsageProfile;
 
 /**
  * A class representing a mobile company. The current functionality allows to
  * read clients and tariffs entries from respective files, which replace a db,
  * and filter tariffs using some predicates. It also provides a command-line
  * interface to work with tariffs.
+ * <br>
+ * The clients and tariffs form an immutable {@link Dataset}. Loads, sorts
+ * and other changes build a new dataset off to the side and publish it with
+ * one atomic reference swap, so queries take no locks, never see a half-made
+ * change and keep working on the dataset they started with. Changes are
+ * serialized by the lock of the company, which queries never take.
  */
 public class MobileCompany {
 
     /** The logger. */
     private static final Logger LOGGER = LogManager.getLogger();
     
+    /** The smallest number of tariffs for which the indexes are used. */
+    private static final int MIN_INDEXED_TARIFFS = 1024;
+    
+    /** The default largest number of cached query results. */
+    private static final int QUERY_CACHE_ENTRIES = 256;
+    
+    /** The default largest number of bytes of cached query results. */
+    private static final long QUERY_CACHE_BYTES = 16 << 20;
+    
     /** The mobile company name. */
     private String name;
     
-    /** The set of mobile company clients. */ 
-    private Set<Client> clients;
-    
-    /** The list of mobile company tariffs. */
-    private List<Tariff> tariffs;
+    /** The current clients and tariffs, replaced as a whole on changes. */
+    private final AtomicReference<Dataset> data;
     
     /** The file that contains clients information. */
     private File clientsFile;
     
     /** The file that contains tariffs information. */
     private File tariffsFile;
+    
+    /** Whether the files are read through memory mapping. */
+    private boolean memoryMapped;
+    
+    /** Whether the tariff table columns are indexed. */
+    private boolean indexed = true;
+    
+    /** Whether the clients are kept off the heap. */
+    private boolean offHeapClients;
+    
+    /** The binary snapshot of the loaded data, null if not used. */
+    private File snapshotFile;
+    
+    /** The follower of the clients file, null if it is not followed. */
+    private ClientsFileFollower clientsFollower;
+    
+    /** The server of the console commands, null if it is not started. */
+    private QueryServer queryServer;
+    
+    /** The number of tariff parses of which one is timed. */
+    private static final int PARSE_SAMPLE_PERIOD = 32;
+    
+    /** The statistics of the timed operations. */
+    private final Metrics metrics = new Metrics();
+    
+    /** The statistics of parsing tariffs, sampled. */
+    private final OperationStats parseTariffStats = metrics.get(
+	    "parseTariffFromJSON", PARSE_SAMPLE_PERIOD);
+    
+    /** The results of the tariff queries by the normal form of filters. */
+    private final QueryCache queryCache = new QueryCache(QUERY_CACHE_ENTRIES,
+	    QUERY_CACHE_BYTES);
 
     /**
      * Instantiates a new mobile company.
@@ -58,8 +112,7 @@ public class MobileCompany {
      */
     public MobileCompany(String name) {
         this.name = name;
-        clients = new HashSet<>();
-        tariffs = new ArrayList<>();
+        data = new AtomicReference<>(Dataset.empty(newClientStore()));
         clientsFile = new File("");
         tariffsFile = new File("");
     }
@@ -136,35 +189,306 @@ public class MobileCompany {
         this.tariffsFile = new File(pathToTariffsFile);
     }
 
+    /**
+     * Checks if the clients and tariffs files are read through memory
+     * mapping.
+     *
+     * @return true if the files are memory-mapped
+     */
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    /**
+     * Sets whether the clients and tariffs files are read through memory
+     * mapping. Memory-mapped files are parsed right from their bytes, which
+     * saves decoding and copying of ASCII data. The file format is the same.
+     *
+     * @param memoryMapped true to read the files through memory mapping
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+
+    /**
+     * Checks if sorted indexes of the tariff fields are built.
+     *
+     * @return true if the tariff fields are indexed
+     */
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    /**
+     * Sets whether sorted indexes of the numeric tariff fields are built
+     * when tariffs are loaded or sorted. The indexes let the console answer
+     * range filters with binary searches on large tariff lists.
+     *
+     * @param indexed true to build the indexes
+     */
+    public void setIndexed(boolean indexed) {
+        this.indexed = indexed;
+    }
+
+    /**
+     * Checks if the clients are kept off the heap.
+     *
+     * @return true if the clients are kept off the heap
+     */
+    public boolean isOffHeapClients() {
+        return offHeapClients;
+    }
+
+    /**
+     * Sets whether the clients are kept off the heap, in packed rows of
+     * direct memory, which saves heap and garbage collection time for very
+     * large numbers of clients. The clients loaded so far are removed.
+     * The direct memory is limited by {@code -XX:MaxDirectMemorySize},
+     * which defaults to the maximum heap size; see
+     * {@link OffHeapClientStore} for its sizing.
+     *
+     * @param offHeapClients true to keep the clients off the heap
+     */
+    public synchronized void setOffHeapClients(boolean offHeapClients) {
+        this.offHeapClients = offHeapClients;
+        clearClients();
+    }
+
+    /**
+     * Sets the limits of the cache of tariff query results. The cache keeps
+     * the rows matched by the recently used sets of filters, so repeated
+     * queries are not evaluated again until the tariffs change.
+     *
+     * @param maxEntries the largest number of cached results, 0 to disable
+     * the cache
+     * @param maxBytes the largest number of bytes of cached results
+     */
+    public void setQueryCacheLimits(int maxEntries, long maxBytes) {
+        queryCache.setLimits(maxEntries, maxBytes);
+    }
+
+    /**
+     * Gets the number of tariff queries answered from the cache.
+     *
+     * @return the number of cache hits
+     */
+    public long getQueryCacheHits() {
+        return queryCache.getHits();
+    }
+
+    /**
+     * Gets the number of tariff queries that had to be evaluated.
+     *
+     * @return the number of cache misses
+     */
+    public long getQueryCacheMisses() {
+        return queryCache.getMisses();
+    }
+
+    /**
+     * Checks if the loads, filters and console commands are timed.
+     *
+     * @return true if the statistics are recorded
+     */
+    public boolean isMetricsEnabled() {
+        return metrics.isEnabled();
+    }
+
+    /**
+     * Sets if the loads, filters and console commands are timed. The
+     * statistics are recorded by default; their overhead is a few counter
+     * updates per operation, and nothing when they are disabled.
+     *
+     * @param enabled true to record the statistics
+     */
+    public void setMetricsEnabled(boolean enabled) {
+        metrics.setEnabled(enabled);
+    }
+
+    /**
+     * Gets the statistics of the timed operations: the loads, the parsing
+     * of tariffs, the filters and the console commands.
+     *
+     * @return the statistics ordered by operation name
+     */
+    public List<OperationStats> getMetrics() {
+        return metrics.getAll();
+    }
+
+    /**
+     * Export the statistics of the timed operations as MBeans of the
+     * platform MBean server, named
+     * {@code mobilecompany:type=Metrics,company=name,operation=...}.
+     */
+    public void exportMetrics() {
+        metrics.export(name);
+    }
+
+    /**
+     * Unregister the MBeans exported by {@link #exportMetrics()}, which
+     * otherwise keep the company alive. The statistics are still recorded.
+     */
+    public void unexportMetrics() {
+        metrics.unexport();
+    }
+
+    /**
+     * Gets the snapshot file.
+     *
+     * @return the snapshot file or null if no snapshot is used
+     */
+    public File getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    /**
+     * Sets the snapshot file used by {@link #load()}.
+     *
+     * @param snapshotFile the snapshot file or null to use no snapshot
+     */
+    public void setSnapshotFile(File snapshotFile) {
+        this.snapshotFile = snapshotFile;
+    }
+
+    /**
+     * Sets the snapshot file used by {@link #load()}.
+     *
+     * @param pathToSnapshotFile the path to the snapshot file
+     */
+    public void setSnapshotFile(String pathToSnapshotFile) {
+        this.snapshotFile = new File(pathToSnapshotFile);
+    }
+
+    /**
+     * Load all clients and tariffs.
+     * If a snapshot file is set and the snapshot was made from the current
+     * clients and tariffs files (same sizes and modification times), the
+     * data is read from the snapshot, which is much faster than parsing the
+     * JSON files. Otherwise the files are parsed as by {@link #loadClients()}
+     * and {@link #loadTariffs()}, and a new snapshot is written with the
+     * sizes and modification times the files had before they were parsed.
+     * No snapshot is written if a file could not be read to the end or had
+     * invalid entries, so that the partial data is not cached.
+     */
+    public void load() {
+	if ((snapshotFile != null) && loadSnapshot()) {
+	    return;
+	}
+	
+	SnapshotCache.Sources sources = SnapshotCache.Sources.of(clientsFile,
+		tariffsFile);
+	boolean clientsLoaded = loadClients();
+	boolean tariffsLoaded = loadTariffs();
+	
+	if (snapshotFile == null) {
+	    return;
+	}
+	
+	if (!clientsLoaded || !tariffsLoaded) {
+	    LOGGER.warn("The data was not loaded completely, "
+		    + "the snapshot file is not written.");
+	} else {
+	    Dataset d = data.get();
+	    
+	    try {
+		new SnapshotCache(snapshotFile).save(sources, d.getClients(),
+			d.getTariffs());
+	    } catch (IOException e) {
+		LOGGER.warn("Could not write snapshot file.");
+		LOGGER.warn(e);
+	    }
+	}
+    }
+
+    /**
+     * Load all clients and tariffs from the snapshot file.
+     * @return true if the snapshot was loaded, false if it is missing,
+     * outdated or damaged.
+     */
+    private boolean loadSnapshot() {
+        OperationStats stats = metrics.get("loadSnapshot");
+        long start = stats.start();
+        List<ClientColumns> loadedColumns = new ArrayList<>(1);
+        List<Tariff> loadedTariffs = new ArrayList<>();
+        
+        try {
+            if (!new SnapshotCache(snapshotFile).load(clientsFile,
+        	    tariffsFile, loadedColumns::add, loadedTariffs::add)) {
+        	return false;
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Could not read snapshot file.");
+            LOGGER.warn(e);
+            return false;
+        }
+        
+        // the snapshot was saved from a client store, so the ids are
+        // distinct and the store and its index are restored at once
+        Dataset.ClientsBuilder loadedClients = new Dataset.ClientsBuilder(
+        	newClientStore(), loadedColumns.get(0));
+        
+        publish(loadedClients, loadedTariffs);
+        stats.stop(start, loadedClients.getClients().size()
+        	+ loadedTariffs.size(), snapshotFile.length());
+        return true;
+    }
+
     /**
      * Load all clients from a plain text file.
      * The file should have UTF-8 encoding. Clients data should be stored as
      * JSON objects. Currently, each JSON string has to take one line, i. e.
      * no line breaks are allowed within one entry, allowing for simpler code.
+     * Lines that do not start with an opening brace are skipped.
+     * The loaded clients replace all clients loaded before, even if the file
+     * could not be read completely.
+     * @return true if the whole file was read and all of its entries were
+     * valid clients, false otherwise.
      */
-    public void loadClients() {
+    public boolean loadClients() {
 	if (!clientsFile.exists()) {
 	    LOGGER.error("Could not load clients: no file.");
-	    return;
+	    return false;
 	}
 	
+	OperationStats stats = metrics.get("loadClients");
+	long start = stats.start();
+	Dataset.ClientsBuilder loaded =
+		new Dataset.ClientsBuilder(newClientStore());
+	boolean complete = memoryMapped ? loadClientsMapped(loaded)
+		: loadClientsStreamed(loaded);
+	
+	publish(loaded, null);
+	stats.stop(start, loaded.getClients().size(), clientsFile.length());
+	return complete;
+    }
+
+    /**
+     * Load all clients from the clients file, reading it line by line.
+     * @param loaded the builder receiving the clients.
+     * @return true if the whole file was read without invalid entries.
+     */
+    private boolean loadClientsStreamed(Dataset.ClientsBuilder loaded) {
         try (BufferedReader br = new BufferedReader(
                 new InputStreamReader(
                 	new FileInputStream(clientsFile), "UTF-8"))) {
-            JSONHelper h = JSONHelper.getInstance();
+            JSONRecordParser parser = new JSONRecordParser();
+            String str;
+            Client c;
+            int lineNumber = 0;
+            int invalid = 0;
             
-            br.lines().forEach(s -> {
-                if (h.isJSONEntry(s)) {
-                    org.json.JSONObject obj = new JSONObject(s);
-                    String clientName = obj.getString("name");
-                    String clientSurname = obj.getString("surname");
-                    int id = obj.getInt("id");
-                    int tariffId = obj.getInt("tariff_id");
-
-                    clients.add(new Client(
-                	    clientName, clientSurname, id, tariffId));
+            while ((str = br.readLine()) != null) {
+                lineNumber++;
+                c = parseClientFromJSON(parser, str, lineNumber);
+                
+                if (c != null) {
+                    addClient(loaded, c);
+                } else if (isClientEntry(str)) {
+                    invalid++;
                 }
-            });
+            }
+            
+            return invalid == 0;
         } catch (FileNotFoundException e) {
             LOGGER.error("Could not find clients db file.");
             LOGGER.error(e);
@@ -172,44 +496,253 @@ public class MobileCompany {
             LOGGER.error("Could not read from clients db file.");
             LOGGER.error(e);
         }
+        
+        return false;
+    }
+
+    /**
+     * Load all clients from a plain text file using all available processors.
+     * The file has the same format as for {@link #loadClients()} and the
+     * result is the same, but the file is split into parts which are parsed
+     * in parallel on the common fork/join pool.
+     */
+    public void loadClientsInParallel() {
+	loadClientsInParallel(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Load all clients from a plain text file in parallel.
+     * @param pool the fork/join pool used to parse the parts of the file
+     * @see #loadClientsInParallel()
+     */
+    public void loadClientsInParallel(ForkJoinPool pool) {
+	if (!clientsFile.exists()) {
+	    LOGGER.error("Could not load clients: no file.");
+	    return;
+	}
+	
+	OperationStats stats = metrics.get("loadClientsInParallel");
+	long start = stats.start();
+	Dataset.ClientsBuilder loaded =
+		new Dataset.ClientsBuilder(newClientStore());
+	
+	try {
+	    new ParallelClientsLoader(pool).load(clientsFile,
+		    c -> addClient(loaded, c));
+	} catch (IOException e) {
+	    LOGGER.error("Could not read from clients db file.");
+	    LOGGER.error(e);
+	}
+	
+	publish(loaded, null);
+	stats.stop(start, loaded.getClients().size(), clientsFile.length());
+    }
+
+    /**
+     * Load all clients from the clients file and keep following it: the
+     * lines appended to the file later are parsed and the clients are added
+     * as soon as the file changes, without reading the whole file again. If
+     * the file is truncated or replaced (rotated), all clients are reloaded.
+     * The clients loaded before are replaced by the ones of the file.
+     * <br>
+     * The clients read by one check of the file are published at once, in
+     * one new dataset with a fork of the clients, so an append costs about
+     * the number of the appended clients, not the number of all clients.
+     */
+    public synchronized void followClients() {
+	if (clientsFollower != null) {
+	    return;
+	}
+	
+	// the state of the follower callbacks, only used on the follower lock
+	int[] lineNumber = {0};
+	boolean[] reload = {true};
+	List<Client> pending = new ArrayList<>();
+	JSONRecordParser parser = new JSONRecordParser();
+	ClientsFileFollower follower = new ClientsFileFollower(clientsFile,
+		(line, offset) -> {
+		    Client c = parseClientFromJSON(parser, line,
+			    ++lineNumber[0]);
+		    
+		    if (c != null) {
+			pending.add(c);
+		    }
+		},
+		() -> {
+		    lineNumber[0] = 0;
+		    reload[0] = true;
+		    pending.clear();
+		},
+		() -> {
+		    if (reload[0] || !pending.isEmpty()) {
+			updateClients(pending, reload[0]);
+			reload[0] = false;
+			pending.clear();
+		    }
+		});
+	
+	try {
+	    follower.start();
+	    clientsFollower = follower;
+	} catch (IOException e) {
+	    LOGGER.error("Could not follow clients db file.");
+	    LOGGER.error(e);
+	}
+    }
+
+    /**
+     * Stop following the clients file. The clients loaded so far are kept.
+     */
+    public void stopFollowingClients() {
+	ClientsFileFollower follower;
+	
+	// the follower is closed without holding the lock of the company,
+	// which its thread takes while adding clients
+	synchronized (this) {
+	    follower = clientsFollower;
+	    clientsFollower = null;
+	}
+	
+	if (follower == null) {
+	    return;
+	}
+	
+	try {
+	    follower.close();
+	} catch (IOException e) {
+	    LOGGER.warn(e);
+	}
+    }
+
+    /**
+     * Create an empty client store of the configured kind.
+     * @return the client store.
+     */
+    private ClientStore newClientStore() {
+        return offHeapClients ? new OffHeapClientStore()
+        	: new ClientRegistry();
+    }
+
+    /**
+     * Remove all clients.
+     */
+    private synchronized void clearClients() {
+        swap(data.get().withClients(
+        	new Dataset.ClientsBuilder(newClientStore())));
+    }
+
+    /**
+     * Add clients to a fork of the current clients, or replace all clients
+     * with them, and publish the new dataset.
+     * @param added the clients to add.
+     * @param replace true to replace all clients.
+     */
+    private synchronized void updateClients(List<Client> added,
+	    boolean replace) {
+	Dataset d = data.get();
+	Dataset.ClientsBuilder b = replace
+		? new Dataset.ClientsBuilder(newClientStore())
+		: new Dataset.ClientsBuilder(d);
+	
+	for (Client c : added) {
+	    addClient(b, c);
+	}
+	
+	swap(d.withClients(b));
+    }
+
+    /**
+     * Publish a new dataset with loaded clients and tariffs. Loaded clients
+     * replace all clients, since they are the whole clients file, and
+     * loaded tariffs are appended to the tariffs.
+     * @param loadedClients the loaded clients or null if none were loaded.
+     * @param loadedTariffs the loaded tariffs or null if none were loaded.
+     */
+    private synchronized void publish(Dataset.ClientsBuilder loadedClients,
+	    List<Tariff> loadedTariffs) {
+	Dataset d = data.get();
+	
+	if (loadedClients != null) {
+	    d = d.withClients(loadedClients);
+	}
+	
+	if (loadedTariffs != null) {
+	    List<Tariff> list = new ArrayList<>(d.getTariffs());
+	    
+	    list.addAll(loadedTariffs);
+	    d = withTariffs(d, list);
+	}
+	
+	swap(d);
+    }
+
+    /**
+     * Make a dataset the current one.
+     * @param next the new dataset.
+     */
+    private void swap(Dataset next) {
+	Dataset old = data.getAndSet(next);
+	
+	// the old table keeps serving the readers holding it, but it need
+	// not follow the changes of the tariffs any more
+	if (old.getTariffTable() != next.getTariffTable()) {
+	    old.getTariffTable().detach();
+	    queryCache.clear();
+	}
     }
 
     /**
      * Load all tariffs from a plain text file.
      * The file should have UTF-8 encoding. Tariffs data must be stored as
      * JSON objects. Line breaks are allowed in the file within each entry.
+     * The file is streamed and parsed entry by entry, so it is never loaded
+     * in memory as a whole. The tariffs read are added even if the file
+     * could not be read completely.
+     * @return true if the whole file was read and all of its entries were
+     * valid tariffs, false otherwise.
      */
-    public void loadTariffs() {
-	if (!clientsFile.exists()) {
+    public boolean loadTariffs() {
+	if (!tariffsFile.exists()) {
 	    LOGGER.error("Could not load tariffs: no file.");
-	    return;
+	    return false;
 	}
 	
-        try (BufferedReader br = new BufferedReader(
+	OperationStats stats = metrics.get("loadTariffs");
+	long start = stats.start();
+	List<Tariff> loaded = new ArrayList<>();
+	boolean complete = memoryMapped ? loadTariffsMapped(loaded)
+		: loadTariffsStreamed(loaded);
+	
+	publish(null, loaded);
+	stats.stop(start, loaded.size(), tariffsFile.length());
+	return complete;
+    }
+
+    /**
+     * Load all tariffs from the tariffs file, streaming it entry by entry.
+     * @param loaded the list receiving the tariffs.
+     * @return true if the whole file was read without invalid entries.
+     */
+    private boolean loadTariffsStreamed(List<Tariff> loaded) {
+        try (JSONObjectReader jr = new JSONObjectReader(
                 new InputStreamReader(
                 	new FileInputStream(tariffsFile), "UTF-8"))) {
-            JSONHelper h = JSONHelper.getInstance();
-            StringBuilder sb = new StringBuilder();
-            String str;
-            Matcher matcher;
+            JSONRecordParser parser = new JSONRecordParser();
             Tariff t = null;
+            int invalid = 0;
 
-            // load the whole file in memory
-            while ((str = br.readLine()) != null) {
-                sb.append(str);
-            }
-
-            // look up JSON strings in the loaded file
-            matcher = h.getJSONMatcher(sb.toString());
-
-            while (matcher.find()) {
-                t = parseTariffFromJSON(
-                        new JSONObject(matcher.group()));
+            // parse each JSON entry as soon as it has been read
+            while (jr.next()) {
+                t = parseTariffFromJSON(parser, jr.current());
                 
                 if (t != null) {
-                    tariffs.add(t);
+                    loaded.add(t);
+                } else {
+                    invalid++;
                 }
             }
+            
+            return invalid == 0;
         } catch (FileNotFoundException e) {
             LOGGER.error("Could not find tariffs db file.");
             LOGGER.error(e);
@@ -217,48 +750,222 @@ public class MobileCompany {
             LOGGER.error("Could not read from tariffs db file.");
             LOGGER.error(e);
         }
+        
+        return false;
+    }
+
+    /**
+     * Load all clients from the memory-mapped clients file.
+     * @param loaded the builder receiving the clients.
+     * @return true if the whole file was read without invalid entries.
+     */
+    private boolean loadClientsMapped(Dataset.ClientsBuilder loaded) {
+        JSONRecordParser parser = new JSONRecordParser();
+        int[] lineNumber = {0};
+        int[] invalid = {0};
+        
+        try {
+            new MappedTextFile(clientsFile).forEachLine((line, offset) -> {
+        	Client c = parseClientFromJSON(parser, line, ++lineNumber[0]);
+        	
+        	if (c != null) {
+        	    addClient(loaded, c);
+        	} else if (isClientEntry(line)) {
+        	    invalid[0]++;
+        	}
+            });
+            return invalid[0] == 0;
+        } catch (IOException e) {
+            LOGGER.error("Could not read from clients db file.");
+            LOGGER.error(e);
+            return false;
+        }
+    }
+
+    /**
+     * Load all tariffs from the memory-mapped tariffs file.
+     * @param loaded the list receiving the tariffs.
+     * @return true if the whole file was read without invalid entries.
+     */
+    private boolean loadTariffsMapped(List<Tariff> loaded) {
+        JSONRecordParser parser = new JSONRecordParser();
+        int[] invalid = {0};
+        
+        try {
+            new MappedTextFile(tariffsFile).forEachObject((json, offset) -> {
+        	Tariff t = parseTariffFromJSON(parser, json);
+        	
+        	if (t != null) {
+        	    loaded.add(t);
+        	} else {
+        	    invalid[0]++;
+        	}
+            });
+            return invalid[0] == 0;
+        } catch (IOException e) {
+            LOGGER.error("Could not read from tariffs db file.");
+            LOGGER.error(e);
+            return false;
+        }
+    }
+
+    /**
+     * Add a loaded client to the clients being built. Clients are unique by
+     * id: a client with the id of a client loaded before from the same file
+     * replaces it, keeping its position, so the last record of an id wins.
+     * @param clients the builder of the clients
+     * @param c the client
+     */
+    private static void addClient(Dataset.ClientsBuilder clients, Client c) {
+        if (clients.put(c) != null) {
+            LOGGER.warn("Duplicate client id " + c.getId()
+        	    + ", the earlier record is replaced.");
+        }
+    }
+
+    /**
+     * An auxiliary function that converts a client JSON line to a
+     * respective {@code Client} object.
+     * @param parser the parser to be used.
+     * @param line a line of the clients file.
+     * @param lineNumber the line number used in error messages.
+     * @return {@code Client} object parsed from {@code line} or null if the
+     * line is not a valid client entry.
+     */
+    private Client parseClientFromJSON(JSONRecordParser parser,
+	    CharSequence line, int lineNumber) {
+        if (!isClientEntry(line)) {
+            return null;
+        }
+        
+        try {
+            return parser.parseClient(line);
+        } catch (ParseException e) {
+            LOGGER.warn("Could not parse client at line " + lineNumber
+        	    + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Check if a line of the clients file is meant to be a client entry.
+     * @param line a line of the clients file.
+     * @return true if the line starts with an opening brace.
+     */
+    private static boolean isClientEntry(CharSequence line) {
+        return (line.length() > 0) && (line.charAt(0) == '{');
     }
 
     /**
-     * An auxiliary function that converts a tariff JSON object to a
+     * An auxiliary function that converts a tariff JSON entry to a
      * respective {@code Tariff} object.
-     * @param obj JSON object to be parsed.
-     * @return {@code Tariff} object parsed from {@code obj}.
-     */
-    private Tariff parseTariffFromJSON(JSONObject obj) {
-        Tariff t = null;
-        Tariff.Builder<?> tb = null;
-
-        // set up field specific for each Tariff subclass
-        switch (obj.getString("type")) {
-        case "prepaid":
-            tb = new PrepaidTariff.Builder()
-                    .activation(obj.getDouble("activation"));
-            break;
-        case "contract":
-            tb = new ContractTariff.Builder()
-                    .abroadCalls(obj.getDouble("abroadCalls"))
-                    .dailyMinutes(obj.getInt("dailyMinutes"));
-            break;
-        default:
+     * @param parser the parser to be used.
+     * @param json JSON entry to be parsed.
+     * @return {@code Tariff} object parsed from {@code json} or null if the
+     * entry is not a valid tariff.
+     */
+    private Tariff parseTariffFromJSON(JSONRecordParser parser,
+	    CharSequence json) {
+	long start = parseTariffStats.start();
+	
+        try {
+            Tariff t = parser.parseTariff(json);
+            
+            parseTariffStats.stop(start, 1, utf8Length(json));
+            return t;
+        } catch (ParseException e) {
             LOGGER.warn("Could not parse tariffs correctly.\n"
-                    + "Illegal tariff type: " + obj.getString("type"));
+        	    + e.getMessage());
+            parseTariffStats.stop(start, 0, utf8Length(json));
+            return null;
+        }
+    }
+    
+    /**
+     * Count the bytes of a text in UTF-8, the encoding of the data files.
+     * @param text the text
+     * @return the number of bytes
+     */
+    static long utf8Length(CharSequence text) {
+	long n = text.length();
+	
+	for (int i = 0; i < text.length(); i++) {
+	    char c = text.charAt(i);
+	    
+	    // a surrogate pair takes 4 bytes, 2 for each of its chars
+	    if (c >= 0x800 && !Character.isSurrogate(c)) {
+		n += 2;
+	    } else if (c >= 0x80) {
+		n++;
+	    }
+	}
+	
+	return n;
+    }
+
+    /**
+     * Get a client by id. The client is a copy, so changing it does not
+     * change the data of the company; use {@link #putClient(Client)} for
+     * that.
+     *
+     * @param id the client id
+     * @return a copy of the client or null if there is no such client
+     */
+    public Client getClient(int id) {
+        return copyOf(data.get().getClients().get(id));
+    }
+
+    /**
+     * Put a client, replacing the client with the same id if there is one.
+     * The change is made to a fork of the clients in a new dataset, which
+     * shares the unchanged clients with the current one, so it costs about
+     * the size of a chunk of the clients, not their number. A copy of the
+     * client is put, so changing it afterwards does not change the data.
+     *
+     * @param c the client
+     * @return a copy of the replaced client or null if there was no such
+     * client
+     */
+    public synchronized Client putClient(Client c) {
+        Dataset d = data.get();
+        Dataset.ClientsBuilder b = new Dataset.ClientsBuilder(d);
+        Client old = b.put(new Client(c));
+
+        swap(d.withClients(b));
+        return copyOf(old);
+    }
+
+    /**
+     * Remove a client. The change is made to a fork of the clients in a new
+     * dataset, as by {@link #putClient(Client)}.
+     *
+     * @param id the client id
+     * @return a copy of the removed client or null if there was no such
+     * client
+     */
+    public synchronized Client removeClient(int id) {
+        Dataset d = data.get();
+
+        if (d.getClients().get(id) == null) {
             return null;
         }
 
-        // set up fields shared by each Tariff class/subclass
-        t = tb.id(obj.getInt("id"))
-                .name(obj.getString("name"))
-                .monthly(obj.getDouble("monthly"))
-                .innerCalls(obj.getDouble("innerCalls"))
-                .outerCalls(obj.getDouble("outerCalls"))
-                .landlines(obj.getDouble("landlines"))
-                .sms(obj.getDouble("sms"))
-                .internet(obj.getDouble("internet"))
-                .smsPackage(obj.getInt("smsPackage"))
-                .dataPackage(obj.getInt("dataPackage"))
-                .build();
-        return t;
+        Dataset.ClientsBuilder b = new Dataset.ClientsBuilder(d);
+        Client old = b.remove(id);
+
+        swap(d.withClients(b));
+        return copyOf(old);
+    }
+
+    /**
+     * Copy a client of a dataset, which may be shared with other datasets
+     * and so must not get out to be changed.
+     *
+     * @param c the client or null
+     * @return a copy of the client or null
+     */
+    private static Client copyOf(Client c) {
+        return (c == null) ? null : new Client(c);
     }
 
     /**
@@ -267,7 +974,29 @@ public class MobileCompany {
      * @return the number of mobile company clients
      */
     public int countClients() {
-        return clients.size();
+        return data.get().getClients().size();
+    }
+
+    /**
+     * Count clients on a tariff.
+     *
+     * @param tariffId the tariff id
+     * @return the number of clients on the tariff
+     */
+    public int countClientsByTariff(int tariffId) {
+        return data.get().getClientsByTariff().count(tariffId);
+    }
+
+    /**
+     * Get the ids of the clients on a tariff. The clients are looked up in
+     * a reverse index built while loading, not by scanning all clients.
+     *
+     * @param tariffId the tariff id
+     * @return the client ids in the order they were loaded, unless
+     * clients were removed or changed since
+     */
+    public int[] getClientIdsByTariff(int tariffId) {
+        return data.get().getClientsByTariff().clientsOf(tariffId);
     }
 
     /**
@@ -276,15 +1005,159 @@ public class MobileCompany {
      * @return the number of mobile company tariffs
      */
     public int countTariffs() {
-        return tariffs.size();
+        return data.get().getTariffs().size();
     }
 
     /**
-     * Sort tariffs by monthly rates.
+     * Sort tariffs by monthly rates. A sorted copy of the tariffs list is
+     * published, the readers of the old one are not affected.
+     */
+    public synchronized void sortTariffsByMonthly() {
+        Dataset d = data.get();
+        TariffTable table = d.getTariffTable();
+        TariffSorter sorter = new TariffSorter(table, Collections
+        	.singletonList(new TariffSorter.SortKey("monthly", false)));
+        
+        swap(withTariffs(d, table.toTariffs(sorter.sort(table.allRows()))));
+    }
+    
+    /**
+     * Get the tariffs sorted by one or more fields. The tariffs list is
+     * not changed.
+     *
+     * @param keys the sort keys, the most significant first
+     * @return the sorted tariffs
+     * @throws IllegalArgumentException if there are no keys or a key field
+     * is not one of {@link TariffTable#getFields()}
+     * @see TariffSorter
+     */
+    public List<Tariff> sortTariffs(List<TariffSorter.SortKey> keys) {
+	TariffTable table = getTariffTable();
+	
+	return table.toTariffs(new TariffSorter(table, keys)
+		.sort(table.allRows()));
+    }
+    
+    /**
+     * Get the first tariffs in the order of one or more fields, e. g. the
+     * cheapest ones, without sorting all tariffs. The tariffs list is not
+     * changed.
+     *
+     * @param keys the sort keys, the most significant first
+     * @param k the number of tariffs to get
+     * @return at most {@code k} first tariffs in the sort order
+     * @throws IllegalArgumentException if there are no keys or a key field
+     * is not one of {@link TariffTable#getFields()}
+     * @see TariffSorter
+     */
+    public List<Tariff> sortTariffs(List<TariffSorter.SortKey> keys, int k) {
+	TariffTable table = getTariffTable();
+	
+	return table.toTariffs(new TariffSorter(table, keys)
+		.top(table.allRows(), k));
+    }
+    
+    /**
+     * Gets the columnar view of the tariffs. Its rows follow the order of
+     * the tariffs list and a new table is made whenever the list is
+     * reloaded or sorted; the returned table is not changed by that.
+     *
+     * @return the tariff table
      */
-    public void sortTariffsByMonthly() {
-        Collections.sort(tariffs, (Tariff a, Tariff b) 
-        	-> Double.compare(a.getMonthly(), b.getMonthly()));
+    public TariffTable getTariffTable() {
+        return data.get().getTariffTable();
+    }
+    
+    /**
+     * Find the cheapest tariffs for a monthly usage profile.
+     *
+     * @param profile the usage profile
+     * @param k the number of tariffs to find
+     * @return at most {@code k} cheapest tariffs, the cheapest first
+     * @see TariffRecommender
+     */
+    public List<Tariff> recommendTariffs(UsageProfile profile, int k) {
+        TariffTable table = getTariffTable();
+        
+        return table.toTariffs(
+        	new TariffRecommender(table).recommend(profile, k));
+    }
+
+    /**
+     * Find the cheapest tariff for each client by the client's usage,
+     * processing the clients in parallel on the common fork/join pool.
+     *
+     * @param usage the monthly usage profiles by client id, null for the
+     * clients without usage, which are skipped; called concurrently
+     * @param sink the receiver of the results; called concurrently
+     * @return the total monthly savings by the current tariff id
+     * @see #recommendTariffsForClients(ForkJoinPool, IntFunction,
+     * RecommendationSink)
+     */
+    public Map<Integer, Double> recommendTariffsForClients(
+	    IntFunction<UsageProfile> usage, RecommendationSink sink) {
+	return recommendTariffsForClients(ForkJoinPool.commonPool(), usage,
+		sink);
+    }
+
+    /**
+     * Find the cheapest tariff for each client by the client's usage.
+     * The clients are split into partitions which are processed in parallel,
+     * and the results are passed to the sink as soon as they are computed,
+     * so nothing is kept per client. The clients and tariffs are the ones
+     * of the moment the recommendation starts, later changes do not affect
+     * it.
+     *
+     * @param pool the fork/join pool used to process the partitions
+     * @param usage the monthly usage profiles by client id, null for the
+     * clients without usage, which are skipped; called concurrently
+     * @param sink the receiver of the results; called concurrently
+     * @return the total monthly savings by the current tariff id, for each
+     * tariff with clients
+     */
+    public Map<Integer, Double> recommendTariffsForClients(
+	    ForkJoinPool pool, IntFunction<UsageProfile> usage,
+	    RecommendationSink sink) {
+	Dataset d = data.get();
+	
+	return new BulkRecommender(pool, d.getTariffTable()).run(
+		d.getClients(), usage, sink);
+    }
+
+    /**
+     * Create a rating engine for the clients and tariffs of the company.
+     * Clients whose tariff does not exist are not added to the engine.
+     *
+     * @return the rating engine
+     */
+    public RatingEngine createRatingEngine() {
+        Dataset d = data.get();
+        RatingEngine engine = new RatingEngine(d.getTariffTable());
+        
+        for (Client c : d.getClients()) {
+            if (!engine.setClient(c.getId(), c.getTariffId())) {
+        	LOGGER.warn("Client " + c.getId() + " has unknown tariff "
+        		+ c.getTariffId() + ".");
+            }
+        }
+        
+        return engine;
+    }
+
+    /**
+     * Create a dataset with other tariffs, building their columnar view.
+     * @param d the dataset whose clients are kept
+     * @param list the tariffs, which must not be changed afterwards
+     * @return the new dataset
+     */
+    private Dataset withTariffs(Dataset d, List<Tariff> list) {
+        TariffTable table = new TariffTable(list);
+        
+        if (indexed) {
+            table.buildIndexes();
+        }
+        
+        return d.withTariffs(list, table);
     }
     
     /**
@@ -293,7 +1166,55 @@ public class MobileCompany {
      * @return a new list of filtered tariffs
      */
     public List<Tariff> filterTariffs(Predicate<? super Tariff> predicate) {
-	return filterTariffs(tariffs, predicate);
+	return filterTariffs(data.get().getTariffs(), predicate);
+    }
+    
+    /**
+     * Filter all available tariffs having a field value in min..max
+     * inclusively. Numeric fields are checked on the tariff table columns,
+     * other fields fall back to the console filter predicate.
+     * @param field a field name of {@code Tariff} or its subclass
+     * @param min the lower boundary for the field
+     * @param max the upper boundary for the field
+     * @return a new list of filtered tariffs
+     */
+    public List<Tariff> filterTariffs(String field, double min, double max) {
+	OperationStats stats = metrics.get("filterTariffs");
+	long start = stats.start();
+	TariffTable table = getTariffTable();
+	List<Tariff> result;
+	
+	if (!table.hasColumn(field)) {
+	    result = table.toTariffs(filterBitmap(table, field, min, max));
+	} else {
+	    result = table.toTariffs(select(table, Collections.singletonList(
+		    rangeFilter(field, min, max))));
+	}
+	
+	stats.stop(start, result.size(), 0);
+	return result;
+    }
+    
+    /**
+     * Filter all available tariffs using a filter expression, e. g.
+     * {@code monthly <= 20 and (sms < 0.1 or smsPackage >= 100)}. The
+     * expression is compiled into one predicate on the tariff table columns
+     * and checked in a single pass.
+     * @param expression the filter expression
+     * @return a new list of filtered tariffs
+     * @throws ParseException if the expression is not valid
+     * @see FilterParser
+     */
+    public List<Tariff> filterTariffs(String expression)
+	    throws ParseException {
+	OperationStats stats = metrics.get("filterTariffs");
+	long start = stats.start();
+	TariffTable table = getTariffTable();
+	List<Tariff> result = table.toTariffs(select(table,
+		Collections.singletonList(new FilterParser().parse(expression))));
+	
+	stats.stop(start, result.size(), 0);
+	return result;
     }
     
     /**
@@ -304,93 +1225,218 @@ public class MobileCompany {
      */
     public List<Tariff> filterTariffs(Collection<? extends Tariff> coll,
 	    Predicate<? super Tariff> predicate) {
-	return coll.stream()
+	OperationStats stats = metrics.get("filterTariffs");
+	long start = stats.start();
+	List<Tariff> result = coll.stream()
                 .filter(predicate)
                 .collect(Collectors.toList());
+	
+	stats.stop(start, result.size(), 0);
+	return result;
+    }
+    
+    /**
+     * Find all table rows matching a set of filters. The result is looked up
+     * in the query cache by the normal form of the filters, so it does not
+     * depend on their order; if it is not there, all filters are checked
+     * in one pass and the result is cached.
+     * @param table the tariff table
+     * @param filters the filters, all of which the rows must match
+     * @return the bitmap of the matching rows
+     */
+    RowBitmap select(TariffTable table,
+	    List<FilterExpression> filters) {
+	return select(table, table.columns(), filters, null);
+    }
+    
+    /**
+     * Find the rows of a version of a tariff table matching a set of
+     * filters. The result is looked up in the query cache by the normal form
+     * of the filters; if it is not there and the rows matching all filters
+     * but the last one are known, only the last filter is checked on them,
+     * otherwise all filters are checked in one pass. The result is cached.
+     * @param table the tariff table
+     * @param columns the version of the columns of the table
+     * @param filters the filters, all of which the rows must match
+     * @param within the rows of the columns matching all filters but the
+     * last one, or null if they are not known
+     * @return the bitmap of the matching rows
+     */
+    RowBitmap select(TariffTable table, TariffTable.Columns columns,
+	    List<FilterExpression> filters, RowBitmap within) {
+	FilterExpression all = new FilterExpression.Junction(true, filters);
+	String key = all.normalForm();
+	long version = columns.getVersion();
+	RowBitmap rows = queryCache.get(table, version, key);
+	
+	if (rows == null) {
+	    if (within == null || filters.isEmpty()) {
+		rows = TariffFilter.compile(all, columns).select();
+	    } else {
+		rows = TariffFilter.compile(filters.get(filters.size() - 1),
+			columns).select(within);
+	    }
+	    
+	    queryCache.put(table, version, key, rows);
+	}
+	
+	return rows;
+    }
+    
+    /**
+     * Create a filter of a field value in min..max inclusively.
+     * @param field a field name stored in the tariff table columns
+     * @param min the lower boundary for the field
+     * @param max the upper boundary for the field
+     * @return the filter
+     */
+    static FilterExpression rangeFilter(String field, double min,
+	    double max) {
+	List<FilterExpression> bounds = new ArrayList<>();
+	
+	bounds.add(new FilterExpression.Comparison(field,
+		FilterExpression.Operator.GE, min));
+	bounds.add(new FilterExpression.Comparison(field,
+		FilterExpression.Operator.LE, max));
+	return new FilterExpression.Junction(true, bounds);
+    }
+    
+    /**
+     * Find all table rows having a field value in min..max inclusively.
+     * Depending on the data size, the column is either scanned or the rows
+     * are looked up in the sorted index of the field.
+     * @param table the tariff table
+     * @param field a field name of {@code Tariff} or its subclass
+     * @param min the lower boundary for the field
+     * @param max the upper boundary for the field
+     * @return the bitmap of the matching rows
+     */
+    RowBitmap filterBitmap(TariffTable table, String field,
+	    double min, double max) {
+	if (!table.hasColumn(field)) {
+	    return RowBitmap.of(table.select(ConsoleHelper.getInstance()
+		    .getPredicate(field, min, max), table.allRows()));
+	}
+	
+	if (indexed && (table.size() >= MIN_INDEXED_TARIFFS)) {
+	    return RowBitmap.of(table.getIndex(field).select(min, max));
+	}
+	
+	return RowBitmap.of(table.select(field, min, max));
     }
     
     /**
      * Set up and start the console for working with the mobile company.
+     * The console works on the data of the moment it starts, until the
+     * filters are cleared, so its queries are not disturbed by reloads.
      */
     public void startConsole() {
-        ConsoleHelper h = ConsoleHelper.getInstance();
-        Scanner scanner = new Scanner(System.in, "UTF-8");
-        
-        List<Tariff> queryResult = new ArrayList<>(tariffs);
-
-        String input;
-        String filter;
-        double min;
-        double max;
-
-        // initialise available commands
-        h.initFilterCommands();
-        
-        System.out.println(name);
-        System.out.println("Number of clients: " + countClients());
-        System.out.println("Number of tariffs: " + countTariffs());
-        System.out.println("\n");
-        System.out.println("Please, type 'help' to get the console help");
-        System.out.println("\n");
-        
-        while (true) {
-            System.out.print(">> ");
-            input = scanner.nextLine();
-
-            // exit the console (exit)
-            if (input.matches("\\s*exit\\s*")) {
-                break;
-            }
-
-            // show the filtered tariffs list (ls)
-            if (input.matches("\\s*ls\\s*")) {
-                if (queryResult.isEmpty()) {
-                    System.out.println("Nothing to output.");
-                } else {
-		    queryResult.stream().forEach(System.out::println);
-                    System.out.println("Found " + queryResult.size() 
-                	    + " tariffs");
-                }
-                
-                continue;
-            }
-
-            // show all of the tariffs (ls all)
-            if (input.matches("\\s*ls\\s+all\\s*")) {
-		tariffs.stream().forEach(System.out::println);
-                continue;
-            }
-
-            // show help on console commands (help)
-            if (input.matches("\\s*help\\s*")) {
-                h.showHelp();
-                continue;
-            }
-
-            // clear the tariff list filters (clear)
-            if (input.matches("\\s*clear\\s*")) {
-                queryResult.clear();
-                queryResult.addAll(tariffs);
-                continue;
-            }
-
-            // filter tariffs
-            if (h.checkCommand(input)) {
-        	filter = h.extractCommand(input);
-                min = h.extractMin(input);
-                max = h.extractMax(input);
-
-                queryResult = filterTariffs(queryResult,
-                	h.getPredicate(filter, min, max)); 
-                continue;
-            }
-            
-            // if nothing fits
-            System.out.println("Invalid command");
-            System.out.println("Enter 'help' to get a list of "
-            	+ "available commands");
-        }
-        
-        scanner.close();
+	TariffRenderer out = new TariffRenderer(System.out);
+	
+	ConsoleHelper.getInstance().initFilterCommands();
+	try (BufferedReader in = new BufferedReader(
+		new InputStreamReader(System.in, "UTF-8"))) {
+	    new ConsoleSession(this, out, true).run(in);
+	} catch (IOException e) {
+	    LOGGER.error("Could not read the console input.");
+	    LOGGER.error(e);
+	}
+    }
+    
+    /**
+     * Run the console commands of a script file, one per line, and print
+     * their output to the standard output followed by the timings of the
+     * commands. The script stops at the 'exit' command or at its end.
+     * @param script the script file
+     */
+    public void runBatch(File script) {
+	try (InputStream in = new FileInputStream(script)) {
+	    runBatch(in, System.out);
+	} catch (FileNotFoundException e) {
+	    LOGGER.error("Script file " + script + " not found.");
+	    LOGGER.error(e);
+	} catch (IOException e) {
+	    LOGGER.error("Could not read the script file " + script + ".");
+	    LOGGER.error(e);
+	}
+    }
+    
+    /**
+     * Run the console commands read from a stream, e. g. a pipe, one per
+     * line, and write their output followed by the timings of the commands.
+     * The output is flushed in bulk rather than after every command. The
+     * streams are not closed.
+     * @param in the stream of the commands
+     * @param out the stream of the output
+     * @throws IOException if the commands cannot be read
+     */
+    public void runBatch(InputStream in, OutputStream out)
+	    throws IOException {
+	BufferedReader reader = new BufferedReader(
+		new InputStreamReader(in, "UTF-8"));
+	
+	ConsoleHelper.getInstance().initFilterCommands();
+	new ConsoleSession(this, new TariffRenderer(out), false).run(reader);
+    }
+    
+    /**
+     * Start serving the console commands on a port of the loopback
+     * address. Each connection gets a console session of its own, with its
+     * own filters, on the shared data of the company; the sessions run on
+     * virtual threads where the JVM has them.
+     * @param port the port, 0 for any free port
+     * @return the port the server listens on, or -1 if it could not start
+     * @see #startConsole()
+     */
+    public synchronized int startServer(int port) {
+	if (queryServer != null) {
+	    return queryServer.getPort();
+	}
+	
+	try {
+	    QueryServer server = new QueryServer(this, port);
+	    
+	    server.start();
+	    queryServer = server;
+	    return server.getPort();
+	} catch (IOException e) {
+	    LOGGER.error("Could not start the query server on port "
+		    + port + ".");
+	    LOGGER.error(e);
+	    return -1;
+	}
+    }
+    
+    /**
+     * Stop serving the console commands and close the open sessions.
+     */
+    public synchronized void stopServer() {
+	if (queryServer == null) {
+	    return;
+	}
+	
+	try {
+	    queryServer.close();
+	} catch (IOException e) {
+	    LOGGER.warn(e);
+	}
+	
+	queryServer = null;
+    }
+    
+    /**
+     * Gets the current data of the company.
+     * @return the data
+     */
+    Dataset getDataset() {
+	return data.get();
+    }
+    
+    /**
+     * Gets the registry of the statistics of the timed operations.
+     * @return the registry
+     */
+    Metrics getMetricsRegistry() {
+	return metrics;
     }
 }
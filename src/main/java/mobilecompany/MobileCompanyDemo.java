@@ -1,5 +1,8 @@
 package mobilecompany;
 
+import java.io.File;
+import java.io.IOException;
+
 /**
  * A demo class. 
  *
@@ -8,15 +11,34 @@ public class MobileCompanyDemo {
     
     private MobileCompanyDemo() {}
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         MobileCompany company = new MobileCompany("Blau.de");
         
         company.setClientsFile("data/clients.txt");
         company.setTariffsFile("data/tariffs.txt");
+        company.setSnapshotFile("data/snapshot.bin");
+        company.exportMetrics();
         
-        company.loadClients();
-        company.loadTariffs();
+        company.load();
         company.sortTariffsByMonthly();
-        company.startConsole();
+        
+        // run a script of commands if given, '-' for the standard input,
+        // or serve the console on a port along with the local one
+        if (args.length == 0) {
+            company.startConsole();
+        } else if (args[0].equals("--serve")) {
+            int port = company.startServer((args.length > 1)
+                    ? Integer.parseInt(args[1]) : 0);
+            
+            System.out.println("Serving the console on port " + port);
+            company.startConsole();
+            company.stopServer();
+        } else if (args[0].equals("-")) {
+            company.runBatch(System.in, System.out);
+        } else {
+            company.runBatch(new File(args[0]));
+        }
+        
+        company.unexportMetrics();
     }
 }
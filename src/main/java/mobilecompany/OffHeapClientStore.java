@@ -0,0 +1,696 @@
+package mobilecompany;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * A store of clients kept off the heap, for very large numbers of clients.
+ * Each client is a fixed-size row of the id and the tariff id (ints) and
+ * the references of the name and surname in a {@link StringArena} (longs)
+ * in direct buffers, and the rows are found by id through an
+ * open-addressing hash table which is off the heap too. So the store puts
+ * almost nothing on the heap for the garbage collector to trace.
+ * <br>
+ * {@code Client} objects are only created when requested, by
+ * {@link #get(int)} or the iteration; they are copies, so changing them does
+ * not change the store, use {@link #put(Client)} instead.
+ * <br>
+ * A put client replaces the row of the client with the same id. Removed
+ * clients leave deleted rows, which are skipped by the iteration; once the
+ * deleted rows outnumber the clients, the rows are compacted and the
+ * buffers left empty are released. The strings are kept, since other
+ * clients may refer to them.
+ * <br>
+ * The rows and the hash table are made of small buffers, so a
+ * {@link #fork()} of the store shares them and the changes made to either
+ * store afterwards only copy the buffers they touch. The forks share the
+ * string arena too, which only grows, so the strings of clients removed or
+ * changed in a fork are only released with the last of the forks.
+ * <br>
+ * A client takes a row of 24 bytes and, with the table at most 60% full
+ * and its size a power of two, 14 to 27 bytes of slots, so about 50 bytes
+ * of direct memory, plus the distinct names and surnames in the arena,
+ * which grows by 16 MiB at a time. The row buffers hold 4096 rows (96
+ * KiB) and the table buffers 8192 slots (64 KiB); a fork allocates one
+ * such buffer the first time it changes a shared buffer.
+ * <br>
+ * The direct buffers are only freed when the garbage collector finds them
+ * unreachable, after the store or the last fork sharing them is dropped.
+ * All direct buffers of the JVM are limited by
+ * {@code -XX:MaxDirectMemorySize}, which defaults to the maximum heap
+ * size ({@code -Xmx}); beyond it, an allocation first asks for a full
+ * collection ({@code System.gc()}, so it must not be disabled by
+ * {@code -XX:+DisableExplicitGC}) and then fails with an
+ * {@code OutOfMemoryError} for direct buffer memory. So a process keeping
+ * many clients off the heap, and forking the store while they change,
+ * should set the limit above the size of the store and of its forks'
+ * copies rather than rely on the default.
+ */
+class OffHeapClientStore implements ClientStore {
+
+    /** The size of a row in bytes. */
+    private static final int ROW_SIZE = 24;
+
+    /** The number of bits of the row number within a row buffer. */
+    private static final int ROW_BITS = 12;
+
+    /** The number of bits of the slot number within a table buffer. */
+    private static final int SLOT_BITS = 13;
+
+    /** The size of a slot of the hash table in bytes: id and row plus one. */
+    private static final int SLOT_SIZE = 8;
+
+    /** The largest ratio of clients to slots before the table grows. */
+    private static final double LOAD_FACTOR = 0.6;
+
+    /** The name reference of a deleted row. */
+    private static final long DELETED = -1;
+
+    /** The names and surnames, shared with the forks. */
+    private final StringArena strings;
+
+    /** The row buffers. */
+    private ByteBuffer[] rows;
+
+    /** The flags telling which row buffers are not shared with a fork. */
+    private boolean[] rowsOwned;
+
+    /** The hash table buffers. */
+    private ByteBuffer[] table;
+
+    /** The flags telling which table buffers are not shared with a fork. */
+    private boolean[] tableOwned;
+
+    /** The number of slots of the hash table, a power of two. */
+    private int capacity;
+
+    /** The number of rows, including deleted ones. */
+    private int rowCount;
+
+    /** The number of clients. */
+    private int size;
+
+    /**
+     * Instantiates a new empty off-heap store.
+     */
+    public OffHeapClientStore() {
+        strings = new StringArena();
+        clear();
+    }
+
+    /**
+     * Instantiates a new fork of an off-heap store.
+     *
+     * @param from the store
+     */
+    private OffHeapClientStore(OffHeapClientStore from) {
+        strings = from.strings;
+        rows = from.rows.clone();
+        rowsOwned = new boolean[rows.length];
+        Arrays.fill(from.rowsOwned, false);
+        table = from.table.clone();
+        tableOwned = new boolean[table.length];
+        Arrays.fill(from.tableOwned, false);
+        capacity = from.capacity;
+        rowCount = from.rowCount;
+        size = from.size;
+    }
+
+    /* (non-Javadoc)
+     * @see mobilecompany.ClientStore#fork()
+     */
+    @Override
+    public OffHeapClientStore fork() {
+        return new OffHeapClientStore(this);
+    }
+
+    /* (non-Javadoc)
+     * @see mobilecompany.ClientStore#put(mobilecompany.Client)
+     */
+    @Override
+    public Client put(Client c) {
+        int slot = find(c.getId());
+        int row = rowOfSlot(slot);
+
+        if (row >= 0) {
+            Client old = client(row);
+            writeRow(row, c);
+            return old;
+        }
+
+        row = rowCount++;
+        if ((row >>> ROW_BITS) == rows.length) {
+            rows = Arrays.copyOf(rows, rows.length + 1);
+            rowsOwned = Arrays.copyOf(rowsOwned, rows.length);
+            rows[rows.length - 1] = newBuffer(ROW_SIZE << ROW_BITS);
+            rowsOwned[rows.length - 1] = true;
+        }
+
+        writeRow(row, c);
+        setSlot(slot, c.getId(), row);
+        if (++size > capacity * LOAD_FACTOR) {
+            rehash(capacity * 2);
+        }
+
+        return null;
+    }
+
+    /* (non-Javadoc)
+     * @see mobilecompany.ClientStore#putAll(mobilecompany.ClientColumns)
+     */
+    @Override
+    public void putAll(ClientColumns columns) {
+        int n = columns.size();
+
+        if ((rowCount > 0) || (n == 0)) {
+            ClientStore.super.putAll(columns);
+            return;
+        }
+
+        String[] s = columns.getStrings();
+        long[] refs = new long[s.length];
+        int[] ids = columns.getIds();
+        int[] rowNumbers = new int[n];
+        int[] tariffIds = columns.getTariffIds();
+        int buffers = (n + (1 << ROW_BITS) - 1) >>> ROW_BITS;
+        int slots = capacity;
+
+        for (int i = 0; i < s.length; i++) {
+            refs[i] = strings.intern(s[i]);
+        }
+
+        rows = new ByteBuffer[buffers];
+        rowsOwned = new boolean[buffers];
+        for (int i = 0; i < buffers; i++) {
+            rows[i] = newBuffer(ROW_SIZE << ROW_BITS);
+            rowsOwned[i] = true;
+        }
+
+        for (int row = 0; row < n; row++) {
+            ByteBuffer buf = rows[row >>> ROW_BITS];
+            int offset = rowOffset(row);
+
+            buf.putInt(offset, ids[row]);
+            buf.putInt(offset + 4, tariffIds[row]);
+            buf.putLong(offset + 8, refs[columns.getName(row)]);
+            buf.putLong(offset + 16, refs[columns.getSurname(row)]);
+            rowNumbers[row] = row;
+        }
+
+        while (n > slots * LOAD_FACTOR) {
+            slots *= 2;
+        }
+
+        allocateTable(slots);
+        rowCount = n;
+        size = n;
+
+        // the rows are put into the table range of slots by range of slots
+        int[][] sorted = IntIntMap.sortBySlot(ids, rowNumbers, n, capacity);
+
+        for (int i = 0; i < n; i++) {
+            int slot = find(sorted[0][i]);
+
+            if (rowOfSlot(slot) >= 0) {
+                // duplicate ids: the later clients replace the earlier ones
+                clear();
+                ClientStore.super.putAll(columns);
+                return;
+            }
+
+            setSlot(slot, sorted[0][i], sorted[1][i]);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see mobilecompany.ClientStore#remove(int)
+     */
+    @Override
+    public Client remove(int id) {
+        int slot = find(id);
+        int row = rowOfSlot(slot);
+
+        if (row < 0) {
+            return null;
+        }
+
+        Client old = client(row);
+        writableRowBuffer(row).putLong(rowOffset(row) + 8, DELETED);
+        clearSlot(slot);
+        size--;
+
+        if ((rowCount - size > size)
+                && (rowCount - size >= (1 << ROW_BITS))) {
+            compact();
+        }
+
+        return old;
+    }
+
+    /**
+     * Check if there is a client with a given id.
+     *
+     * @param id the client id
+     * @return true if there is such client
+     */
+    public boolean contains(int id) {
+        return rowOfSlot(find(id)) >= 0;
+    }
+
+    /**
+     * Get a client by id.
+     *
+     * @param id the client id
+     * @return a new {@code Client} with the data of the client or null if
+     * there is no such client
+     */
+    @Override
+    public Client get(int id) {
+        int row = rowOfSlot(find(id));
+        return (row < 0) ? null : client(row);
+    }
+
+    /**
+     * Get the tariff id of a client without creating a {@code Client}.
+     *
+     * @param id the client id
+     * @return the tariff id or -1 if there is no such client
+     */
+    public int getTariffId(int id) {
+        int row = rowOfSlot(find(id));
+        return (row < 0) ? -1 : rowBuffer(row).getInt(rowOffset(row) + 4);
+    }
+
+    /* (non-Javadoc)
+     * @see mobilecompany.ClientStore#size()
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of bytes allocated off the heap.
+     *
+     * @return the number of bytes
+     */
+    public long allocatedBytes() {
+        long tableBytes = 0;
+
+        for (ByteBuffer b : table) {
+            tableBytes += b.capacity();
+        }
+
+        return ((long) rows.length * (ROW_SIZE << ROW_BITS)) + tableBytes
+                + strings.allocatedBytes();
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Iterable#iterator()
+     */
+    @Override
+    public Iterator<Client> iterator() {
+        return Spliterators.iterator(spliterator());
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Iterable#spliterator()
+     */
+    @Override
+    public Spliterator<Client> spliterator() {
+        return new RowSpliterator(0, rowCount, rowCount == size);
+    }
+
+    /**
+     * Remove all clients. The strings are kept.
+     */
+    private void clear() {
+        rows = new ByteBuffer[0];
+        rowsOwned = new boolean[0];
+        allocateTable(1 << 10);
+        rowCount = 0;
+        size = 0;
+    }
+
+    /**
+     * Write a client into a row.
+     *
+     * @param row the row number
+     * @param c the client
+     */
+    private void writeRow(int row, Client c) {
+        ByteBuffer buf = writableRowBuffer(row);
+        int offset = rowOffset(row);
+
+        buf.putInt(offset, c.getId());
+        buf.putInt(offset + 4, c.getTariffId());
+        buf.putLong(offset + 8, strings.intern(c.getName()));
+        buf.putLong(offset + 16, strings.intern(c.getSurname()));
+    }
+
+    /**
+     * Check if a row is deleted.
+     *
+     * @param row the row number
+     * @return true if the client of the row was removed
+     */
+    private boolean isDeleted(int row) {
+        return rowBuffer(row).getLong(rowOffset(row) + 8) == DELETED;
+    }
+
+    /**
+     * Create a {@code Client} from a row.
+     *
+     * @param row the row number
+     * @return the client
+     */
+    private Client client(int row) {
+        ByteBuffer buf = rowBuffer(row);
+        int offset = rowOffset(row);
+
+        return new Client(strings.get(buf.getLong(offset + 8)),
+                strings.get(buf.getLong(offset + 16)),
+                buf.getInt(offset), buf.getInt(offset + 4));
+    }
+
+    /**
+     * Get the buffer of a row.
+     *
+     * @param row the row number
+     * @return the buffer
+     */
+    private ByteBuffer rowBuffer(int row) {
+        return rows[row >>> ROW_BITS];
+    }
+
+    /**
+     * Get the buffer of a row for writing, copying it first if it is shared
+     * with a fork.
+     *
+     * @param row the row number
+     * @return the buffer
+     */
+    private ByteBuffer writableRowBuffer(int row) {
+        int i = row >>> ROW_BITS;
+
+        if (!rowsOwned[i]) {
+            rows[i] = copyOf(rows[i]);
+            rowsOwned[i] = true;
+        }
+
+        return rows[i];
+    }
+
+    /**
+     * Get the offset of a row in its buffer.
+     *
+     * @param row the row number
+     * @return the offset
+     */
+    private static int rowOffset(int row) {
+        return (row & ((1 << ROW_BITS) - 1)) * ROW_SIZE;
+    }
+
+    /**
+     * Find the slot of an id: the slot holding it or the empty slot where
+     * it would be put.
+     *
+     * @param id the client id
+     * @return the slot
+     */
+    private int find(int id) {
+        int mask = capacity - 1;
+        int slot = IntIntMap.mix(id) & mask;
+
+        while ((rowOfSlot(slot) >= 0) && (idOfSlot(slot) != id)) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    /**
+     * Get the id in a slot.
+     *
+     * @param slot the slot
+     * @return the id
+     */
+    private int idOfSlot(int slot) {
+        return table[slot >>> SLOT_BITS].getInt(slotOffset(slot));
+    }
+
+    /**
+     * Get the row in a slot.
+     *
+     * @param slot the slot
+     * @return the row number or -1 if the slot is empty
+     */
+    private int rowOfSlot(int slot) {
+        return table[slot >>> SLOT_BITS].getInt(slotOffset(slot) + 4) - 1;
+    }
+
+    /**
+     * Fill a slot.
+     *
+     * @param slot the slot
+     * @param id the id
+     * @param row the row number
+     */
+    private void setSlot(int slot, int id, int row) {
+        int i = slot >>> SLOT_BITS;
+
+        if (!tableOwned[i]) {
+            table[i] = copyOf(table[i]);
+            tableOwned[i] = true;
+        }
+
+        ByteBuffer buf = table[i];
+        int offset = slotOffset(slot);
+
+        buf.putInt(offset, id);
+        buf.putInt(offset + 4, row + 1);
+    }
+
+    /**
+     * Empty a slot, moving back the entries after it in its probe sequence
+     * so that no deleted markers are needed.
+     *
+     * @param slot the slot
+     */
+    private void clearSlot(int slot) {
+        int mask = capacity - 1;
+        int hole = slot;
+        int next = (slot + 1) & mask;
+
+        while (rowOfSlot(next) >= 0) {
+            int id = idOfSlot(next);
+            int home = IntIntMap.mix(id) & mask;
+
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                setSlot(hole, id, rowOfSlot(next));
+                hole = next;
+            }
+
+            next = (next + 1) & mask;
+        }
+
+        setSlot(hole, 0, -1);
+    }
+
+    /**
+     * Get the offset of a slot in its buffer.
+     *
+     * @param slot the slot
+     * @return the offset
+     */
+    private static int slotOffset(int slot) {
+        return (slot & ((1 << SLOT_BITS) - 1)) * SLOT_SIZE;
+    }
+
+    /**
+     * Allocate an empty hash table.
+     *
+     * @param slots the number of slots, a power of two
+     */
+    private void allocateTable(int slots) {
+        int perBuffer = Math.min(slots, 1 << SLOT_BITS);
+
+        table = new ByteBuffer[slots / perBuffer];
+        tableOwned = new boolean[table.length];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = newBuffer(perBuffer * SLOT_SIZE);
+            tableOwned[i] = true;
+        }
+
+        capacity = slots;
+    }
+
+    /**
+     * Allocate a direct buffer in the native byte order.
+     *
+     * @param bytes the size of the buffer
+     * @return the buffer
+     */
+    private static ByteBuffer newBuffer(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Copy a buffer.
+     *
+     * @param buf the buffer
+     * @return a new buffer with the same content
+     */
+    private static ByteBuffer copyOf(ByteBuffer buf) {
+        ByteBuffer src = buf.duplicate();
+
+        src.clear();
+        return newBuffer(buf.capacity()).put(src);
+    }
+
+    /**
+     * Move the rows into a larger hash table.
+     *
+     * @param slots the new number of slots, a power of two
+     */
+    private void rehash(int slots) {
+        allocateTable(slots);
+
+        for (int row = 0; row < rowCount; row++) {
+            if (!isDeleted(row)) {
+                int id = rowBuffer(row).getInt(rowOffset(row));
+                setSlot(find(id), id, row);
+            }
+        }
+    }
+
+    /**
+     * Move the clients to the first rows, keeping their order, release the
+     * row buffers left empty and put the rows into the hash table again.
+     */
+    private void compact() {
+        int n = 0;
+
+        for (int row = 0; row < rowCount; row++) {
+            if (!isDeleted(row)) {
+                if (n < row) {
+                    ByteBuffer from = rowBuffer(row);
+                    ByteBuffer to = writableRowBuffer(n);
+                    int src = rowOffset(row);
+                    int dst = rowOffset(n);
+
+                    to.putLong(dst, from.getLong(src));
+                    to.putLong(dst + 8, from.getLong(src + 8));
+                    to.putLong(dst + 16, from.getLong(src + 16));
+                }
+                n++;
+            }
+        }
+
+        rowCount = n;
+        n = (n + (1 << ROW_BITS) - 1) >>> ROW_BITS;
+        rows = Arrays.copyOf(rows, n);
+        rowsOwned = Arrays.copyOf(rowsOwned, n);
+
+        rehash(capacity);
+    }
+
+    /**
+     * A spliterator over a range of rows, which splits it in halves.
+     */
+    private class RowSpliterator implements Spliterator<Client> {
+
+        /** The next row. */
+        private int from;
+
+        /** The row after the last one. */
+        private final int to;
+
+        /** Whether there are no deleted rows in the range. */
+        private final boolean sized;
+
+        /**
+         * Instantiates a new row spliterator.
+         *
+         * @param from the first row
+         * @param to the row after the last one
+         * @param sized whether there are no deleted rows in the range
+         */
+        RowSpliterator(int from, int to, boolean sized) {
+            this.from = from;
+            this.to = to;
+            this.sized = sized;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.Spliterator#tryAdvance(java.util.function.Consumer)
+         */
+        @Override
+        public boolean tryAdvance(Consumer<? super Client> action) {
+            while (from < to) {
+                int row = from++;
+
+                if (!isDeleted(row)) {
+                    action.accept(client(row));
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.Spliterator#forEachRemaining(
+         * java.util.function.Consumer)
+         */
+        @Override
+        public void forEachRemaining(Consumer<? super Client> action) {
+            while (from < to) {
+                int row = from++;
+
+                if (!isDeleted(row)) {
+                    action.accept(client(row));
+                }
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.Spliterator#trySplit()
+         */
+        @Override
+        public Spliterator<Client> trySplit() {
+            int mid = (from + to) >>> 1;
+
+            if (mid <= from) {
+                return null;
+            }
+
+            Spliterator<Client> prefix = new RowSpliterator(from, mid,
+                    sized);
+            from = mid;
+            return prefix;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.Spliterator#estimateSize()
+         */
+        @Override
+        public long estimateSize() {
+            return to - from;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.Spliterator#characteristics()
+         */
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL | DISTINCT
+                    | (sized ? SIZED | SUBSIZED : 0);
+        }
+    }
+}
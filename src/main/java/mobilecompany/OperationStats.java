@@ -0,0 +1,263 @@
+package mobilecompany;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The statistics of a timed operation: the number of runs, the records and
+ * bytes processed, the total time and a histogram of the latencies. All
+ * counters are lock-free, so the operation can be timed from many threads
+ * at once.
+ * <br>
+ * A run is timed by {@link #start()} and {@link #stop(long, long, long)}.
+ * When the statistics are disabled {@code start()} returns a negative
+ * value and {@code stop} records nothing, so the cost of a timed operation
+ * is a volatile read.
+ * <br>
+ * The operations which take only a few microseconds and are run for every
+ * record, like parsing, can be sampled: only one run of every few is timed,
+ * while all runs, records and bytes are counted exactly. The throughput is
+ * estimated from the timed runs.
+ */
+public final class OperationStats implements OperationStatsMBean {
+
+    /** The number of nanoseconds in a microsecond. */
+    private static final double NANOS_PER_MICRO = 1e3;
+
+    /** The number of nanoseconds in a second. */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /** The start time of a run when the statistics are disabled. */
+    private static final long DISABLED = -1;
+
+    /** The start time of a run which is counted but not timed. */
+    private static final long UNTIMED = -2;
+
+    /** The operation name. */
+    private final String name;
+
+    /** The registry the statistics belong to. */
+    private final Metrics metrics;
+
+    /** The mask of the run numbers which are not timed. */
+    private final int sampleMask;
+
+    /** The number of started runs, updated without synchronization. */
+    private int ticks;
+
+    /** The number of runs. */
+    private final LongAdder count = new LongAdder();
+
+    /** The number of timed runs. */
+    private final LongAdder timed = new LongAdder();
+
+    /** The number of processed records. */
+    private final LongAdder records = new LongAdder();
+
+    /** The number of read bytes. */
+    private final LongAdder bytes = new LongAdder();
+
+    /** The total time of the runs in nanoseconds. */
+    private final LongAdder nanos = new LongAdder();
+
+    /** The largest latency in nanoseconds. */
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    /** The latencies in nanoseconds. */
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    /**
+     * Instantiates new statistics.
+     *
+     * @param name the operation name
+     * @param metrics the registry the statistics belong to
+     * @param samplePeriod the number of runs of which one is timed, a power
+     * of two
+     */
+    OperationStats(String name, Metrics metrics, int samplePeriod) {
+        this.name = name;
+        this.metrics = metrics;
+        sampleMask = samplePeriod - 1;
+    }
+
+    /**
+     * Gets the operation name.
+     *
+     * @return the operation name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Start timing a run of the operation.
+     *
+     * @return the start time to be passed to {@link #stop(long, long, long)},
+     * negative if the statistics are disabled or the run is not sampled
+     */
+    public long start() {
+        if (!metrics.isEnabled()) {
+            return DISABLED;
+        }
+
+        // a lost update only shifts the sample
+        if ((sampleMask != 0) && ((++ticks & sampleMask) != 0)) {
+            return UNTIMED;
+        }
+
+        return System.nanoTime();
+    }
+
+    /**
+     * Finish timing a run of the operation.
+     *
+     * @param start the value returned by {@link #start()}
+     * @param processed the number of records processed by the run
+     * @param read the number of bytes read by the run
+     */
+    public void stop(long start, long processed, long read) {
+        if (start == DISABLED) {
+            return;
+        }
+
+        if (start == UNTIMED) {
+            count.increment();
+            records.add(processed);
+            bytes.add(read);
+            return;
+        }
+
+        record(System.nanoTime() - start, processed, read);
+    }
+
+    /**
+     * Record a run of the operation timed by the caller. Nothing is recorded
+     * if the statistics are disabled.
+     *
+     * @param elapsed the time of the run in nanoseconds
+     * @param processed the number of records processed by the run
+     * @param read the number of bytes read by the run
+     */
+    void record(long elapsed, long processed, long read) {
+        if (!metrics.isEnabled()) {
+            return;
+        }
+
+        count.increment();
+        records.add(processed);
+        bytes.add(read);
+        timed.increment();
+        nanos.add(elapsed);
+        maxNanos.accumulate(elapsed);
+        latencies.record(elapsed);
+    }
+
+    /* (non-Javadoc)
+     * @see mobilecompany.OperationStatsMBean#getCount()
+     */
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    /* (non-Javadoc)
+     * @see mobilecompany.OperationStatsMBean#getRecords()
+     */
+    @Override
+    public long getRecords() {
+        return records.sum();
+    }
+
+    /* (non-Javadoc)
+     * @see mobilecompany.OperationStatsMBean#getBytes()
+     */
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    /* (non-Javadoc)
+     * @see mobilecompany.OperationStatsMBean#getRecordsPerSecond()
+     */
+    @Override
+    public double getRecordsPerSecond() {
+        double total = estimateNanos();
+
+        return (total == 0) ? 0 : getRecords() * NANOS_PER_SECOND / total;
+    }
+
+    /* (non-Javadoc)
+     * @see mobilecompany.OperationStatsMBean#getBytesPerSecond()
+     */
+    @Override
+    public double getBytesPerSecond() {
+        double total = estimateNanos();
+
+        return (total == 0) ? 0 : getBytes() * NANOS_PER_SECOND / total;
+    }
+
+    /* (non-Javadoc)
+     * @see mobilecompany.OperationStatsMBean#getMeanMicros()
+     */
+    @Override
+    public double getMeanMicros() {
+        long n = timed.sum();
+
+        return (n == 0) ? 0 : nanos.sum() / NANOS_PER_MICRO / n;
+    }
+
+    /* (non-Javadoc)
+     * @see mobilecompany.OperationStatsMBean#getP50Micros()
+     */
+    @Override
+    public double getP50Micros() {
+        return percentile(50);
+    }
+
+    /* (non-Javadoc)
+     * @see mobilecompany.OperationStatsMBean#getP99Micros()
+     */
+    @Override
+    public double getP99Micros() {
+        return percentile(99);
+    }
+
+    /* (non-Javadoc)
+     * @see mobilecompany.OperationStatsMBean#getP999Micros()
+     */
+    @Override
+    public double getP999Micros() {
+        return percentile(99.9);
+    }
+
+    /**
+     * Estimate the total time of all runs from the timed ones.
+     *
+     * @return the total time in nanoseconds
+     */
+    private double estimateNanos() {
+        long n = timed.sum();
+
+        return (n == 0) ? 0 : (double) nanos.sum() * getCount() / n;
+    }
+
+    /**
+     * Get a percentile of the latency. The histogram only knows the bucket
+     * of a latency, so the result is capped by the largest latency.
+     *
+     * @param percent the percentile
+     * @return the percentile in microseconds
+     */
+    private double percentile(double percent) {
+        return Math.min(latencies.getPercentile(percent), maxNanos.get())
+                / NANOS_PER_MICRO;
+    }
+
+    /* (non-Javadoc)
+     * @see mobilecompany.OperationStatsMBean#getMaxMicros()
+     */
+    @Override
+    public double getMaxMicros() {
+        return maxNanos.get() / NANOS_PER_MICRO;
+    }
+}
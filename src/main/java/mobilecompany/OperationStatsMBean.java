@@ -0,0 +1,79 @@
+package mobilecompany;
+
+/**
+ * The management interface of the statistics of a timed operation, exported
+ * through JMX. Latencies are in microseconds.
+ */
+public interface OperationStatsMBean {
+
+    /**
+     * Gets the number of times the operation was run.
+     *
+     * @return the number of runs
+     */
+    long getCount();
+
+    /**
+     * Gets the number of records the operation processed, e. g. parsed
+     * clients or matched tariffs.
+     *
+     * @return the number of records
+     */
+    long getRecords();
+
+    /**
+     * Gets the number of bytes the operation read.
+     *
+     * @return the number of bytes
+     */
+    long getBytes();
+
+    /**
+     * Gets the number of records processed per second of the operation.
+     *
+     * @return the throughput in records per second
+     */
+    double getRecordsPerSecond();
+
+    /**
+     * Gets the number of bytes read per second of the operation.
+     *
+     * @return the throughput in bytes per second
+     */
+    double getBytesPerSecond();
+
+    /**
+     * Gets the mean latency.
+     *
+     * @return the mean latency in microseconds
+     */
+    double getMeanMicros();
+
+    /**
+     * Gets the median latency.
+     *
+     * @return the 50th percentile in microseconds
+     */
+    double getP50Micros();
+
+    /**
+     * Gets the 99th percentile of the latency.
+     *
+     * @return the 99th percentile in microseconds
+     */
+    double getP99Micros();
+
+    /**
+     * Gets the 99.9th percentile of the latency.
+     *
+     * @return the 99.9th percentile in microseconds
+     */
+    double getP999Micros();
+
+    /**
+     * Gets the largest latency.
+     *
+     * @return the largest latency in microseconds
+     */
+    double getMaxMicros();
+}
@@ -0,0 +1,303 @@
+package mobilecompany;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A class that loads a clients file in parallel. The file is split into byte
+ * ranges aligned to line boundaries, each range is parsed by a fork/join task
+ * into its own list and the lists are merged in the file order at the end,
+ * so the result is the same as the one of a sequential load.
+ */
+class ParallelClientsLoader {
+
+    /** The logger. */
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /** The smallest size of a byte range parsed by one task. */
+    private static final long MIN_RANGE_SIZE = 1 << 20;
+
+    /** The number of ranges per worker thread, used for load balancing. */
+    private static final int RANGES_PER_THREAD = 4;
+
+    /** The size of the buffer used to read a range. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The pool the tasks are run on. */
+    private final ForkJoinPool pool;
+
+    /**
+     * Instantiates a new parallel clients loader.
+     *
+     * @param pool the pool the tasks are run on
+     */
+    public ParallelClientsLoader(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Load all clients from a file.
+     * @param file the clients file.
+     * @param consumer the consumer receiving the clients in the file order.
+     * @throws IOException if the file could not be read.
+     */
+    public void load(File file, Consumer<? super Client> consumer)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            long[] bounds = split(channel);
+            List<Client>[] parts = newParts(bounds.length - 1);
+
+            try {
+                pool.invoke(new RangeTask(channel, bounds, parts,
+                        0, parts.length));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            // merge the parts in the file order
+            for (List<Client> part : parts) {
+                part.forEach(consumer);
+            }
+        }
+    }
+
+    /**
+     * Split a file into byte ranges, each one starting at a line beginning.
+     * @param channel the file channel.
+     * @return the range boundaries, the first one is 0 and the last one is
+     * the file size.
+     * @throws IOException if the file could not be read.
+     */
+    private long[] split(FileChannel channel) throws IOException {
+        long size = channel.size();
+        int ranges = pool.getParallelism() * RANGES_PER_THREAD;
+        long rangeSize = Math.max(MIN_RANGE_SIZE, size / ranges + 1);
+        List<Long> bounds = new ArrayList<>();
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        long pos = 0;
+
+        bounds.add(0L);
+
+        while ((pos = nextLineStart(channel, buf, pos + rangeSize)) < size) {
+            bounds.add(pos);
+        }
+
+        bounds.add(size);
+
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+
+        return result;
+    }
+
+    /**
+     * Find the beginning of the first line that starts at or after a given
+     * position.
+     * @param channel the file channel.
+     * @param buf a buffer to read the file into.
+     * @param pos the position.
+     * @return the line beginning or the file size if there is none.
+     * @throws IOException if the file could not be read.
+     */
+    private static long nextLineStart(FileChannel channel, ByteBuffer buf,
+            long pos) throws IOException {
+        long size = channel.size();
+        long p = pos - 1;
+
+        while (p < size) {
+            buf.clear();
+            int n = channel.read(buf, p);
+            if (n <= 0) {
+                break;
+            }
+
+            for (int i = 0; i < n; i++) {
+                if (buf.get(i) == '\n') {
+                    return p + i + 1;
+                }
+            }
+
+            p += n;
+        }
+
+        return size;
+    }
+
+    /**
+     * Create an array of lists for the parsed parts of the file.
+     * @param n the number of parts.
+     * @return the array.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Client>[] newParts(int n) {
+        return (List<Client>[]) new List<?>[n];
+    }
+
+    /**
+     * A task that parses a number of consecutive byte ranges of the file,
+     * splitting itself until there is one range left.
+     */
+    private static class RangeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        /** The file channel, shared by all tasks. */
+        private final transient FileChannel channel;
+
+        /** The range boundaries. */
+        private final long[] bounds;
+
+        /** The lists the parsed ranges are stored into. */
+        private final transient List<Client>[] parts;
+
+        /** The first range of this task. */
+        private final int from;
+
+        /** The range after the last one of this task. */
+        private final int to;
+
+        /**
+         * Instantiates a new range task.
+         *
+         * @param channel the file channel
+         * @param bounds the range boundaries
+         * @param parts the lists the parsed ranges are stored into
+         * @param from the first range of the task
+         * @param to the range after the last one of the task
+         */
+        RangeTask(FileChannel channel, long[] bounds, List<Client>[] parts,
+                int from, int to) {
+            this.channel = channel;
+            this.bounds = bounds;
+            this.parts = parts;
+            this.from = from;
+            this.to = to;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.concurrent.RecursiveAction#compute()
+         */
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new RangeTask(channel, bounds, parts, from, mid),
+                        new RangeTask(channel, bounds, parts, mid, to));
+                return;
+            }
+
+            try {
+                parts[from] = parseRange(bounds[from], bounds[from + 1]);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Parse all lines of a byte range.
+         * @param start the range beginning.
+         * @param end the range end (exclusive).
+         * @return the parsed clients.
+         * @throws IOException if the file could not be read.
+         */
+        private List<Client> parseRange(long start, long end)
+                throws IOException {
+            List<Client> result = new ArrayList<>();
+            JSONRecordParser parser = new JSONRecordParser();
+            ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+            long pos = start;
+            long lineOffset = start;
+            int lineStart;
+
+            while (pos < end) {
+                buf.limit(buf.position() + (int) Math.min(
+                        buf.capacity() - buf.position(), end - pos));
+                int n = channel.read(buf, pos);
+                if (n <= 0) {
+                    break;
+                }
+                pos += n;
+                buf.flip();
+
+                // parse complete lines, keep the incomplete one
+                lineStart = 0;
+                for (int i = 0; i < buf.limit(); i++) {
+                    if (buf.get(i) == '\n') {
+                        addClient(result, parser, buf, lineStart, i,
+                                lineOffset);
+                        lineOffset += i + 1 - lineStart;
+                        lineStart = i + 1;
+                    }
+                }
+
+                buf.position(lineStart);
+                buf.compact();
+
+                // grow the buffer for a line longer than it
+                if (!buf.hasRemaining()) {
+                    ByteBuffer larger = ByteBuffer.allocate(
+                            buf.capacity() * 2);
+                    buf.flip();
+                    larger.put(buf);
+                    buf = larger;
+                }
+            }
+
+            // the last line of the file may have no line break
+            if (buf.position() > 0) {
+                addClient(result, parser, buf, 0, buf.position(),
+                        lineOffset);
+            }
+
+            return result;
+        }
+
+        /**
+         * Parse a line and add the client to the result.
+         * @param result the list of clients parsed so far.
+         * @param parser the parser.
+         * @param buf the buffer containing the line.
+         * @param from the line beginning in the buffer.
+         * @param to the line end in the buffer (exclusive).
+         * @param offset the line position in the file, used in messages.
+         */
+        private static void addClient(List<Client> result,
+                JSONRecordParser parser, ByteBuffer buf, int from, int to,
+                long offset) {
+            if ((to > from) && (buf.get(to - 1) == '\r')) {
+                to--;
+            }
+
+            if ((to == from) || (buf.get(from) != '{')) {
+                return;
+            }
+
+            String line = new String(buf.array(), from, to - from,
+                    StandardCharsets.UTF_8);
+
+            try {
+                result.add(parser.parseClient(line));
+            } catch (ParseException e) {
+                LOGGER.warn("Could not parse client at byte " + offset
+                        + ": " + e.getMessage());
+            }
+        }
+    }
+}
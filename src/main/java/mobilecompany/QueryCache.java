@@ -0,0 +1,204 @@
+package mobilecompany;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import tariffs.RowBitmap;
+import tariffs.TariffTable;
+
+/**
+ * A bounded LRU cache of tariff query results. A result is the bitmap of the
+ * matching rows of a {@code TariffTable}, kept under the normal form of the
+ * filters which produced it. The cache holds at most a given number of
+ * results taking at most a given number of bytes; the least recently used
+ * results are evicted first.
+ * <br>
+ * A result is only returned for the same table in the same version, so
+ * the results become outdated as soon as a tariff is changed or the tariffs
+ * are reloaded. The cache is thread-safe.
+ */
+class QueryCache {
+
+    /** The largest number of results. */
+    private int maxEntries;
+
+    /** The largest number of bytes of the results. */
+    private long maxBytes;
+
+    /** The results by key, in the access order. */
+    private final LinkedHashMap<String, Entry> entries =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    /** The number of bytes of the results. */
+    private long bytes;
+
+    /** The number of lookups which found a result. */
+    private long hits;
+
+    /** The number of lookups which found no valid result. */
+    private long misses;
+
+    /**
+     * Instantiates a new empty cache.
+     *
+     * @param maxEntries the largest number of results
+     * @param maxBytes the largest number of bytes of the results
+     */
+    public QueryCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Look up a result.
+     *
+     * @param table the queried table
+     * @param version the version of the table the result must be for
+     * @param key the normal form of the filters
+     * @return the matching rows or null if there is no valid result
+     */
+    public synchronized RowBitmap get(TariffTable table, long version,
+            String key) {
+        Entry e = entries.get(key);
+
+        if ((e != null) && (e.table == table) && (e.version == version)) {
+            hits++;
+            return e.rows;
+        }
+
+        if (e != null) {
+            // outdated, it would never be returned again
+            entries.remove(key);
+            bytes -= e.bytes;
+        }
+
+        misses++;
+        return null;
+    }
+
+    /**
+     * Add a result, evicting the least recently used results if the limits
+     * are exceeded. A result larger than the byte limit is not kept.
+     *
+     * @param table the queried table
+     * @param version the version of the table the result was computed for
+     * @param key the normal form of the filters
+     * @param rows the matching rows
+     */
+    public synchronized void put(TariffTable table, long version, String key,
+            RowBitmap rows) {
+        Entry e = new Entry(table, version, rows,
+                rows.estimateBytes() + 2L * key.length());
+        Entry old = entries.put(key, e);
+
+        if (old != null) {
+            bytes -= old.bytes;
+        }
+
+        bytes += e.bytes;
+        evict();
+    }
+
+    /**
+     * Remove all results.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Sets the limits, evicting results if they are exceeded.
+     *
+     * @param maxEntries the largest number of results
+     * @param maxBytes the largest number of bytes of the results
+     */
+    public synchronized void setLimits(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    /**
+     * Gets the number of results.
+     *
+     * @return the number of results
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the estimated number of bytes of the results.
+     *
+     * @return the number of bytes
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Gets the number of lookups which found a result.
+     *
+     * @return the number of hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of lookups which found no valid result.
+     *
+     * @return the number of misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Remove the least recently used results while the limits are exceeded.
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+
+        while (it.hasNext()
+                && ((entries.size() > maxEntries) || (bytes > maxBytes))) {
+            bytes -= it.next().getValue().bytes;
+            it.remove();
+        }
+    }
+
+    /**
+     * A cached result.
+     */
+    private static final class Entry {
+
+        /** The queried table. */
+        final TariffTable table;
+
+        /** The version of the table the result was computed for. */
+        final long version;
+
+        /** The matching rows. */
+        final RowBitmap rows;
+
+        /** The estimated number of bytes of the result. */
+        final long bytes;
+
+        /**
+         * Instantiates a new entry.
+         *
+         * @param table the queried table
+         * @param version the version of the table
+         * @param rows the matching rows
+         * @param bytes the estimated number of bytes
+         */
+        Entry(TariffTable table, long version, RowBitmap rows, long bytes) {
+            this.table = table;
+            this.version = version;
+            this.rows = rows;
+            this.bytes = bytes;
+        }
+    }
+}
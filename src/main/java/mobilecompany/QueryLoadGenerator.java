@@ -0,0 +1,225 @@
+package mobilecompany;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A load generator for the query server. It opens a number of sessions at
+ * once, waits until all of them are connected and then sends each of them
+ * a number of commands, one at a time, waiting for the prompt after each
+ * one. At the end it prints the throughput and the latencies of the
+ * commands.
+ * <br>
+ * Usage: {@code QueryLoadGenerator port [sessions [commands [script]]]},
+ * where the commands are taken in turn from the lines of the script file,
+ * or from a built-in mix of filters and listings.
+ */
+public final class QueryLoadGenerator {
+
+    /** The commands sent if no script is given. */
+    private static final List<String> DEFAULT_COMMANDS = Arrays.asList(
+            "monthly 0 30", "sms 0 0.1", "ls", "clear",
+            "where monthly < 20 and internet <= 0.24", "sort monthly top 3",
+            "clear", "ls 2", "next");
+
+    /** The prompt which ends the output of a command. */
+    private static final byte[] PROMPT = ">> ".getBytes(
+            StandardCharsets.UTF_8);
+
+    /** The number of nanoseconds in a millisecond. */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /** The number of nanoseconds in a microsecond. */
+    private static final double NANOS_PER_MICRO = 1e3;
+
+    /** The latencies of the commands. */
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    /** The number of commands answered. */
+    private final AtomicLong answered = new AtomicLong();
+
+    /** The number of bytes received. */
+    private final AtomicLong received = new AtomicLong();
+
+    /** The number of failed sessions. */
+    private final AtomicLong failed = new AtomicLong();
+
+    /** The largest latency in nanoseconds. */
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    private QueryLoadGenerator() {}
+
+    public static void main(String[] args)
+            throws IOException, InterruptedException {
+        if (args.length == 0) {
+            System.out.println("Usage: QueryLoadGenerator port "
+                    + "[sessions [commands [script]]]");
+            return;
+        }
+
+        int port = Integer.parseInt(args[0]);
+        int sessions = (args.length > 1) ? Integer.parseInt(args[1]) : 100;
+        int commands = (args.length > 2) ? Integer.parseInt(args[2]) : 100;
+        List<String> script = (args.length > 3)
+                ? Files.readAllLines(Paths.get(args[3]),
+                        StandardCharsets.UTF_8)
+                : DEFAULT_COMMANDS;
+
+        new QueryLoadGenerator().run(port, sessions, commands, script);
+    }
+
+    /**
+     * Run the sessions and print the results.
+     *
+     * @param port the port of the server on the loopback address
+     * @param sessions the number of concurrent sessions
+     * @param commands the number of commands of each session
+     * @param script the commands, sent in turn
+     * @throws InterruptedException if interrupted while waiting for the
+     * sessions
+     */
+    private void run(int port, int sessions, int commands,
+            List<String> script) throws InterruptedException {
+        ExecutorService executor = QueryServer.newSessionExecutor("load-");
+        CountDownLatch connected = new CountDownLatch(sessions);
+        CountDownLatch go = new CountDownLatch(1);
+
+        for (int i = 0; i < sessions; i++) {
+            int first = i;
+
+            executor.execute(() -> session(port, commands, script, first,
+                    connected, go));
+        }
+
+        connected.await();
+        long start = System.nanoTime();
+        go.countDown();
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+        double millis = (System.nanoTime() - start) / NANOS_PER_MILLI;
+        long n = answered.get();
+
+        System.out.printf("Sessions: %d (%d failed)%n", sessions,
+                failed.get());
+        System.out.printf("Commands: %d in %.1f ms, %.0f commands/s, "
+                + "%.2f MB/s%n", n, millis, n * 1e3 / millis,
+                received.get() * 1e3 / millis / (1 << 20));
+        System.out.printf("Latency us: p50 %.1f, p99 %.1f, p99.9 %.1f, "
+                + "max %.1f%n", micros(50), micros(99), micros(99.9),
+                maxNanos.get() / NANOS_PER_MICRO);
+    }
+
+    /**
+     * Get a percentile of the command latencies.
+     *
+     * @param percent the percentile
+     * @return the percentile in microseconds
+     */
+    private double micros(double percent) {
+        return Math.min(latencies.getPercentile(percent), maxNanos.get())
+                / NANOS_PER_MICRO;
+    }
+
+    /**
+     * Run one session: connect, wait for the other sessions, send the
+     * commands and exit.
+     *
+     * @param port the port of the server
+     * @param commands the number of commands to send
+     * @param script the commands, sent in turn
+     * @param first the index of the first command sent
+     * @param connected the latch counted down once connected
+     * @param go the latch opened once all sessions are connected
+     */
+    private void session(int port, int commands, List<String> script,
+            int first, CountDownLatch connected, CountDownLatch go) {
+        boolean counted = false;
+
+        try (Socket s = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            s.setTcpNoDelay(true);
+
+            InputStream in = new BufferedInputStream(s.getInputStream());
+            OutputStream out = s.getOutputStream();
+            List<byte[]> lines = new ArrayList<>();
+
+            for (String line : script) {
+                lines.add((line + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+
+            readResponse(in);
+            connected.countDown();
+            counted = true;
+            go.await();
+
+            for (int i = 0; i < commands; i++) {
+                long start = System.nanoTime();
+
+                out.write(lines.get((first + i) % lines.size()));
+                out.flush();
+                received.addAndGet(readResponse(in));
+
+                long elapsed = System.nanoTime() - start;
+
+                latencies.record(elapsed);
+                maxNanos.accumulateAndGet(elapsed, Math::max);
+                answered.incrementAndGet();
+            }
+
+            out.write("exit\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        } catch (IOException e) {
+            failed.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (!counted) {
+                connected.countDown();
+            }
+        }
+    }
+
+    /**
+     * Read the output of a command up to the prompt at the start of a line.
+     *
+     * @param in the input of the session
+     * @return the number of bytes read
+     * @throws IOException if the session was closed before the prompt
+     */
+    private static long readResponse(InputStream in) throws IOException {
+        long read = 0;
+        int matched = 0;
+        boolean lineStart = true;
+        int b;
+
+        while ((b = in.read()) >= 0) {
+            read++;
+
+            if ((matched > 0 || lineStart) && (b == PROMPT[matched])) {
+                if (++matched == PROMPT.length) {
+                    return read;
+                }
+            } else {
+                matched = 0;
+            }
+
+            lineStart = (b == '\n');
+        }
+
+        throw new IOException("The session was closed");
+    }
+}
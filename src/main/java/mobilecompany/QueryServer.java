@@ -0,0 +1,284 @@
+package mobilecompany;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A server of the console commands of a mobile company on a local TCP
+ * port. Each connection is a console session of its own, with its own
+ * filters and listing, run on a thread of its own; the sessions share the
+ * read-only data of the company and its query cache.
+ * <br>
+ * The sessions are run on virtual threads when the JVM has them (Java 21
+ * or later) and on a cached pool of daemon threads otherwise. A session
+ * blocks its thread while it waits for a command, so virtual threads let
+ * thousands of mostly idle sessions run on a few carrier threads; the
+ * buffers of a session are kept small for the same reason.
+ * <br>
+ * The protocol is the one of the console: the server sends the console
+ * header and a prompt ({@code ">> "}), and then the output of each command
+ * line followed by the next prompt. The session ends with 'exit', when
+ * the client closes the connection or when it sends no command for the
+ * idle timeout. A command line is at most
+ * {@link ConsoleSession#MAX_LINE_LENGTH} characters long.
+ */
+class QueryServer implements Closeable {
+
+    /** The logger. */
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /** The length of the queue of incoming connections. */
+    private static final int BACKLOG = 1024;
+
+    /** The number of output characters a session collects before writing. */
+    private static final int CHUNK_SIZE = 1024;
+
+    /** The size of the command buffer of a session in characters. */
+    private static final int INPUT_BUFFER_SIZE = 256;
+
+    /** The default idle timeout of a session in milliseconds. */
+    static final int IDLE_TIMEOUT = 10 * 60 * 1000;
+
+    /** The mobile company. */
+    private final MobileCompany company;
+
+    /** The server socket bound to the loopback address. */
+    private final ServerSocket server;
+
+    /** The executor of the sessions. */
+    private final ExecutorService sessions;
+
+    /** The idle timeout of a session in milliseconds. */
+    private final int idleTimeout;
+
+    /** The open connections. */
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+    /** The number of accepted connections. */
+    private final AtomicInteger accepted = new AtomicInteger();
+
+    /** The thread accepting connections, null if not started. */
+    private Thread thread;
+
+    /**
+     * Instantiates a new server bound to a port of the loopback address,
+     * with the default idle timeout.
+     *
+     * @param company the mobile company
+     * @param port the port, 0 for any free port
+     * @throws IOException if the port cannot be bound
+     */
+    public QueryServer(MobileCompany company, int port) throws IOException {
+        this(company, port, IDLE_TIMEOUT);
+    }
+
+    /**
+     * Instantiates a new server bound to a port of the loopback address.
+     * The filter commands of the console are initialised once for all
+     * sessions of the server.
+     *
+     * @param company the mobile company
+     * @param port the port, 0 for any free port
+     * @param idleTimeout the time in milliseconds a session may wait for a
+     * command before it is closed, 0 for no limit
+     * @throws IOException if the port cannot be bound
+     */
+    public QueryServer(MobileCompany company, int port, int idleTimeout)
+            throws IOException {
+        this.company = company;
+        this.idleTimeout = idleTimeout;
+        ConsoleHelper.getInstance().initFilterCommands();
+        server = new ServerSocket(port, BACKLOG,
+                InetAddress.getLoopbackAddress());
+        sessions = newSessionExecutor("query-session-");
+    }
+
+    /**
+     * Create an executor running each task on a new virtual thread if the
+     * JVM supports them, or else on a cached pool of daemon threads. The
+     * virtual threads are looked up by reflection, so the code still runs
+     * on Java 8.
+     *
+     * @param name the name prefix of the pool threads
+     * @return the executor
+     */
+    static ExecutorService newSessionExecutor(String name) {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // no virtual threads before Java 21
+        }
+
+        return newDaemonPool(name);
+    }
+
+    /**
+     * Create a cached pool of daemon threads.
+     *
+     * @param name the name prefix of the pool threads
+     * @return the executor
+     */
+    static ExecutorService newDaemonPool(String name) {
+        AtomicInteger threads = new AtomicInteger();
+
+        return Executors.newCachedThreadPool(task -> {
+            Thread t = new Thread(task, name + threads.incrementAndGet());
+
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Gets the port the server listens on.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Gets the number of open sessions.
+     *
+     * @return the number of open connections
+     */
+    public int getSessionCount() {
+        return connections.size();
+    }
+
+    /**
+     * Gets the number of sessions since the server was started.
+     *
+     * @return the number of accepted connections
+     */
+    public int getAcceptedCount() {
+        return accepted.get();
+    }
+
+    /**
+     * Start accepting connections on a daemon thread.
+     */
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+
+        thread = new Thread(this::accept, "query-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop accepting connections and close the open sessions.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        server.close();
+        sessions.shutdown();
+
+        for (Socket s : connections) {
+            try {
+                s.close();
+            } catch (IOException e) {
+                LOGGER.warn(e);
+            }
+        }
+
+        thread = null;
+    }
+
+    /**
+     * Accept connections and start their sessions until the server is
+     * closed.
+     */
+    private void accept() {
+        while (!server.isClosed()) {
+            Socket s;
+
+            try {
+                s = server.accept();
+            } catch (IOException e) {
+                if (!server.isClosed()) {
+                    LOGGER.error("Could not accept a connection.");
+                    LOGGER.error(e);
+                }
+                continue;
+            }
+
+            connections.add(s);
+            accepted.incrementAndGet();
+
+            try {
+                sessions.execute(() -> serve(s));
+            } catch (RejectedExecutionException e) {
+                // the server has been closed meanwhile
+                close(s);
+            }
+        }
+    }
+
+    /**
+     * Run the console session of a connection and close the connection.
+     *
+     * @param s the socket of the connection
+     */
+    private void serve(Socket s) {
+        try {
+            s.setTcpNoDelay(true);
+            s.setSoTimeout(idleTimeout);
+
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                    s.getInputStream(), StandardCharsets.UTF_8),
+                    INPUT_BUFFER_SIZE);
+            TariffRenderer out = new TariffRenderer(s.getOutputStream(),
+                    CHUNK_SIZE);
+
+            new ConsoleSession(company, out, true).run(in);
+        } catch (SocketTimeoutException e) {
+            // the client has been idle for too long
+        } catch (SocketException e) {
+            // the client has gone or the server is closed
+        } catch (IOException e) {
+            LOGGER.warn("Query session " + s.getRemoteSocketAddress()
+                    + " failed.");
+            LOGGER.warn(e);
+        } finally {
+            close(s);
+        }
+    }
+
+    /**
+     * Close a connection.
+     *
+     * @param s the socket of the connection
+     */
+    private void close(Socket s) {
+        connections.remove(s);
+
+        try {
+            s.close();
+        } catch (IOException e) {
+            LOGGER.warn(e);
+        }
+    }
+}
@@ -0,0 +1,427 @@
+package mobilecompany;
+
+import java.util.Arrays;
+
+import tariffs.TariffTable;
+
+/**
+ * A rating engine that prices usage events (calls, SMS and data) of clients
+ * by the rates of their tariffs.
+ * <br>
+ * The rules are:
+ * <ul>
+ * <li>the first {@code smsPackage} SMS and {@code dataPackage} MB of each
+ * calendar month are free, the rest is charged by the 'sms' and 'internet'
+ * rates;</li>
+ * <li>the first {@code dailyMinutes} minutes of domestic calls (inner, outer
+ * and landline) of each day are free, the rest is charged by the
+ * respective call rates;</li>
+ * <li>abroad calls are charged by the 'abroadCalls' rate; tariffs without
+ * that rate do not allow abroad calls and such events are rejected;</li>
+ * <li>the 'activation' fee of a prepaid tariff is charged once, with the
+ * first event of the client.</li>
+ * </ul>
+ * Days and months are taken in UTC. Events of a client are expected in the
+ * order of their timestamps; an event older than the last one of the client
+ * is counted in the current day and month.
+ * <br>
+ * The rates are copied from a {@code TariffTable} into primitive arrays and
+ * the state of each client is kept in primitive arrays too, so rating an
+ * event does not allocate anything. An engine is not thread-safe; to rate
+ * in parallel, use one engine per partition of clients.
+ */
+public class RatingEngine {
+
+    /** The type of an inner network call event, quantity in minutes. */
+    public static final int INNER_CALL = 0;
+
+    /** The type of an outer network call event, quantity in minutes. */
+    public static final int OUTER_CALL = 1;
+
+    /** The type of a landline call event, quantity in minutes. */
+    public static final int LANDLINE_CALL = 2;
+
+    /** The type of an abroad call event, quantity in minutes. */
+    public static final int ABROAD_CALL = 3;
+
+    /** The type of an SMS event, quantity in messages. */
+    public static final int SMS = 4;
+
+    /** The type of a data event, quantity in MB. */
+    public static final int DATA = 5;
+
+    /** The number of milliseconds in a day. */
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+    /** The day of a client which has no events yet. */
+    private static final long NO_DAY = Long.MIN_VALUE;
+
+    /** The initial number of client slots. */
+    private static final int INITIAL_CLIENTS = 16;
+
+    /** The rates of the event types, one array per type, one per tariff. */
+    private final double[][] rates;
+
+    /** The free SMS per month of the tariffs. */
+    private final double[] smsPackages;
+
+    /** The free MB per month of the tariffs. */
+    private final double[] dataPackages;
+
+    /** The free minutes per day of the tariffs. */
+    private final double[] dailyMinutes;
+
+    /** The activation fees of the tariffs. */
+    private final double[] activations;
+
+    /** The tariff rows by tariff id. */
+    private final IntIntMap tariffRows;
+
+    /** The client slots by client id. */
+    private final IntIntMap clientSlots;
+
+    /** The tariff row of each client. */
+    private int[] clientTariffs;
+
+    /** The day of the last event of each client, {@link #NO_DAY} if none. */
+    private long[] days;
+
+    /** The month of the last event of each client. */
+    private int[] months;
+
+    /** The SMS sent in the current month by each client. */
+    private double[] smsUsed;
+
+    /** The MB used in the current month by each client. */
+    private double[] dataUsed;
+
+    /** The domestic call minutes of the current day of each client. */
+    private double[] minutesUsed;
+
+    /** The total charge of each client. */
+    private double[] charges;
+
+    /** The number of clients. */
+    private int clientCount;
+
+    /** The number of rated events. */
+    private long ratedEvents;
+
+    /** The number of rejected events. */
+    private long rejectedEvents;
+
+    /**
+     * Instantiates a new rating engine with the rates of the tariffs of a
+     * table. The table is not used afterwards.
+     *
+     * @param table the tariffs
+     */
+    public RatingEngine(TariffTable table) {
+        int n = table.size();
+        TariffTable.Columns columns = table.columns();
+        String[] rateFields = {
+            "innerCalls", "outerCalls", "landlines", "abroadCalls", "sms",
+            "internet"
+        };
+
+        rates = new double[rateFields.length][];
+        for (int type = 0; type < rateFields.length; type++) {
+            rates[type] = column(columns, rateFields[type], Double.NaN);
+        }
+
+        smsPackages = column(columns, "smsPackage", 0);
+        dataPackages = column(columns, "dataPackage", 0);
+        dailyMinutes = column(columns, "dailyMinutes", 0);
+        activations = column(columns, "activation", 0);
+
+        tariffRows = new IntIntMap(n);
+        int idColumn = table.columnIndex("id");
+        for (int r = 0; r < n; r++) {
+            tariffRows.put((int) columns.getValue(idColumn, r), r);
+        }
+
+        clientSlots = new IntIntMap(INITIAL_CLIENTS);
+        allocateClients(INITIAL_CLIENTS);
+    }
+
+    /**
+     * Add a client or change the tariff of a client. The usage of the
+     * current month and day is kept when the tariff is changed.
+     *
+     * @param clientId the client id
+     * @param tariffId the tariff id
+     * @return false if there is no such tariff
+     */
+    public boolean setClient(int clientId, int tariffId) {
+        int row = tariffRows.get(tariffId, -1);
+
+        if (row < 0) {
+            return false;
+        }
+
+        int slot = clientSlots.get(clientId, -1);
+        if (slot < 0) {
+            if (clientCount == clientTariffs.length) {
+                allocateClients(clientCount * 2);
+            }
+
+            slot = clientCount++;
+            clientSlots.put(clientId, slot);
+        }
+
+        clientTariffs[slot] = row;
+        return true;
+    }
+
+    /**
+     * Gets the number of clients.
+     *
+     * @return the number of clients
+     */
+    public int countClients() {
+        return clientCount;
+    }
+
+    /**
+     * Rate a usage event and add the charge to the client's total.
+     *
+     * @param clientId the client id
+     * @param type the event type, e. g. {@link #SMS}
+     * @param quantity the quantity: minutes, messages or MB
+     * @param timestamp the event time in milliseconds since the epoch
+     * @return the charge or NaN if the event is rejected: the client is
+     * unknown, the type is invalid, the quantity is negative or not
+     * finite or the tariff does not allow the event
+     */
+    public double rate(int clientId, int type, double quantity,
+            long timestamp) {
+        int slot = clientSlots.get(clientId, -1);
+
+        if ((slot < 0) || (type < 0) || (type >= rates.length)
+                || (quantity < 0) || !Double.isFinite(quantity)) {
+            rejectedEvents++;
+            return Double.NaN;
+        }
+
+        int row = clientTariffs[slot];
+        double rate = rates[type][row];
+
+        if (Double.isNaN(rate)) {
+            rejectedEvents++;
+            return Double.NaN;
+        }
+
+        double charge = 0;
+
+        if (days[slot] == NO_DAY) {
+            charge += activations[row];
+        }
+
+        advance(slot, Math.floorDiv(timestamp, DAY_MILLIS));
+
+        switch (type) {
+        case SMS:
+            charge += rate * overPackage(smsUsed[slot], quantity,
+                    smsPackages[row]);
+            smsUsed[slot] += quantity;
+            break;
+        case DATA:
+            charge += rate * overPackage(dataUsed[slot], quantity,
+                    dataPackages[row]);
+            dataUsed[slot] += quantity;
+            break;
+        case ABROAD_CALL:
+            charge += rate * quantity;
+            break;
+        default:
+            charge += rate * overPackage(minutesUsed[slot], quantity,
+                    dailyMinutes[row]);
+            minutesUsed[slot] += quantity;
+        }
+
+        charges[slot] += charge;
+        ratedEvents++;
+        return charge;
+    }
+
+    /**
+     * Rate a batch of usage events stored in parallel arrays.
+     *
+     * @param clientIds the client ids
+     * @param types the event types
+     * @param quantities the quantities
+     * @param timestamps the event times
+     * @param result the array receiving the charges (NaN for rejected
+     * events), may be null
+     * @param from the first event
+     * @param to the event after the last one
+     * @return the sum of the charges of the rated events
+     */
+    public double rate(int[] clientIds, int[] types, double[] quantities,
+            long[] timestamps, double[] result, int from, int to) {
+        double total = 0;
+
+        for (int i = from; i < to; i++) {
+            double charge = rate(clientIds[i], types[i], quantities[i],
+                    timestamps[i]);
+
+            if (result != null) {
+                result[i] = charge;
+            }
+
+            if (!Double.isNaN(charge)) {
+                total += charge;
+            }
+        }
+
+        return total;
+    }
+
+    /**
+     * Gets the total charge of a client.
+     *
+     * @param clientId the client id
+     * @return the total charge or NaN if the client is unknown
+     */
+    public double getCharge(int clientId) {
+        int slot = clientSlots.get(clientId, -1);
+        return (slot < 0) ? Double.NaN : charges[slot];
+    }
+
+    /**
+     * Gets the number of rated events.
+     *
+     * @return the number of rated events
+     */
+    public long getRatedEvents() {
+        return ratedEvents;
+    }
+
+    /**
+     * Gets the number of rejected events.
+     *
+     * @return the number of rejected events
+     */
+    public long getRejectedEvents() {
+        return rejectedEvents;
+    }
+
+    /**
+     * Move a client to the day of an event, resetting the free allowances
+     * when a new day or month starts.
+     *
+     * @param slot the client slot
+     * @param day the day of the event
+     */
+    private void advance(int slot, long day) {
+        if (day <= days[slot]) {
+            return;
+        }
+
+        int month = monthOf(day);
+        if ((days[slot] == NO_DAY) || (month != months[slot])) {
+            months[slot] = month;
+            smsUsed[slot] = 0;
+            dataUsed[slot] = 0;
+        }
+
+        days[slot] = day;
+        minutesUsed[slot] = 0;
+    }
+
+    /**
+     * Get the part of a quantity which exceeds a free package.
+     *
+     * @param used the quantity used before
+     * @param quantity the quantity
+     * @param free the free package
+     * @return the quantity to be charged
+     */
+    private static double overPackage(double used, double quantity,
+            double free) {
+        return Math.min(quantity, Math.max(0, used + quantity - free));
+    }
+
+    /**
+     * Get the month of a day, as in the proleptic Gregorian calendar.
+     *
+     * @param day the number of days since 1970-01-01
+     * @return the month as year * 12 + month - 1
+     */
+    static int monthOf(long day) {
+        // the civil-from-days algorithm, with years starting in March
+        long z = day + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        long month = (mp < 10) ? mp + 3 : mp - 9;
+        long year = yoe + era * 400 + ((month <= 2) ? 1 : 0);
+
+        return (int) (year * 12 + month - 1);
+    }
+
+    /**
+     * Get a column of a table, replacing NaN values.
+     *
+     * @param columns the columns of the table
+     * @param field the field name
+     * @param missing the value used for NaN
+     * @return the column values
+     */
+    private static double[] column(TariffTable.Columns columns, String field,
+            double missing) {
+        TariffTable table = columns.getTable();
+        int c = table.columnIndex(field);
+        double[] result = new double[table.size()];
+
+        for (int r = 0; r < result.length; r++) {
+            double v = columns.getValue(c, r);
+            result[r] = Double.isNaN(v) ? missing : v;
+        }
+
+        return result;
+    }
+
+    /**
+     * Grow the arrays of the client state.
+     *
+     * @param capacity the new number of client slots
+     */
+    private void allocateClients(int capacity) {
+        int old = (clientTariffs == null) ? 0 : clientTariffs.length;
+
+        clientTariffs = grow(clientTariffs, capacity);
+        days = (days == null) ? new long[capacity]
+                : Arrays.copyOf(days, capacity);
+        Arrays.fill(days, old, capacity, NO_DAY);
+        months = grow(months, capacity);
+        smsUsed = grow(smsUsed, capacity);
+        dataUsed = grow(dataUsed, capacity);
+        minutesUsed = grow(minutesUsed, capacity);
+        charges = grow(charges, capacity);
+    }
+
+    /**
+     * Grow an array.
+     *
+     * @param a the array or null
+     * @param capacity the new length
+     * @return the new array
+     */
+    private static int[] grow(int[] a, int capacity) {
+        return (a == null) ? new int[capacity] : Arrays.copyOf(a, capacity);
+    }
+
+    /**
+     * Grow an array.
+     *
+     * @param a the array or null
+     * @param capacity the new length
+     * @return the new array
+     */
+    private static double[] grow(double[] a, int capacity) {
+        return (a == null) ? new double[capacity] : Arrays.copyOf(a, capacity);
+    }
+}
@@ -0,0 +1,21 @@
+package mobilecompany;
+
+/**
+ * A receiver of the results of a bulk tariff recommendation. It is called
+ * concurrently from the worker threads, so it has to be thread-safe.
+ */
+public interface RecommendationSink {
+
+    /**
+     * Receive the recommendation for a client.
+     *
+     * @param clientId the client id
+     * @param currentTariffId the id of the current tariff of the client
+     * @param bestTariffId the id of the cheapest tariff, the current one if
+     * there is no cheaper tariff
+     * @param saving the monthly saving on the cheapest tariff, NaN if the
+     * current tariff is unknown or does not fit the usage of the client
+     */
+    void accept(int clientId, int currentTariffId, int bestTariffId,
+            double saving);
+}
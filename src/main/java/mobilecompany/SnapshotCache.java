@@ -0,0 +1,463 @@
+package mobilecompany;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import tariffs.ContractTariff;
+import tariffs.PrepaidTariff;
+import tariffs.Tariff;
+import tariffs.TariffTable;
+
+/**
+ * A class that saves parsed clients and tariffs into a compact binary
+ * snapshot file and loads them back, which is much faster than parsing the
+ * JSON text files again. A snapshot is only used while the sizes and the
+ * modification times of the source files are the ones recorded in it.
+ * <br>
+ * The snapshot layout (big-endian) is:
+ * <pre>
+ * header:   magic, version, sizes and modification times of the sources
+ * strings:  count, then length-prefixed UTF-8 strings (deduplicated)
+ * clients:  count, then rows of id, tariff id, name ref, surname ref
+ * tariffs:  count, then fixed-width rows of all tariff fields
+ * checksum: CRC32 of everything above
+ * </pre>
+ */
+class SnapshotCache {
+
+    /** The magic number at the start of a snapshot file ("MCSN"). */
+    private static final int MAGIC = 0x4D43534E;
+
+    /** The version of the snapshot format. */
+    private static final int VERSION = 1;
+
+    /** The size of the header. */
+    private static final int HEADER_SIZE = 4 + 4 + 4 * 8;
+
+    /** The size of the write buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The snapshot file. */
+    private final File file;
+
+    /**
+     * Instantiates a new snapshot cache.
+     *
+     * @param file the snapshot file
+     */
+    public SnapshotCache(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Load clients and tariffs from the snapshot if it is valid for the
+     * given source files. Nothing is passed to the consumers unless the
+     * whole snapshot is valid. The clients are read into columns at once,
+     * so that the client store can be filled in bulk.
+     * @param clientsFile the clients source file.
+     * @param tariffsFile the tariffs source file.
+     * @param clients the consumer receiving the columns of the clients.
+     * @param tariffs the consumer receiving the tariffs.
+     * @return true if the snapshot was loaded, false if it is missing,
+     * outdated or damaged.
+     * @throws IOException if the snapshot could not be read.
+     */
+    public boolean load(File clientsFile, File tariffsFile,
+            Consumer<ClientColumns> clients, Consumer<Tariff> tariffs)
+            throws IOException {
+        if (!file.isFile() || (file.length() < HEADER_SIZE + 8)
+                || (file.length() > Integer.MAX_VALUE)) {
+            return false;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, channel.size());
+
+            if (!isValid(buf, Sources.of(clientsFile, tariffsFile))) {
+                return false;
+            }
+
+            buf.position(HEADER_SIZE);
+            String[] strings = readStrings(buf);
+            ClientColumns columns = new ClientColumns(strings, buf.getInt());
+            int pos = buf.position();
+
+            for (int row = 0; row < columns.size(); row++, pos += 16) {
+                columns.set(row, buf.getInt(pos), buf.getInt(pos + 4),
+                        buf.getInt(pos + 8), buf.getInt(pos + 12));
+            }
+
+            buf.position(pos);
+            int n = buf.getInt();
+            for (int i = 0; i < n; i++) {
+                tariffs.accept(readTariff(buf, strings));
+            }
+
+            clients.accept(columns);
+
+            return true;
+        }
+    }
+
+    /**
+     * Save clients and tariffs into the snapshot, recording the sizes and
+     * modification times the source files had before they were read. A
+     * source changed while it was being parsed then no longer matches the
+     * snapshot, so the snapshot is not used for it. The snapshot is
+     * written to a temporary file first, so a failed write never leaves a
+     * damaged snapshot.
+     * @param sources the state of the source files taken before reading
+     * them.
+     * @param clients the clients.
+     * @param tariffs the tariffs.
+     * @throws IOException if the snapshot could not be written.
+     */
+    public void save(Sources sources, Iterable<Client> clients,
+            List<Tariff> tariffs) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        Map<String, Integer> refs = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        int clientCount = 0;
+
+        // build the string table
+        for (Client c : clients) {
+            ref(refs, strings, c.getName());
+            ref(refs, strings, c.getSurname());
+            clientCount++;
+        }
+
+        for (Tariff t : tariffs) {
+            ref(refs, strings, t.getName());
+        }
+
+        try (Writer w = new Writer(FileChannel.open(tmp.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING))) {
+            w.ensure(HEADER_SIZE).putInt(MAGIC).putInt(VERSION)
+                    .putLong(sources.clientsLength)
+                    .putLong(sources.clientsModified)
+                    .putLong(sources.tariffsLength)
+                    .putLong(sources.tariffsModified);
+
+            w.ensure(4).putInt(strings.size());
+            for (String s : strings) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                w.ensure(4).putInt(bytes.length);
+                w.put(bytes);
+            }
+
+            w.ensure(4).putInt(clientCount);
+            for (Client c : clients) {
+                w.ensure(16).putInt(c.getId()).putInt(c.getTariffId())
+                        .putInt(refs.get(c.getName()))
+                        .putInt(refs.get(c.getSurname()));
+            }
+
+            w.ensure(4).putInt(tariffs.size());
+            for (Tariff t : tariffs) {
+                writeTariff(w, t, refs.get(t.getName()));
+            }
+
+            w.finish();
+        }
+
+        Files.move(tmp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Check the header and the checksum of a snapshot.
+     * @param buf the mapped snapshot.
+     * @param sources the current state of the source files.
+     * @return true if the snapshot is valid for the source files.
+     */
+    private static boolean isValid(ByteBuffer buf, Sources sources) {
+        if ((buf.getInt(0) != MAGIC) || (buf.getInt(4) != VERSION)
+                || (buf.getLong(8) != sources.clientsLength)
+                || (buf.getLong(16) != sources.clientsModified)
+                || (buf.getLong(24) != sources.tariffsLength)
+                || (buf.getLong(32) != sources.tariffsModified)) {
+            return false;
+        }
+
+        int end = buf.limit() - 8;
+        ByteBuffer data = buf.duplicate();
+        CRC32 crc = new CRC32();
+
+        data.position(0).limit(end);
+        crc.update(data);
+
+        return crc.getValue() == buf.getLong(end);
+    }
+
+    /**
+     * Read the string table.
+     * @param buf the snapshot positioned at the string table.
+     * @return the strings.
+     */
+    private static String[] readStrings(ByteBuffer buf) {
+        String[] strings = new String[buf.getInt()];
+        byte[] bytes = new byte[64];
+
+        for (int i = 0; i < strings.length; i++) {
+            int length = buf.getInt();
+
+            if (length > bytes.length) {
+                bytes = new byte[length];
+            }
+
+            buf.get(bytes, 0, length);
+            strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+
+        return strings;
+    }
+
+    /**
+     * Read a tariff row.
+     * @param buf the snapshot positioned at the row.
+     * @param strings the string table.
+     * @return the tariff.
+     */
+    private static Tariff readTariff(ByteBuffer buf, String[] strings) {
+        byte type = buf.get();
+        int id = buf.getInt();
+        String name = strings[buf.getInt()];
+        double monthly = buf.getDouble();
+        double innerCalls = buf.getDouble();
+        double outerCalls = buf.getDouble();
+        double landlines = buf.getDouble();
+        double sms = buf.getDouble();
+        double internet = buf.getDouble();
+        int smsPackage = buf.getInt();
+        int dataPackage = buf.getInt();
+        double activation = buf.getDouble();
+        double abroadCalls = buf.getDouble();
+        int dailyMinutes = buf.getInt();
+        Tariff.Builder<?> tb;
+
+        switch (type) {
+        case TariffTable.PREPAID:
+            tb = new PrepaidTariff.Builder().activation(activation);
+            break;
+        case TariffTable.CONTRACT:
+            tb = new ContractTariff.Builder()
+                    .abroadCalls(abroadCalls)
+                    .dailyMinutes(dailyMinutes);
+            break;
+        default:
+            tb = new Tariff.Builder<>();
+        }
+
+        return tb.id(id)
+                .name(name)
+                .monthly(monthly)
+                .innerCalls(innerCalls)
+                .outerCalls(outerCalls)
+                .landlines(landlines)
+                .sms(sms)
+                .internet(internet)
+                .smsPackage(smsPackage)
+                .dataPackage(dataPackage)
+                .build();
+    }
+
+    /**
+     * Write a fixed-width tariff row.
+     * @param w the writer.
+     * @param t the tariff.
+     * @param nameRef the string table index of the tariff name.
+     * @throws IOException if the row could not be written.
+     */
+    private static void writeTariff(Writer w, Tariff t, int nameRef)
+            throws IOException {
+        byte type = TariffTable.GENERIC;
+        double activation = 0;
+        double abroadCalls = 0;
+        int dailyMinutes = 0;
+
+        if (t instanceof PrepaidTariff) {
+            type = TariffTable.PREPAID;
+            activation = ((PrepaidTariff) t).getActivation();
+        } else if (t instanceof ContractTariff) {
+            type = TariffTable.CONTRACT;
+            abroadCalls = ((ContractTariff) t).getAbroadCalls();
+            dailyMinutes = ((ContractTariff) t).getDailyMinutes();
+        }
+
+        w.ensure(1 + 4 + 4 + 6 * 8 + 4 + 4 + 8 + 8 + 4).put(type)
+                .putInt(t.getId())
+                .putInt(nameRef)
+                .putDouble(t.getMonthly())
+                .putDouble(t.getInnerCalls())
+                .putDouble(t.getOuterCalls())
+                .putDouble(t.getLandlines())
+                .putDouble(t.getSms())
+                .putDouble(t.getInternet())
+                .putInt(t.getSmsPackage())
+                .putInt(t.getDataPackage())
+                .putDouble(activation)
+                .putDouble(abroadCalls)
+                .putInt(dailyMinutes);
+    }
+
+    /**
+     * Get the string table index of a string, adding it if needed.
+     * @param refs the indexes of the strings added so far.
+     * @param strings the string table.
+     * @param s the string.
+     */
+    private static void ref(Map<String, Integer> refs, List<String> strings,
+            String s) {
+        if (!refs.containsKey(s)) {
+            refs.put(s, strings.size());
+            strings.add(s);
+        }
+    }
+
+    /**
+     * The sizes and modification times of the source files at one moment.
+     */
+    static final class Sources {
+
+        /** The size of the clients file. */
+        private final long clientsLength;
+
+        /** The modification time of the clients file. */
+        private final long clientsModified;
+
+        /** The size of the tariffs file. */
+        private final long tariffsLength;
+
+        /** The modification time of the tariffs file. */
+        private final long tariffsModified;
+
+        /**
+         * Instantiates a new state of the source files.
+         *
+         * @param clientsFile the clients source file
+         * @param tariffsFile the tariffs source file
+         */
+        private Sources(File clientsFile, File tariffsFile) {
+            clientsLength = clientsFile.length();
+            clientsModified = clientsFile.lastModified();
+            tariffsLength = tariffsFile.length();
+            tariffsModified = tariffsFile.lastModified();
+        }
+
+        /**
+         * Take the current state of the source files.
+         *
+         * @param clientsFile the clients source file
+         * @param tariffsFile the tariffs source file
+         * @return the sizes and modification times of the files
+         */
+        static Sources of(File clientsFile, File tariffsFile) {
+            return new Sources(clientsFile, tariffsFile);
+        }
+    }
+
+    /**
+     * A buffered writer to a file channel which keeps the checksum of all
+     * written bytes.
+     */
+    private static class Writer implements AutoCloseable {
+
+        /** The channel. */
+        private final FileChannel channel;
+
+        /** The buffer. */
+        private final ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+
+        /** The checksum of the written bytes. */
+        private final CRC32 crc = new CRC32();
+
+        /**
+         * Instantiates a new writer.
+         *
+         * @param channel the channel
+         */
+        Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Make room for a number of bytes in the buffer.
+         * @param n the number of bytes, at most the buffer size.
+         * @return the buffer.
+         * @throws IOException if the buffer could not be flushed.
+         */
+        ByteBuffer ensure(int n) throws IOException {
+            if (buf.remaining() < n) {
+                flush();
+            }
+
+            return buf;
+        }
+
+        /**
+         * Write an array of bytes.
+         * @param bytes the bytes.
+         * @throws IOException if the bytes could not be written.
+         */
+        void put(byte[] bytes) throws IOException {
+            int off = 0;
+
+            while (off < bytes.length) {
+                int n = Math.min(ensure(1).remaining(), bytes.length - off);
+                buf.put(bytes, off, n);
+                off += n;
+            }
+        }
+
+        /**
+         * Write the checksum and flush the buffer.
+         * @throws IOException if the data could not be written.
+         */
+        void finish() throws IOException {
+            flush();
+            buf.putLong(crc.getValue());
+            buf.flip();
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            buf.clear();
+        }
+
+        /**
+         * Write the buffer to the channel, updating the checksum.
+         * @throws IOException if the data could not be written.
+         */
+        private void flush() throws IOException {
+            buf.flip();
+            crc.update(buf.array(), 0, buf.limit());
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            buf.clear();
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.AutoCloseable#close()
+         */
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
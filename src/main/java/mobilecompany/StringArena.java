@@ -0,0 +1,218 @@
+package mobilecompany;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * An off-heap store of deduplicated strings. Each distinct string is stored
+ * once as its UTF-8 bytes, prefixed with the length, in direct buffers, and
+ * is referred to by a long reference made of the buffer number and the
+ * offset in the buffer, so the arena is only limited by the memory. The
+ * strings are deduplicated with an open-addressing table of references, so
+ * there are no string objects on the heap; a {@code String} is only created
+ * by {@link #get(long)}.
+ * <br>
+ * The arena may be shared by stores which are read by other threads while
+ * one of them is changed: the strings are only added, {@link #intern} is
+ * synchronized and {@link #get(long)} only reads the bytes of references
+ * handed out before.
+ */
+class StringArena {
+
+    /** The number of bits of the offset in a reference. */
+    private static final int OFFSET_BITS = 24;
+
+    /** The size of a buffer. */
+    private static final int CHUNK_SIZE = 1 << OFFSET_BITS;
+
+    /** The size of the length prefix of a string. */
+    private static final int LENGTH_SIZE = 4;
+
+    /** The largest ratio of strings to table slots before the table grows. */
+    private static final double LOAD_FACTOR = 0.6;
+
+    /** The buffers, replaced by a longer array when a buffer is added. */
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+
+    /** The position of the next string in the last buffer. */
+    private int position = CHUNK_SIZE;
+
+    /** The references of the strings by hash slot, plus one; 0 if empty. */
+    private long[] slots = new long[16];
+
+    /** The hashes of the strings by hash slot. */
+    private int[] hashes = new int[16];
+
+    /** The number of strings. */
+    private int size;
+
+    /**
+     * Gets the number of distinct strings.
+     *
+     * @return the number of strings
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of bytes allocated off the heap.
+     *
+     * @return the number of bytes
+     */
+    public long allocatedBytes() {
+        return (long) chunks.length * CHUNK_SIZE;
+    }
+
+    /**
+     * Add a string unless an equal string has been added already.
+     *
+     * @param s the string
+     * @return the reference of the string
+     * @throws IllegalArgumentException if the string is too long
+     */
+    public synchronized long intern(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        int hash = IntIntMap.mix(hashOf(bytes));
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+
+        while (slots[slot] != 0) {
+            if ((hashes[slot] == hash) && equal(slots[slot] - 1, bytes)) {
+                return slots[slot] - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        long ref = append(bytes);
+        slots[slot] = ref + 1;
+        hashes[slot] = hash;
+
+        if (++size > slots.length * LOAD_FACTOR) {
+            rehash(slots.length * 2);
+        }
+
+        return ref;
+    }
+
+    /**
+     * Get a string.
+     *
+     * @param ref the reference of the string
+     * @return the string
+     */
+    public String get(long ref) {
+        ByteBuffer chunk = chunks[(int) (ref >>> OFFSET_BITS)];
+        int offset = (int) ref & (CHUNK_SIZE - 1);
+        byte[] bytes = new byte[chunk.getInt(offset)];
+
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = chunk.get(offset + LENGTH_SIZE + i);
+        }
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Append the bytes of a string.
+     *
+     * @param bytes the bytes
+     * @return the reference of the string
+     */
+    private long append(byte[] bytes) {
+        int length = LENGTH_SIZE + bytes.length;
+
+        if (length > CHUNK_SIZE) {
+            throw new IllegalArgumentException("String too long: "
+                    + bytes.length + " bytes");
+        }
+
+        ByteBuffer[] all = chunks;
+
+        if (position + length > CHUNK_SIZE) {
+            all = Arrays.copyOf(all, all.length + 1);
+            all[all.length - 1] = ByteBuffer.allocateDirect(CHUNK_SIZE);
+            chunks = all;
+            position = 0;
+        }
+
+        ByteBuffer chunk = all[all.length - 1];
+        long ref = ((long) (all.length - 1) << OFFSET_BITS) | position;
+
+        chunk.putInt(position, bytes.length);
+        for (int i = 0; i < bytes.length; i++) {
+            chunk.put(position + LENGTH_SIZE + i, bytes[i]);
+        }
+
+        position += length;
+        return ref;
+    }
+
+    /**
+     * Check if a stored string has given bytes.
+     *
+     * @param ref the reference of the stored string
+     * @param bytes the bytes
+     * @return true if the string consists of {@code bytes}
+     */
+    private boolean equal(long ref, byte[] bytes) {
+        ByteBuffer chunk = chunks[(int) (ref >>> OFFSET_BITS)];
+        int offset = (int) ref & (CHUNK_SIZE - 1);
+
+        if (chunk.getInt(offset) != bytes.length) {
+            return false;
+        }
+
+        for (int i = 0; i < bytes.length; i++) {
+            if (chunk.get(offset + LENGTH_SIZE + i) != bytes[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Move the references into a larger table.
+     *
+     * @param capacity the new number of slots, a power of two
+     */
+    private void rehash(int capacity) {
+        long[] oldSlots = slots;
+        int[] oldHashes = hashes;
+        int mask = capacity - 1;
+
+        slots = new long[capacity];
+        hashes = new int[capacity];
+
+        for (int i = 0; i < oldSlots.length; i++) {
+            if (oldSlots[i] != 0) {
+                int slot = oldHashes[i] & mask;
+
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+
+                slots[slot] = oldSlots[i];
+                hashes[slot] = oldHashes[i];
+            }
+        }
+    }
+
+    /**
+     * Compute the hash of bytes.
+     *
+     * @param bytes the bytes
+     * @return the hash
+     */
+    private static int hashOf(byte[] bytes) {
+        int h = 1;
+
+        for (byte b : bytes) {
+            h = 31 * h + b;
+        }
+
+        return h;
+    }
+}
@@ -0,0 +1,275 @@
+package mobilecompany;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A reverse index from tariff ids to the ids of the clients on each tariff.
+ * The tariff ids are mapped to list numbers by an {@code IntIntMap}, and each
+ * list is a growable primitive int array. The position of each client in
+ * its list is kept in another {@code IntIntMap}, so a client is removed in
+ * constant time by moving the last client of the list into its place. That
+ * map is only built by the first removal, so an index which is only added
+ * to, as by a load, does not pay for it.
+ * <br>
+ * Before the first removal, the index takes about 4 bytes per client on
+ * the heap when made at once from arrays, and about 5 when the clients are
+ * added one by one, since the lists grow by doubling. The map of the
+ * positions takes 8 bytes per slot with the slots at most 60% full and
+ * their number a power of two, i. e. 14 to 27 more bytes per client: an
+ * index of 1 to 3 million clients measured 17 to 23 bytes per client in
+ * all after a removal.
+ * <br>
+ * The lists and the maps are made of {@link IntChunks}, so a
+ * {@link #fork()} of the index shares them and the changes made to either
+ * index afterwards only copy the chunks they touch.
+ */
+class TariffClientsIndex {
+
+    /** The initial capacity of a client list. */
+    private static final int INITIAL_LIST_SIZE = 8;
+
+    /** The list number of each tariff id. */
+    private final IntIntMap listOfTariff;
+
+    /** The client lists. */
+    private IntChunks[] lists;
+
+    /** The number of client ids in each list. */
+    private int[] counts;
+
+    /** The position of each client id in its list, null if not built. */
+    private IntIntMap positions;
+
+    /**
+     * Instantiates a new empty index.
+     */
+    public TariffClientsIndex() {
+        listOfTariff = new IntIntMap(16);
+        lists = new IntChunks[16];
+        counts = new int[16];
+    }
+
+    /**
+     * Instantiates a new index of clients at once, with the same lists as if
+     * the clients were added one by one in the order of the arrays. The
+     * lists are allocated at their sizes, which is much faster for many
+     * clients.
+     *
+     * @param tariffIds the tariff ids of the clients
+     * @param clientIds the client ids, which must be distinct
+     */
+    public TariffClientsIndex(int[] tariffIds, int[] clientIds) {
+        int n = clientIds.length;
+        int[] listOfClient = new int[n];
+
+        listOfTariff = new IntIntMap(16);
+        counts = new int[16];
+
+        for (int i = 0; i < n; i++) {
+            int list = listOfTariff.get(tariffIds[i], -1);
+
+            if (list < 0) {
+                list = listOfTariff.size();
+                listOfTariff.put(tariffIds[i], list);
+
+                if (list == counts.length) {
+                    counts = Arrays.copyOf(counts, list * 2);
+                }
+            }
+
+            listOfClient[i] = list;
+            counts[list]++;
+        }
+
+        lists = new IntChunks[counts.length];
+        for (int list = 0; list < listOfTariff.size(); list++) {
+            lists[list] = new IntChunks(
+                    Math.max(INITIAL_LIST_SIZE, counts[list]));
+            counts[list] = 0;
+        }
+
+        for (int i = 0; i < n; i++) {
+            int list = listOfClient[i];
+
+            lists[list].set(counts[list]++, clientIds[i]);
+        }
+    }
+
+    /**
+     * Instantiates a new fork of an index.
+     *
+     * @param from the index
+     */
+    private TariffClientsIndex(TariffClientsIndex from) {
+        listOfTariff = from.listOfTariff.fork();
+        lists = new IntChunks[from.lists.length];
+        counts = from.counts.clone();
+        positions = (from.positions == null) ? null : from.positions.fork();
+
+        for (int i = 0; i < lists.length; i++) {
+            if (from.lists[i] != null) {
+                lists[i] = from.lists[i].fork();
+            }
+        }
+    }
+
+    /**
+     * Create a copy of the index which shares the lists with it until
+     * either of them is changed.
+     *
+     * @return the copy
+     */
+    public TariffClientsIndex fork() {
+        return new TariffClientsIndex(this);
+    }
+
+    /**
+     * Add a client to the list of its tariff.
+     *
+     * @param tariffId the tariff id
+     * @param clientId the client id
+     */
+    public void add(int tariffId, int clientId) {
+        int list = listOfTariff.get(tariffId, -1);
+
+        if (list < 0) {
+            list = listOfTariff.size();
+            listOfTariff.put(tariffId, list);
+
+            if (list == lists.length) {
+                lists = Arrays.copyOf(lists, list * 2);
+                counts = Arrays.copyOf(counts, list * 2);
+            }
+
+            lists[list] = new IntChunks(INITIAL_LIST_SIZE);
+        }
+
+        IntChunks ids = lists[list];
+
+        if (counts[list] == ids.capacity()) {
+            ids.grow(counts[list] * 2);
+        }
+
+        if (positions != null) {
+            positions.put(clientId, counts[list]);
+        }
+
+        ids.set(counts[list]++, clientId);
+    }
+
+    /**
+     * Remove a client from the list of its tariff. The last client of the
+     * list takes its place.
+     *
+     * @param tariffId the tariff id
+     * @param clientId the client id
+     * @return true if the client was in the list
+     */
+    public boolean remove(int tariffId, int clientId) {
+        int list = listOfTariff.get(tariffId, -1);
+
+        if (list < 0) {
+            return false;
+        }
+
+        if (positions == null) {
+            buildPositions();
+        }
+
+        IntChunks ids = lists[list];
+        int pos = positions.get(clientId, -1);
+
+        if ((pos < 0) || (pos >= counts[list])
+                || (ids.get(pos) != clientId)) {
+            return false;
+        }
+
+        int last = ids.get(--counts[list]);
+
+        ids.set(pos, last);
+        positions.put(last, pos);
+        positions.remove(clientId);
+        return true;
+    }
+
+    /**
+     * Build the map of the positions of the clients in their lists.
+     */
+    private void buildPositions() {
+        int n = 0;
+
+        for (int list = 0; list < listOfTariff.size(); list++) {
+            n += counts[list];
+        }
+
+        int[] ids = new int[n];
+        int[] listPositions = new int[n];
+        int i = 0;
+
+        for (int list = 0; list < listOfTariff.size(); list++) {
+            for (int pos = 0; pos < counts[list]; pos++, i++) {
+                ids[i] = lists[list].get(pos);
+                listPositions[i] = pos;
+            }
+        }
+
+        positions = new IntIntMap(n);
+        positions.putAll(ids, listPositions, n);
+    }
+
+    /**
+     * Count the clients on a tariff.
+     *
+     * @param tariffId the tariff id
+     * @return the number of clients
+     */
+    public int count(int tariffId) {
+        int list = listOfTariff.get(tariffId, -1);
+        return (list < 0) ? 0 : counts[list];
+    }
+
+    /**
+     * Get the ids of the clients on a tariff.
+     *
+     * @param tariffId the tariff id
+     * @return a new array of client ids in the order they were added,
+     * except that a removed client was replaced by the last one
+     */
+    public int[] clientsOf(int tariffId) {
+        int list = listOfTariff.get(tariffId, -1);
+        int[] result = new int[(list < 0) ? 0 : counts[list]];
+
+        for (int i = 0; i < result.length; i++) {
+            result[i] = lists[list].get(i);
+        }
+
+        return result;
+    }
+
+    /**
+     * Call an action for each client on a tariff, without copying the list.
+     *
+     * @param tariffId the tariff id
+     * @param action the action receiving client ids
+     */
+    public void forEachClient(int tariffId, IntConsumer action) {
+        int list = listOfTariff.get(tariffId, -1);
+
+        if (list >= 0) {
+            IntChunks ids = lists[list];
+            for (int i = 0; i < counts[list]; i++) {
+                action.accept(ids.get(i));
+            }
+        }
+    }
+
+    /**
+     * Get the ids of all tariffs having clients.
+     *
+     * @return the tariff ids in no particular order
+     */
+    public int[] tariffIds() {
+        return listOfTariff.keys();
+    }
+}
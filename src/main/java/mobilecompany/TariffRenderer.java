@@ -0,0 +1,374 @@
+package mobilecompany;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Formatter;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import tariffs.Tariff;
+import tariffs.TariffTable;
+
+/**
+ * A renderer of tariff listings for the console. The tariffs are written
+ * field by field into one reusable {@code StringBuilder}, which is copied
+ * into a large output buffer whenever it fills up, so listing a tariff
+ * builds no strings and the output is written in big chunks rather than
+ * line by line. The output is only flushed by {@link #flush()}, e. g. once
+ * per console command.
+ * <br>
+ * The full format is written by {@link Tariff#appendTo(StringBuilder)},
+ * the same text as {@link Tariff#toString()}, followed by an empty line; the
+ * compact format is a table with one line per tariff.
+ * <br>
+ * The renderer is not thread-safe.
+ */
+class TariffRenderer {
+
+    /** The logger. */
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /** The default number of characters collected before they are written. */
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    /** The width of the type column of the compact format. */
+    private static final int TYPE_WIDTH = 10;
+
+    /** The width of the name column of the compact format. */
+    private static final int NAME_WIDTH = 28;
+
+    /** The width of the numeric columns of the compact format. */
+    private static final int NUMBER_WIDTH = 9;
+
+    /** The header of the compact format. */
+    private static final String[] HEADER = {
+        "id", "type", "name", "monthly", "inner", "outer", "landline",
+        "sms", "internet", "smsPack", "dataPack"
+    };
+
+    /** The spaces used for padding. */
+    private static final char[] SPACES = "                ".toCharArray();
+
+    /** The type names, by {@link TariffTable} type. */
+    private static final String[] TYPES = {"generic", "prepaid", "contract"};
+
+    /** The number of characters collected before they are written. */
+    private final int chunkSize;
+
+    /** The characters collected for output. */
+    private final StringBuilder sb;
+
+    /** The buffer the collected characters are copied through. */
+    private final char[] chars;
+
+    /** The output. */
+    private final Writer out;
+
+    /** The formatter appending to {@link #sb}. */
+    private final Formatter formatter;
+
+    /** Whether the compact format is used. */
+    private boolean compact;
+
+    /** Whether writing the output has failed. */
+    private boolean failed;
+
+    /**
+     * Instantiates a new renderer with large buffers.
+     *
+     * @param stream the stream to write to, e. g. {@code System.out}
+     */
+    TariffRenderer(OutputStream stream) {
+        this(stream, CHUNK_SIZE);
+    }
+
+    /**
+     * Instantiates a new renderer. The renderer takes about eight times
+     * the chunk size of memory, so many renderers, e. g. one per network
+     * session, should use small chunks.
+     *
+     * @param stream the stream to write to
+     * @param chunkSize the number of characters collected before they are
+     * written
+     */
+    TariffRenderer(OutputStream stream, int chunkSize) {
+        this.chunkSize = chunkSize;
+        sb = new StringBuilder(2 * chunkSize);
+        chars = new char[2 * chunkSize];
+        formatter = new Formatter(sb);
+        out = new OutputStreamWriter(new BufferedOutputStream(stream,
+                4 * chunkSize), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Checks if the compact format is used.
+     *
+     * @return true for the compact format, false for the full one
+     */
+    boolean isCompact() {
+        return compact;
+    }
+
+    /**
+     * Sets the format.
+     *
+     * @param compact true for the compact format, false for the full one
+     */
+    void setCompact(boolean compact) {
+        this.compact = compact;
+    }
+
+    /**
+     * Render some rows of a table.
+     *
+     * @param table the table
+     * @param rows the ids of the rows
+     * @param from the index of the first row to render in {@code rows}
+     * @param to the index after the last row to render in {@code rows}
+     */
+    void render(TariffTable table, int[] rows, int from, int to) {
+        if (compact) {
+            appendHeader();
+        }
+
+        for (int i = from; i < to; i++) {
+            if (compact) {
+                appendRow(table.get(rows[i]), table.getType(rows[i]));
+            } else {
+                appendTariff(table.get(rows[i]));
+            }
+
+            if (sb.length() >= chunkSize) {
+                write();
+            }
+        }
+    }
+
+    /**
+     * Render a text.
+     *
+     * @param text the text
+     */
+    void print(String text) {
+        sb.append(text);
+        if (sb.length() >= chunkSize) {
+            write();
+        }
+    }
+
+    /**
+     * Render a line.
+     *
+     * @param line the line
+     */
+    void println(String line) {
+        sb.append(line).append('\n');
+        if (sb.length() >= chunkSize) {
+            write();
+        }
+    }
+
+    /**
+     * Render a formatted text.
+     *
+     * @param format the format as for {@link Formatter#format}
+     * @param args the arguments
+     */
+    void printf(String format, Object... args) {
+        formatter.format(format, args);
+        if (sb.length() >= chunkSize) {
+            write();
+        }
+    }
+
+    /**
+     * Gets the formatter which renders into the output. The output is not
+     * written until the next call of a render method or {@link #flush()}.
+     *
+     * @return the formatter
+     */
+    Formatter getFormatter() {
+        return formatter;
+    }
+
+    /**
+     * Checks if writing the output has failed, e. g. because the stream
+     * was closed. Once it has failed, the output is discarded.
+     *
+     * @return true if the output could not be written
+     */
+    boolean checkError() {
+        return failed;
+    }
+
+    /**
+     * Append a tariff in the full format.
+     *
+     * @param t the tariff
+     */
+    private void appendTariff(Tariff t) {
+        t.appendTo(sb).append('\n');
+    }
+
+    /**
+     * Append the header of the compact format.
+     */
+    private void appendHeader() {
+        appendRight(HEADER[0], 6);
+        sb.append("  ");
+        appendLeft(HEADER[1], TYPE_WIDTH);
+        appendLeft(HEADER[2], NAME_WIDTH);
+
+        for (int i = 3; i < HEADER.length; i++) {
+            appendRight(HEADER[i], NUMBER_WIDTH);
+        }
+
+        sb.append('\n');
+    }
+
+    /**
+     * Append a tariff in the compact format.
+     *
+     * @param t the tariff
+     * @param type the tariff type
+     */
+    private void appendRow(Tariff t, byte type) {
+        int start = sb.length();
+
+        sb.append(t.getId());
+        pad(start, 6);
+        sb.append("  ");
+        appendLeft(TYPES[type], TYPE_WIDTH);
+
+        String name = t.getName();
+        if (name.length() >= NAME_WIDTH) {
+            sb.append(name, 0, NAME_WIDTH - 2).append("~ ");
+        } else {
+            appendLeft(name, NAME_WIDTH);
+        }
+
+        appendNumber(t.getMonthly());
+        appendNumber(t.getInnerCalls());
+        appendNumber(t.getOuterCalls());
+        appendNumber(t.getLandlines());
+        appendNumber(t.getSms());
+        appendNumber(t.getInternet());
+        appendNumber(t.getSmsPackage());
+        appendNumber(t.getDataPackage());
+        sb.append('\n');
+    }
+
+    /**
+     * Append a number right aligned in a numeric column.
+     *
+     * @param value the number
+     */
+    private void appendNumber(double value) {
+        int start = sb.length();
+
+        sb.append(value);
+        pad(start, NUMBER_WIDTH);
+    }
+
+    /**
+     * Append a number right aligned in a numeric column.
+     *
+     * @param value the number
+     */
+    private void appendNumber(int value) {
+        int start = sb.length();
+
+        sb.append(value);
+        pad(start, NUMBER_WIDTH);
+    }
+
+    /**
+     * Append a text left aligned in a column.
+     *
+     * @param text the text
+     * @param width the column width
+     */
+    private void appendLeft(String text, int width) {
+        sb.append(text);
+        for (int i = text.length(); i < width; i++) {
+            sb.append(' ');
+        }
+    }
+
+    /**
+     * Append a text right aligned in a column.
+     *
+     * @param text the text
+     * @param width the column width
+     */
+    private void appendRight(String text, int width) {
+        int start = sb.length();
+
+        sb.append(text);
+        pad(start, width);
+    }
+
+    /**
+     * Right align the text appended since a position by inserting spaces
+     * before it.
+     *
+     * @param start the position of the text
+     * @param width the column width
+     */
+    private void pad(int start, int width) {
+        int len = sb.length() - start;
+
+        if (len < width) {
+            sb.insert(start, SPACES, 0, width - len);
+        }
+    }
+
+    /**
+     * Write the collected characters to the output buffer.
+     */
+    private void write() {
+        int len = sb.length();
+
+        if (failed) {
+            sb.setLength(0);
+            return;
+        }
+
+        try {
+            for (int i = 0; i < len; i += chars.length) {
+                int n = Math.min(chars.length, len - i);
+
+                sb.getChars(i, i + n, chars, 0);
+                out.write(chars, 0, n);
+            }
+        } catch (IOException e) {
+            LOGGER.error("Could not write the output", e);
+            failed = true;
+        }
+
+        sb.setLength(0);
+    }
+
+    /**
+     * Write the collected characters and flush the output.
+     */
+    void flush() {
+        write();
+
+        if (failed) {
+            return;
+        }
+
+        try {
+            out.flush();
+        } catch (IOException e) {
+            LOGGER.error("Could not write the output", e);
+            failed = true;
+        }
+    }
+}
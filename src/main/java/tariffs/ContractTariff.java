@@ -40,6 +40,7 @@ public class ContractTariff extends Tariff {
      */
     public void setDailyMinutes(int dailyMinutes) {
         this.dailyMinutes = dailyMinutes;
+        fireChanged("dailyMinutes");
     }
 
     /**
@@ -58,16 +59,17 @@ public class ContractTariff extends Tariff {
      */
     public void setAbroadCalls(double abroadCalls) {
         this.abroadCalls = abroadCalls;
+        fireChanged("abroadCalls");
     }
 
     /* (non-Javadoc)
-     * @see tariffs.Tariff#toString()
+     * @see tariffs.Tariff#appendTo(java.lang.StringBuilder)
      */
     @Override
-    public String toString() {
-        return super.toString()
-                + "abroadCalls: " + abroadCalls + "\n"
-                + "dailyMinutes: " + dailyMinutes + "\n";
+    public StringBuilder appendTo(StringBuilder sb) {
+        return super.appendTo(sb)
+                .append("abroadCalls: ").append(abroadCalls).append('\n')
+                .append("dailyMinutes: ").append(dailyMinutes).append('\n');
     }
 
     /* (non-Javadoc)
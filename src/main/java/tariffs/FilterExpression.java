@@ -0,0 +1,501 @@
+package tariffs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A parsed boolean expression over the tariff fields, e. g.
+ * {@code monthly <= 20 and (sms < 0.1 or smsPackage >= 100) and
+ * type = contract}. Expressions are immutable trees made by
+ * {@link FilterParser} and are turned into a {@link TariffFilter} for a
+ * given table by {@link TariffFilter#compile(FilterExpression, TariffTable)}.
+ * <br>
+ * A comparison never matches a tariff which does not have the field, and
+ * neither does its negation: 'not' negates the comparison of the value, so
+ * {@code not abroadCalls = 1.99} is {@code abroadCalls != 1.99}.
+ * <br>
+ * Expressions which only differ in the order or repetition of the operands
+ * of 'and' and 'or' have the same {@link #normalForm()}, which can be used
+ * as a key of query results.
+ */
+public abstract class FilterExpression {
+
+    /**
+     * The comparison operators.
+     */
+    public enum Operator {
+
+        /** Less than. */
+        LT("<"),
+
+        /** Less than or equal. */
+        LE("<="),
+
+        /** Greater than. */
+        GT(">"),
+
+        /** Greater than or equal. */
+        GE(">="),
+
+        /** Equal. */
+        EQ("="),
+
+        /** Not equal. */
+        NE("!=");
+
+        /** The operator symbol. */
+        private final String symbol;
+
+        /**
+         * Instantiates a new operator.
+         *
+         * @param symbol the operator symbol
+         */
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        /**
+         * Gets the operator symbol.
+         *
+         * @return the symbol, e. g. '&lt;='
+         */
+        public String getSymbol() {
+            return symbol;
+        }
+
+        /**
+         * Get the complementary operator, which holds for two numbers
+         * exactly when this one does not.
+         *
+         * @return the complementary operator
+         */
+        public Operator complement() {
+            switch (this) {
+                case LT:
+                    return GE;
+                case LE:
+                    return GT;
+                case GT:
+                    return LE;
+                case GE:
+                    return LT;
+                case EQ:
+                    return NE;
+                default:
+                    return EQ;
+            }
+        }
+    }
+
+    /** Instances are only made by the nested classes. */
+    private FilterExpression() {}
+
+    /**
+     * Compile the expression into a condition on the rows of a table.
+     *
+     * @param columns the version of the table columns the condition reads
+     * @return the condition
+     */
+    abstract TariffFilter.Condition compile(TariffTable.Columns columns);
+
+    /**
+     * Get the negation of the expression with 'not' pushed down to the
+     * comparisons, each of which is replaced by the complementary one.
+     *
+     * @return the negated expression
+     */
+    abstract FilterExpression negate();
+
+    /**
+     * Get the normal form of the expression: nested conjunctions and
+     * disjunctions are flattened and their operands are deduplicated and
+     * sorted.
+     *
+     * @return the normal form
+     */
+    public abstract String normalForm();
+
+    /**
+     * A comparison of a numeric field with a constant.
+     */
+    public static final class Comparison extends FilterExpression {
+
+        /** The field name. */
+        private final String field;
+
+        /** The operator. */
+        private final Operator op;
+
+        /** The constant. */
+        private final double value;
+
+        /**
+         * Instantiates a new comparison.
+         *
+         * @param field the field name, one of {@link TariffTable#getFields()}
+         * @param op the operator
+         * @param value the constant
+         */
+        public Comparison(String field, Operator op, double value) {
+            this.field = field;
+            this.op = op;
+            this.value = value;
+        }
+
+        /**
+         * Gets the field name.
+         *
+         * @return the field name
+         */
+        public String getField() {
+            return field;
+        }
+
+        /**
+         * Gets the operator.
+         *
+         * @return the operator
+         */
+        public Operator getOperator() {
+            return op;
+        }
+
+        /**
+         * Gets the constant.
+         *
+         * @return the constant
+         */
+        public double getValue() {
+            return value;
+        }
+
+        /* (non-Javadoc)
+         * @see tariffs.FilterExpression#compile(tariffs.TariffTable.Columns)
+         */
+        @Override
+        TariffFilter.Condition compile(TariffTable.Columns columns) {
+            return TariffFilter.comparison(columns, field, op, value);
+        }
+
+        /* (non-Javadoc)
+         * @see tariffs.FilterExpression#negate()
+         */
+        @Override
+        FilterExpression negate() {
+            return new Comparison(field, op.complement(), value);
+        }
+
+        /* (non-Javadoc)
+         * @see tariffs.FilterExpression#normalForm()
+         */
+        @Override
+        public String normalForm() {
+            return toString();
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return field + " " + op.getSymbol() + " " + value;
+        }
+    }
+
+    /**
+     * A check of the tariff type.
+     */
+    public static final class TypeTest extends FilterExpression {
+
+        /** The type names, by type. */
+        private static final String[] NAMES = {
+            "generic", "prepaid", "contract"
+        };
+
+        /** The tariff type. */
+        private final byte type;
+
+        /** Whether the type must differ. */
+        private final boolean negated;
+
+        /**
+         * Instantiates a new type test.
+         *
+         * @param type one of {@link TariffTable#GENERIC},
+         * {@link TariffTable#PREPAID}, {@link TariffTable#CONTRACT}
+         * @param negated true to match the tariffs of other types
+         */
+        public TypeTest(byte type, boolean negated) {
+            this.type = type;
+            this.negated = negated;
+        }
+
+        /**
+         * Get a type by name.
+         *
+         * @param name 'generic', 'prepaid' or 'contract'
+         * @return the type or -1 if there is no such type
+         */
+        public static byte typeOf(String name) {
+            for (byte t = 0; t < NAMES.length; t++) {
+                if (NAMES[t].equalsIgnoreCase(name)) {
+                    return t;
+                }
+            }
+
+            return -1;
+        }
+
+        /**
+         * Get the name of a type.
+         *
+         * @param type the type
+         * @return the type name
+         */
+        static String nameOf(byte type) {
+            return NAMES[type];
+        }
+
+        /**
+         * Gets the tariff type.
+         *
+         * @return the type
+         */
+        public byte getType() {
+            return type;
+        }
+
+        /**
+         * Checks if the type must differ.
+         *
+         * @return true if the tariffs of other types match
+         */
+        public boolean isNegated() {
+            return negated;
+        }
+
+        /* (non-Javadoc)
+         * @see tariffs.FilterExpression#compile(tariffs.TariffTable.Columns)
+         */
+        @Override
+        TariffFilter.Condition compile(TariffTable.Columns columns) {
+            return TariffFilter.typeTest(columns.getTable(), type, negated);
+        }
+
+        /* (non-Javadoc)
+         * @see tariffs.FilterExpression#negate()
+         */
+        @Override
+        FilterExpression negate() {
+            return new TypeTest(type, !negated);
+        }
+
+        /* (non-Javadoc)
+         * @see tariffs.FilterExpression#normalForm()
+         */
+        @Override
+        public String normalForm() {
+            return toString();
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return "type " + (negated ? "!=" : "=") + " " + NAMES[type];
+        }
+    }
+
+    /**
+     * A conjunction or a disjunction of two or more expressions.
+     */
+    public static final class Junction extends FilterExpression {
+
+        /** Whether this is a conjunction. */
+        private final boolean and;
+
+        /** The operands. */
+        private final List<FilterExpression> operands;
+
+        /**
+         * Instantiates a new junction.
+         *
+         * @param and true for a conjunction, false for a disjunction
+         * @param operands the operands
+         */
+        public Junction(boolean and, List<FilterExpression> operands) {
+            this.and = and;
+            this.operands = Collections.unmodifiableList(
+                    new ArrayList<>(operands));
+        }
+
+        /**
+         * Checks if this is a conjunction.
+         *
+         * @return true for a conjunction, false for a disjunction
+         */
+        public boolean isAnd() {
+            return and;
+        }
+
+        /**
+         * Gets the operands.
+         *
+         * @return the unmodifiable list of the operands
+         */
+        public List<FilterExpression> getOperands() {
+            return operands;
+        }
+
+        /* (non-Javadoc)
+         * @see tariffs.FilterExpression#compile(tariffs.TariffTable.Columns)
+         */
+        @Override
+        TariffFilter.Condition compile(TariffTable.Columns columns) {
+            List<TariffFilter.Condition> conditions = new ArrayList<>();
+
+            for (FilterExpression e : operands) {
+                conditions.add(e.compile(columns));
+            }
+
+            return and ? TariffFilter.and(conditions)
+                    : TariffFilter.or(conditions);
+        }
+
+        /* (non-Javadoc)
+         * @see tariffs.FilterExpression#negate()
+         */
+        @Override
+        FilterExpression negate() {
+            List<FilterExpression> negated = new ArrayList<>();
+
+            for (FilterExpression e : operands) {
+                negated.add(e.negate());
+            }
+
+            return new Junction(!and, negated);
+        }
+
+        /* (non-Javadoc)
+         * @see tariffs.FilterExpression#normalForm()
+         */
+        @Override
+        public String normalForm() {
+            Set<String> forms = new TreeSet<>();
+
+            addOperandForms(forms);
+            if (forms.size() == 1) {
+                return forms.iterator().next();
+            }
+
+            StringBuilder sb = new StringBuilder("(");
+            for (String form : forms) {
+                if (sb.length() > 1) {
+                    sb.append(and ? " and " : " or ");
+                }
+                sb.append(form);
+            }
+
+            return sb.append(')').toString();
+        }
+
+        /**
+         * Add the normal forms of the operands to a set, flattening the
+         * nested junctions of the same kind.
+         *
+         * @param forms the set of the normal forms
+         */
+        private void addOperandForms(Set<String> forms) {
+            for (FilterExpression e : operands) {
+                if ((e instanceof Junction) && (((Junction) e).and == and)) {
+                    ((Junction) e).addOperandForms(forms);
+                } else {
+                    forms.add(e.normalForm());
+                }
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("(");
+
+            for (FilterExpression e : operands) {
+                if (sb.length() > 1) {
+                    sb.append(and ? " and " : " or ");
+                }
+                sb.append(e);
+            }
+
+            return sb.append(')').toString();
+        }
+    }
+
+    /**
+     * A negation of an expression. It is compiled as the expression with
+     * 'not' pushed down to the comparisons by De Morgan's laws, so a negated
+     * comparison does not match the tariffs without the field.
+     */
+    public static final class Not extends FilterExpression {
+
+        /** The negated expression. */
+        private final FilterExpression operand;
+
+        /**
+         * Instantiates a new negation.
+         *
+         * @param operand the negated expression
+         */
+        public Not(FilterExpression operand) {
+            this.operand = operand;
+        }
+
+        /**
+         * Gets the negated expression.
+         *
+         * @return the expression
+         */
+        public FilterExpression getOperand() {
+            return operand;
+        }
+
+        /* (non-Javadoc)
+         * @see tariffs.FilterExpression#compile(tariffs.TariffTable.Columns)
+         */
+        @Override
+        TariffFilter.Condition compile(TariffTable.Columns columns) {
+            return operand.negate().compile(columns);
+        }
+
+        /* (non-Javadoc)
+         * @see tariffs.FilterExpression#negate()
+         */
+        @Override
+        FilterExpression negate() {
+            return operand;
+        }
+
+        /* (non-Javadoc)
+         * @see tariffs.FilterExpression#normalForm()
+         */
+        @Override
+        public String normalForm() {
+            return "not " + operand.normalForm();
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return "not " + operand;
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package tariffs;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A recursive descent parser of filter expressions. The grammar is:
+ * <pre>
+ * expression := conjunction ('or' conjunction)*
+ * conjunction := term ('and' term)*
+ * term := 'not' term | '(' expression ')' | comparison
+ * comparison := field operator number | 'type' ('=' | '!=') typename
+ * operator := '&lt;' | '&lt;=' | '&gt;' | '&gt;=' | '=' | '==' | '!='
+ * </pre>
+ * where a field is one of {@link TariffTable#getFields()}, a type name is
+ * 'generic', 'prepaid' or 'contract' and a number is a decimal number with
+ * an optional exponent, e. g. {@code 1.5e3}. Keywords, field names and type
+ * names are case-insensitive.
+ * <br>
+ * A comparison does not match the tariffs without the field (e. g. the
+ * 'abroadCalls' of a prepaid tariff), whatever the operator, and 'not' is
+ * pushed down to the comparisons by De Morgan's laws and replaces each of
+ * them by the complementary one, so a negated comparison does not match
+ * them either: {@code not abroadCalls >= 2} is {@code abroadCalls < 2} and
+ * {@code not (abroadCalls = 1.99)} is {@code abroadCalls != 1.99}. The
+ * negation of a type test matches the tariffs of the other types.
+ * <br>
+ * The parser keeps its state between calls, so an instance should not be
+ * shared between threads.
+ */
+public class FilterParser {
+
+    /** The expression being parsed. */
+    private String in;
+
+    /** The current position in the expression. */
+    private int pos;
+
+    /**
+     * Parse a filter expression.
+     *
+     * @param expression the expression
+     * @return the parsed expression
+     * @throws ParseException if the expression is not valid; the error
+     * offset is the position of the unexpected token
+     */
+    public FilterExpression parse(String expression) throws ParseException {
+        in = expression;
+        pos = 0;
+
+        FilterExpression result = parseDisjunction();
+
+        skipSpaces();
+        if (pos < in.length()) {
+            throw error("Unexpected '" + in.substring(pos) + "'");
+        }
+
+        return result;
+    }
+
+    /**
+     * Parse a disjunction.
+     *
+     * @return the expression
+     * @throws ParseException if the input is not valid
+     */
+    private FilterExpression parseDisjunction() throws ParseException {
+        List<FilterExpression> operands = new ArrayList<>();
+
+        operands.add(parseConjunction());
+        while (acceptKeyword("or")) {
+            operands.add(parseConjunction());
+        }
+
+        return (operands.size() == 1) ? operands.get(0)
+                : new FilterExpression.Junction(false, operands);
+    }
+
+    /**
+     * Parse a conjunction.
+     *
+     * @return the expression
+     * @throws ParseException if the input is not valid
+     */
+    private FilterExpression parseConjunction() throws ParseException {
+        List<FilterExpression> operands = new ArrayList<>();
+
+        operands.add(parseTerm());
+        while (acceptKeyword("and")) {
+            operands.add(parseTerm());
+        }
+
+        return (operands.size() == 1) ? operands.get(0)
+                : new FilterExpression.Junction(true, operands);
+    }
+
+    /**
+     * Parse a negation, a parenthesized expression or a comparison.
+     *
+     * @return the expression
+     * @throws ParseException if the input is not valid
+     */
+    private FilterExpression parseTerm() throws ParseException {
+        if (acceptKeyword("not")) {
+            return new FilterExpression.Not(parseTerm());
+        }
+
+        skipSpaces();
+        if ((pos < in.length()) && (in.charAt(pos) == '(')) {
+            pos++;
+            FilterExpression e = parseDisjunction();
+
+            skipSpaces();
+            if ((pos == in.length()) || (in.charAt(pos) != ')')) {
+                throw error("Expected ')'");
+            }
+
+            pos++;
+            return e;
+        }
+
+        return parseComparison();
+    }
+
+    /**
+     * Parse a comparison.
+     *
+     * @return the expression
+     * @throws ParseException if the input is not valid
+     */
+    private FilterExpression parseComparison() throws ParseException {
+        int start = pos;
+        String field = word();
+
+        if (field.isEmpty()) {
+            throw error("Expected a field name");
+        }
+
+        int opStart = skipSpaces();
+        FilterExpression.Operator op = operator();
+
+        if ("type".equalsIgnoreCase(field)) {
+            if ((op != FilterExpression.Operator.EQ)
+                    && (op != FilterExpression.Operator.NE)) {
+                pos = opStart;
+                throw error("Expected '=' or '!=' after 'type'");
+            }
+
+            skipSpaces();
+            int nameStart = pos;
+            byte type = FilterExpression.TypeTest.typeOf(word());
+
+            if (type < 0) {
+                pos = nameStart;
+                throw error("Expected 'generic', 'prepaid' or 'contract'");
+            }
+
+            return new FilterExpression.TypeTest(type,
+                    op == FilterExpression.Operator.NE);
+        }
+
+        String name = fieldName(field);
+
+        if (name == null) {
+            pos = start;
+            throw error("Unknown field '" + field + "'");
+        }
+
+        return new FilterExpression.Comparison(name, op, number());
+    }
+
+    /**
+     * Get the name of a field stored in columns, ignoring the case.
+     *
+     * @param word the field name in any case
+     * @return the field name as in {@link TariffTable#getFields()} or null
+     * if there is no such field
+     */
+    private static String fieldName(String word) {
+        for (String field : TariffTable.getFields()) {
+            if (field.equalsIgnoreCase(word)) {
+                return field;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Read a comparison operator.
+     *
+     * @return the operator
+     * @throws ParseException if there is no operator
+     */
+    private FilterExpression.Operator operator() throws ParseException {
+        if (accept("<=")) {
+            return FilterExpression.Operator.LE;
+        } else if (accept(">=")) {
+            return FilterExpression.Operator.GE;
+        } else if (accept("!=")) {
+            return FilterExpression.Operator.NE;
+        } else if (accept("==") || accept("=")) {
+            return FilterExpression.Operator.EQ;
+        } else if (accept("<")) {
+            return FilterExpression.Operator.LT;
+        } else if (accept(">")) {
+            return FilterExpression.Operator.GT;
+        }
+
+        throw error("Expected a comparison operator");
+    }
+
+    /**
+     * Read a number: a sign, digits with a decimal point and an exponent.
+     *
+     * @return the number
+     * @throws ParseException if there is no number
+     */
+    private double number() throws ParseException {
+        int start = skipSpaces();
+
+        skipSign();
+        while ((pos < in.length()) && (Character.isDigit(in.charAt(pos))
+                || (in.charAt(pos) == '.'))) {
+            pos++;
+        }
+
+        if ((pos > start) && (pos < in.length())
+                && ((in.charAt(pos) == 'e') || (in.charAt(pos) == 'E'))) {
+            pos++;
+            skipSign();
+            while ((pos < in.length()) && Character.isDigit(in.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        try {
+            return Double.parseDouble(in.substring(start, pos));
+        } catch (NumberFormatException e) {
+            pos = start;
+            throw error("Expected a number");
+        }
+    }
+
+    /**
+     * Skip a sign if it is next.
+     */
+    private void skipSign() {
+        if ((pos < in.length())
+                && ((in.charAt(pos) == '-') || (in.charAt(pos) == '+'))) {
+            pos++;
+        }
+    }
+
+    /**
+     * Read a word of letters.
+     *
+     * @return the word, empty if there is none
+     */
+    private String word() {
+        int start = skipSpaces();
+
+        while ((pos < in.length()) && Character.isLetter(in.charAt(pos))) {
+            pos++;
+        }
+
+        return in.substring(start, pos);
+    }
+
+    /**
+     * Skip a keyword if it is next.
+     *
+     * @param keyword the keyword
+     * @return true if the keyword was skipped
+     */
+    private boolean acceptKeyword(String keyword) {
+        int start = skipSpaces();
+        int end = start + keyword.length();
+
+        if (in.regionMatches(true, start, keyword, 0, keyword.length())
+                && ((end == in.length())
+                        || !Character.isLetterOrDigit(in.charAt(end)))) {
+            pos = end;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Skip a symbol if it is next.
+     *
+     * @param symbol the symbol
+     * @return true if the symbol was skipped
+     */
+    private boolean accept(String symbol) {
+        skipSpaces();
+
+        if (in.startsWith(symbol, pos)) {
+            pos += symbol.length();
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Skip white space.
+     *
+     * @return the position after the white space
+     */
+    private int skipSpaces() {
+        while ((pos < in.length()) && Character.isWhitespace(in.charAt(pos))) {
+            pos++;
+        }
+
+        return pos;
+    }
+
+    /**
+     * Create a parse exception at the current position.
+     *
+     * @param message the error message
+     * @return the exception
+     */
+    private ParseException error(String message) {
+        return new ParseException(message + " at position " + pos, pos);
+    }
+}
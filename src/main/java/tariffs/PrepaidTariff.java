@@ -35,14 +35,16 @@ public class PrepaidTariff extends Tariff {
      */
     public void setActivation(double activation) {
         this.activation = activation;
+        fireChanged("activation");
     }
 
     /* (non-Javadoc)
-     * @see tariffs.Tariff#toString()
+     * @see tariffs.Tariff#appendTo(java.lang.StringBuilder)
      */
     @Override
-    public String toString() {
-        return super.toString() + "activation: " + activation + "\n";
+    public StringBuilder appendTo(StringBuilder sb) {
+        return super.appendTo(sb)
+                .append("activation: ").append(activation).append('\n');
     }
 
     /* (non-Javadoc)
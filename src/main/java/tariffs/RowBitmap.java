@@ -0,0 +1,501 @@
+package tariffs;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * An immutable compressed bitmap of row ids of a {@code TariffTable}. The
+ * ids are split into chunks of 65536 by their high 16 bits; each non-empty
+ * chunk is stored either as a sorted array of the low 16 bits, when it is
+ * sparse, or as a plain bitmap, when it is dense. Bitmaps are combined with
+ * {@link #and(RowBitmap)}.
+ * <br>
+ * A bitmap of all rows of a table is a special case created in constant
+ * time by {@link #full(int)}.
+ */
+public final class RowBitmap {
+
+    /** The largest cardinality of a chunk stored as an array. */
+    private static final int ARRAY_MAX = 4096;
+
+    /** The number of long words of a chunk stored as a bitmap. */
+    private static final int WORDS = 1024;
+
+    /** The empty bitmap. */
+    private static final RowBitmap EMPTY =
+            new RowBitmap(-1, new int[0], new Object[0], new int[0]);
+
+    /** The number of rows if all rows are set, -1 otherwise. */
+    private final int fullSize;
+
+    /** The high 16 bits of the chunks, sorted. */
+    private final int[] keys;
+
+    /** The chunks: sorted char[] of low bits or long[] bitmaps. */
+    private final Object[] chunks;
+
+    /** The cardinalities of the chunks. */
+    private final int[] cardinalities;
+
+    /**
+     * Instantiates a new row bitmap.
+     *
+     * @param fullSize the number of rows if all are set, -1 otherwise
+     * @param keys the high 16 bits of the chunks
+     * @param chunks the chunks
+     * @param cardinalities the cardinalities of the chunks
+     */
+    private RowBitmap(int fullSize, int[] keys, Object[] chunks,
+            int[] cardinalities) {
+        this.fullSize = fullSize;
+        this.keys = keys;
+        this.chunks = chunks;
+        this.cardinalities = cardinalities;
+    }
+
+    /**
+     * Gets the bitmap of all rows of a table.
+     *
+     * @param size the number of rows
+     * @return the bitmap with rows 0..size-1 set
+     */
+    public static RowBitmap full(int size) {
+        return new RowBitmap(size, null, null, null);
+    }
+
+    /**
+     * Gets the empty bitmap.
+     *
+     * @return the empty bitmap
+     */
+    public static RowBitmap empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Create a bitmap of row ids.
+     *
+     * @param rows the row ids in ascending order
+     * @return the bitmap
+     */
+    public static RowBitmap of(int[] rows) {
+        Builder b = new Builder();
+
+        for (int r : rows) {
+            b.add(r);
+        }
+
+        return b.build();
+    }
+
+    /**
+     * Checks if all rows of a table are set.
+     *
+     * @return true if this bitmap was created by {@link #full(int)}
+     */
+    public boolean isFull() {
+        return fullSize >= 0;
+    }
+
+    /**
+     * Gets the number of set rows.
+     *
+     * @return the cardinality
+     */
+    public int cardinality() {
+        if (isFull()) {
+            return fullSize;
+        }
+
+        int n = 0;
+        for (int c : cardinalities) {
+            n += c;
+        }
+
+        return n;
+    }
+
+    /**
+     * Estimate the memory taken by the bitmap.
+     *
+     * @return the approximate number of bytes on the heap
+     */
+    public long estimateBytes() {
+        // object headers and array headers are taken as 16 bytes each
+        long bytes = 32;
+
+        if (isFull()) {
+            return bytes;
+        }
+
+        bytes += 3 * 16 + keys.length * (4L + 4 + 4);
+        for (Object chunk : chunks) {
+            bytes += 16 + ((chunk instanceof char[])
+                    ? 2L * ((char[]) chunk).length
+                    : 8L * ((long[]) chunk).length);
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Checks if no rows are set.
+     *
+     * @return true if the bitmap is empty
+     */
+    public boolean isEmpty() {
+        return cardinality() == 0;
+    }
+
+    /**
+     * Checks if a row is set.
+     *
+     * @param row the row id
+     * @return true if the row is set
+     */
+    public boolean contains(int row) {
+        if (isFull()) {
+            return (row >= 0) && (row < fullSize);
+        }
+
+        int i = Arrays.binarySearch(keys, row >>> 16);
+        if (i < 0) {
+            return false;
+        }
+
+        char low = (char) row;
+        if (chunks[i] instanceof char[]) {
+            return Arrays.binarySearch((char[]) chunks[i], low) >= 0;
+        }
+
+        return (((long[]) chunks[i])[low >>> 6] & (1L << low)) != 0;
+    }
+
+    /**
+     * Intersect this bitmap with another one.
+     *
+     * @param other the other bitmap
+     * @return a bitmap of the rows set in both bitmaps
+     */
+    public RowBitmap and(RowBitmap other) {
+        if (isFull() && other.isFull()) {
+            return (fullSize <= other.fullSize) ? this : other;
+        }
+
+        if (isFull()) {
+            return other.truncate(fullSize);
+        }
+
+        if (other.isFull()) {
+            return truncate(other.fullSize);
+        }
+
+        Builder b = new Builder();
+        int i = 0;
+        int j = 0;
+
+        while ((i < keys.length) && (j < other.keys.length)) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                b.addChunk(keys[i], andChunks(chunks[i], other.chunks[j]));
+                i++;
+                j++;
+            }
+        }
+
+        return b.build();
+    }
+
+    /**
+     * Call an action for each set row in ascending order.
+     *
+     * @param action the action
+     */
+    public void forEach(IntConsumer action) {
+        if (isFull()) {
+            for (int r = 0; r < fullSize; r++) {
+                action.accept(r);
+            }
+            return;
+        }
+
+        for (int i = 0; i < keys.length; i++) {
+            int high = keys[i] << 16;
+
+            if (chunks[i] instanceof char[]) {
+                for (char low : (char[]) chunks[i]) {
+                    action.accept(high | low);
+                }
+            } else {
+                long[] words = (long[]) chunks[i];
+                for (int w = 0; w < WORDS; w++) {
+                    long word = words[w];
+                    while (word != 0) {
+                        action.accept(high | (w << 6)
+                                | Long.numberOfTrailingZeros(word));
+                        word &= word - 1;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the set rows as an array.
+     *
+     * @return the row ids in ascending order
+     */
+    public int[] toArray() {
+        int[] result = new int[cardinality()];
+        int[] n = {0};
+
+        forEach(r -> result[n[0]++] = r);
+        return result;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return isFull()
+                ? "RowBitmap[all " + fullSize + "]"
+                : "RowBitmap[" + cardinality() + " rows]";
+    }
+
+    /**
+     * Get a bitmap of the set rows less than a given size.
+     *
+     * @param size the number of rows
+     * @return the bitmap
+     */
+    private RowBitmap truncate(int size) {
+        Builder b = new Builder();
+
+        forEach(r -> {
+            if (r < size) {
+                b.add(r);
+            }
+        });
+
+        return b.build();
+    }
+
+    /**
+     * Intersect two chunks.
+     *
+     * @param a the first chunk
+     * @param b the second chunk
+     * @return a sorted char[] or a long[] bitmap
+     */
+    private static Object andChunks(Object a, Object b) {
+        if ((a instanceof char[]) && (b instanceof char[])) {
+            char[] x = (char[]) a;
+            char[] y = (char[]) b;
+            char[] result = new char[Math.min(x.length, y.length)];
+            int i = 0;
+            int j = 0;
+            int n = 0;
+
+            while ((i < x.length) && (j < y.length)) {
+                if (x[i] < y[j]) {
+                    i++;
+                } else if (x[i] > y[j]) {
+                    j++;
+                } else {
+                    result[n++] = x[i];
+                    i++;
+                    j++;
+                }
+            }
+
+            return Arrays.copyOf(result, n);
+        }
+
+        if ((a instanceof long[]) && (b instanceof long[])) {
+            long[] x = (long[]) a;
+            long[] y = (long[]) b;
+            long[] result = new long[WORDS];
+
+            for (int w = 0; w < WORDS; w++) {
+                result[w] = x[w] & y[w];
+            }
+
+            return result;
+        }
+
+        // an array and a bitmap
+        char[] x = (char[]) ((a instanceof char[]) ? a : b);
+        long[] y = (long[]) ((a instanceof char[]) ? b : a);
+        char[] result = new char[x.length];
+        int n = 0;
+
+        for (char low : x) {
+            if ((y[low >>> 6] & (1L << low)) != 0) {
+                result[n++] = low;
+            }
+        }
+
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * A builder of bitmaps from row ids added in ascending order.
+     */
+    public static class Builder {
+
+        /** The high 16 bits of the chunks built so far. */
+        private int[] keys = new int[4];
+
+        /** The chunks built so far. */
+        private Object[] chunks = new Object[4];
+
+        /** The cardinalities of the chunks built so far. */
+        private int[] cardinalities = new int[4];
+
+        /** The number of chunks built so far. */
+        private int size;
+
+        /** The high 16 bits of the current chunk, -1 if there is none. */
+        private int currentKey = -1;
+
+        /** The low 16 bits of the rows of the current chunk. */
+        private char[] current = new char[ARRAY_MAX];
+
+        /** The number of rows in the current chunk. */
+        private int currentSize;
+
+        /** The current chunk as a bitmap, once it gets dense. */
+        private long[] currentWords;
+
+        /**
+         * Add a row. Rows have to be added in ascending order.
+         *
+         * @param row the row id
+         * @return this builder
+         */
+        public Builder add(int row) {
+            int key = row >>> 16;
+            char low = (char) row;
+
+            if (key != currentKey) {
+                flush();
+                currentKey = key;
+            }
+
+            if (currentWords != null) {
+                currentWords[low >>> 6] |= 1L << low;
+            } else if (currentSize < ARRAY_MAX) {
+                current[currentSize] = low;
+            } else {
+                // the chunk gets dense, switch to a bitmap
+                currentWords = new long[WORDS];
+                for (int i = 0; i < currentSize; i++) {
+                    currentWords[current[i] >>> 6] |= 1L << current[i];
+                }
+                currentWords[low >>> 6] |= 1L << low;
+            }
+
+            currentSize++;
+            return this;
+        }
+
+        /**
+         * Build the bitmap.
+         *
+         * @return the bitmap
+         */
+        public RowBitmap build() {
+            flush();
+
+            if (size == 0) {
+                return EMPTY;
+            }
+
+            return new RowBitmap(-1, Arrays.copyOf(keys, size),
+                    Arrays.copyOf(chunks, size),
+                    Arrays.copyOf(cardinalities, size));
+        }
+
+        /**
+         * Finish the current chunk.
+         */
+        private void flush() {
+            if (currentSize > 0) {
+                append(currentKey, (currentWords != null) ? currentWords
+                        : Arrays.copyOf(current, currentSize), currentSize);
+            }
+
+            currentKey = -1;
+            currentSize = 0;
+            currentWords = null;
+        }
+
+        /**
+         * Add a whole chunk, converting it to the compact form.
+         *
+         * @param key the high 16 bits of the chunk
+         * @param chunk a sorted char[] or a long[] bitmap
+         */
+        private void addChunk(int key, Object chunk) {
+            flush();
+
+            if (chunk instanceof char[]) {
+                append(key, chunk, ((char[]) chunk).length);
+                return;
+            }
+
+            long[] words = (long[]) chunk;
+            int n = 0;
+            for (long w : words) {
+                n += Long.bitCount(w);
+            }
+
+            if (n > ARRAY_MAX) {
+                append(key, words, n);
+                return;
+            }
+
+            // a sparse bitmap is converted to an array
+            char[] lows = new char[n];
+            int i = 0;
+            for (int w = 0; w < WORDS; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    lows[i++] = (char) ((w << 6)
+                            | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+
+            append(key, lows, n);
+        }
+
+        /**
+         * Append a chunk unless it is empty.
+         *
+         * @param key the high 16 bits of the chunk
+         * @param chunk the chunk
+         * @param cardinality the cardinality of the chunk
+         */
+        private void append(int key, Object chunk, int cardinality) {
+            if (cardinality == 0) {
+                return;
+            }
+
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                chunks = Arrays.copyOf(chunks, size * 2);
+                cardinalities = Arrays.copyOf(cardinalities, size * 2);
+            }
+
+            keys[size] = key;
+            chunks[size] = chunk;
+            cardinalities[size] = cardinality;
+            size++;
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package tariffs;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 /** A generic tariff class. It contains a number of fields that represent
  * rates for specific services, respective getters and setters and the
  * builder class used for more convenient initialisation of tariffs.
@@ -36,6 +39,9 @@ public class Tariff{
     /** The number of free MB per month. */
     protected int dataPackage;
 
+    /** The listeners notified of changes (created on demand). */
+    private volatile List<TariffListener> listeners;
+
     /**
      * Instantiates a new tariff.
      *
@@ -79,6 +85,7 @@ public class Tariff{
      */
     public void setName(String name) {
         this.name = name;
+        fireChanged("name");
     }
 
     /**
@@ -97,6 +104,7 @@ public class Tariff{
      */
     public void setMonthly(double monthly) {
         this.monthly = monthly;
+        fireChanged("monthly");
     }
 
     /**
@@ -115,6 +123,7 @@ public class Tariff{
      */
     public void setInnerCalls(double innerCalls) {
         this.innerCalls = innerCalls;
+        fireChanged("innerCalls");
     }
 
     /**
@@ -133,6 +142,7 @@ public class Tariff{
      */
     public void setOuterCalls(double outerCalls) {
         this.outerCalls = outerCalls;
+        fireChanged("outerCalls");
     }
 
     /**
@@ -151,6 +161,7 @@ public class Tariff{
      */
     public void setLandlines(double landlines) {
         this.landlines = landlines;
+        fireChanged("landlines");
     }
 
     /**
@@ -169,6 +180,7 @@ public class Tariff{
      */
     public void setSms(double sms) {
         this.sms = sms;
+        fireChanged("sms");
     }
 
     /**
@@ -187,6 +199,7 @@ public class Tariff{
      */
     public void setInternet(double internet) {
         this.internet = internet;
+        fireChanged("internet");
     }
 
     /**
@@ -205,6 +218,7 @@ public class Tariff{
      */
     public void setSmsPackage(int smsPackage) {
         this.smsPackage = smsPackage;
+        fireChanged("smsPackage");
     }
 
     /**
@@ -223,6 +237,66 @@ public class Tariff{
      */
     public void setDataPackage(int dataPackage) {
         this.dataPackage = dataPackage;
+        fireChanged("dataPackage");
+    }
+
+    /**
+     * Adds a listener notified when a field of this tariff is changed.
+     *
+     * @param listener the listener
+     */
+    public synchronized void addListener(TariffListener listener) {
+        if (listeners == null) {
+            listeners = new CopyOnWriteArrayList<>();
+        }
+        
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener the listener
+     */
+    public synchronized void removeListener(TariffListener listener) {
+        if (listeners != null) {
+            listeners.remove(listener);
+        }
+    }
+
+    /**
+     * Notify the listeners that a field has been changed.
+     *
+     * @param field the name of the changed field
+     */
+    protected void fireChanged(String field) {
+        List<TariffListener> l = listeners;
+        
+        if (l != null) {
+            for (TariffListener listener : l) {
+        	listener.tariffChanged(this, field);
+            }
+        }
+    }
+
+    /**
+     * Append the description of the tariff, the same text as
+     * {@link #toString()}, to a string builder. Listing many tariffs this
+     * way builds no strings.
+     *
+     * @param sb the string builder
+     * @return the string builder
+     */
+    public StringBuilder appendTo(StringBuilder sb) {
+        return sb.append(name).append(" (id: ").append(id).append(")\n")
+                .append("monthly: ").append(monthly).append('\n')
+                .append("inner calls: ").append(innerCalls).append('\n')
+                .append("outer calls: ").append(outerCalls).append('\n')
+                .append("landlines: ").append(landlines).append('\n')
+                .append("sms: ").append(sms).append('\n')
+                .append("internet: ").append(internet).append('\n')
+                .append("sms package: ").append(smsPackage).append('\n')
+                .append("data package: ").append(dataPackage).append('\n');
     }
 
     /* (non-Javadoc)
@@ -230,15 +304,7 @@ public class Tariff{
      */
     @Override
     public String toString() {
-        return name + " (id: " + id + ")\n"
-                + "monthly: " + monthly + "\n"
-                + "inner calls: " + innerCalls + "\n"
-                + "outer calls: " + outerCalls + "\n"
-                + "landlines: " + landlines + "\n"
-                + "sms: " + sms + "\n"
-                + "internet: " + internet + "\n"
-                + "sms package: " + smsPackage + "\n"
-                + "data package: " + dataPackage + "\n";
+        return appendTo(new StringBuilder()).toString();
     }
 
     /* (non-Javadoc)
@@ -0,0 +1,139 @@
+package tariffs;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * A registry of compiled accessors for the numeric fields of {@code Tariff}
+ * and its subclasses. The getters are looked up by reflection only once and
+ * turned into direct {@code ToDoubleFunction} instances, so reading a field
+ * through an accessor involves neither reflection nor boxing.
+ * <br>
+ * An accessor of a field that only exists in a subclass accepts any tariff
+ * and returns NaN for the tariffs of other classes.
+ */
+public final class TariffAccessors {
+
+    /** The classes whose getters are registered. */
+    private static final Class<?>[] CLASSES = {
+        Tariff.class, PrepaidTariff.class, ContractTariff.class
+    };
+
+    /** The accessors by field name. */
+    private static final Map<String, ToDoubleFunction<Tariff>> ACCESSORS =
+            createAccessors();
+
+    private TariffAccessors() {}
+
+    /**
+     * Gets the accessor of a numeric field.
+     *
+     * @param field the field name, e. g. 'monthly'
+     * @return the accessor or null if there is no such numeric field
+     */
+    public static ToDoubleFunction<Tariff> get(String field) {
+        return ACCESSORS.get(field);
+    }
+
+    /**
+     * Gets the names of all numeric fields.
+     *
+     * @return the field names
+     */
+    public static Set<String> getFields() {
+        return ACCESSORS.keySet();
+    }
+
+    /**
+     * Create the accessors for all numeric getters of the tariff classes.
+     *
+     * @return the accessors by field name
+     */
+    private static Map<String, ToDoubleFunction<Tariff>> createAccessors() {
+        Map<String, ToDoubleFunction<Tariff>> result = new LinkedHashMap<>();
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+        for (Class<?> cls : CLASSES) {
+            for (Method m : cls.getDeclaredMethods()) {
+                if (isNumericGetter(m)) {
+                    result.put(getterToField(m.getName()),
+                            compile(lookup, cls, m));
+                }
+            }
+        }
+
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Check if a method is a public getter of a numeric field.
+     *
+     * @param m the method
+     * @return true if {@code m} is a getter returning int or double
+     */
+    private static boolean isNumericGetter(Method m) {
+        return Modifier.isPublic(m.getModifiers())
+                && !Modifier.isStatic(m.getModifiers())
+                && (m.getParameterCount() == 0)
+                && m.getName().matches("get[A-Z]\\w*")
+                && ((m.getReturnType() == int.class)
+                        || (m.getReturnType() == double.class));
+    }
+
+    /**
+     * Convert a getter name to the field name, e. g. getSms to sms.
+     *
+     * @param getter the getter name
+     * @return the field name
+     */
+    private static String getterToField(String getter) {
+        return Character.toLowerCase(getter.charAt(3)) + getter.substring(4);
+    }
+
+    /**
+     * Compile a getter into an accessor.
+     *
+     * @param lookup the lookup used to access the getter
+     * @param cls the class declaring the getter
+     * @param m the getter
+     * @return the accessor
+     */
+    @SuppressWarnings("unchecked")
+    private static ToDoubleFunction<Tariff> compile(
+            MethodHandles.Lookup lookup, Class<?> cls, Method m) {
+        ToDoubleFunction<Tariff> f;
+
+        try {
+            MethodHandle getter = lookup.unreflect(m);
+            CallSite site = LambdaMetafactory.metafactory(lookup,
+                    "applyAsDouble",
+                    MethodType.methodType(ToDoubleFunction.class),
+                    MethodType.methodType(double.class, Object.class),
+                    getter,
+                    MethodType.methodType(double.class, cls));
+            f = (ToDoubleFunction<Tariff>) site.getTarget().invokeExact();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Could not compile accessor for "
+                    + cls.getName() + "." + m.getName(), e);
+        }
+
+        if (cls == Tariff.class) {
+            return f;
+        }
+
+        // fields of subclasses do not exist in other tariffs
+        ToDoubleFunction<Tariff> subclassAccessor = f;
+        return t -> cls.isInstance(t)
+                ? subclassAccessor.applyAsDouble(t) : Double.NaN;
+    }
+}
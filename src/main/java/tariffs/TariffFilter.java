@@ -0,0 +1,714 @@
+package tariffs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A filter expression compiled for a {@code TariffTable}. The expression is
+ * turned into one tree of conditions on the table columns, which is checked
+ * row by row in a single pass, stopping at the first condition deciding the
+ * result, so no intermediate lists of tariffs are made.
+ * <br>
+ * When compiled, the comparisons of the same field in a conjunction are
+ * merged into one range check, and the operands of each conjunction and
+ * disjunction are reordered so that the cheap conditions which most likely
+ * decide the result are checked first. The selectivity of a comparison is
+ * counted in the sorted index of the field if the index is built, and is
+ * estimated from a sample of the rows otherwise. A selective range of an
+ * indexed field is looked up in the index instead of scanning all rows.
+ * <br>
+ * The filter is bound to the version of the table columns it was compiled
+ * for, so it does not see the later changes of the tariffs; compile the
+ * expression again for a new table or version.
+ */
+public final class TariffFilter {
+
+    /** The number of rows sampled to estimate the selectivity. */
+    private static final int SAMPLE_SIZE = 64;
+
+    /** The largest selectivity of a range looked up in its index. */
+    private static final double MAX_INDEX_SELECTIVITY = 0.1;
+
+    /** The table. */
+    private final TariffTable table;
+
+    /** The compiled condition. */
+    private final Condition condition;
+
+    /**
+     * Instantiates a new filter.
+     *
+     * @param table the table
+     * @param condition the compiled condition
+     */
+    private TariffFilter(TariffTable table, Condition condition) {
+        this.table = table;
+        this.condition = condition;
+    }
+
+    /**
+     * Compile an expression for a table.
+     *
+     * @param expression the expression
+     * @param table the table
+     * @return the filter
+     */
+    public static TariffFilter compile(FilterExpression expression,
+            TariffTable table) {
+        return compile(expression, table.columns());
+    }
+
+    /**
+     * Compile an expression for a version of the columns of a table.
+     *
+     * @param expression the expression
+     * @param columns the columns
+     * @return the filter
+     */
+    public static TariffFilter compile(FilterExpression expression,
+            TariffTable.Columns columns) {
+        return new TariffFilter(columns.getTable(),
+                expression.compile(columns));
+    }
+
+    /**
+     * Check if a row matches the filter.
+     *
+     * @param row the row id
+     * @return true if the tariff of the row matches
+     */
+    public boolean test(int row) {
+        return condition.test(row);
+    }
+
+    /**
+     * Gets the estimated fraction of the rows matching the filter.
+     *
+     * @return the selectivity, from 0 to 1
+     */
+    public double getSelectivity() {
+        return condition.selectivity;
+    }
+
+    /**
+     * Select all matching rows.
+     *
+     * @return the bitmap of the matching rows
+     */
+    public RowBitmap select() {
+        return select(RowBitmap.full(table.size()));
+    }
+
+    /**
+     * Select the matching rows of a given selection.
+     *
+     * @param selection the rows to select from
+     * @return the bitmap of the matching rows
+     */
+    public RowBitmap select(RowBitmap selection) {
+        RowBitmap.Builder b = new RowBitmap.Builder();
+        Range r = indexedRange();
+
+        if (r != null) {
+            for (int row : r.index.select(r.min, r.max)) {
+                if (selection.contains(row) && condition.test(row)) {
+                    b.add(row);
+                }
+            }
+        } else {
+            selection.forEach(row -> {
+                if (condition.test(row)) {
+                    b.add(row);
+                }
+            });
+        }
+
+        return b.build();
+    }
+
+    /**
+     * Find a range which all matching rows are in and which is selective
+     * enough to be looked up in its index.
+     *
+     * @return the range or null if the rows have to be scanned
+     */
+    private Range indexedRange() {
+        List<Condition> candidates = new ArrayList<>();
+
+        if (condition instanceof And) {
+            for (Condition c : ((And) condition).operands) {
+                candidates.add(c);
+            }
+        } else {
+            candidates.add(condition);
+        }
+
+        Range best = null;
+        for (Condition c : candidates) {
+            if ((c instanceof Range) && (((Range) c).index != null)
+                    && (c.selectivity <= MAX_INDEX_SELECTIVITY)
+                    && ((best == null) || (c.selectivity < best.selectivity))) {
+                best = (Range) c;
+            }
+        }
+
+        return best;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return condition.toString();
+    }
+
+    /**
+     * Compile a comparison.
+     *
+     * @param columns the columns
+     * @param field the field name
+     * @param op the operator
+     * @param value the constant
+     * @return the condition
+     */
+    static Condition comparison(TariffTable.Columns columns, String field,
+            FilterExpression.Operator op, double value) {
+        double min = Double.NEGATIVE_INFINITY;
+        double max = Double.POSITIVE_INFINITY;
+
+        // exclusive bounds become inclusive ones of the adjacent doubles
+        switch (op) {
+            case LT:
+                max = Math.nextDown(value);
+                break;
+            case LE:
+                max = value;
+                break;
+            case GT:
+                min = Math.nextUp(value);
+                break;
+            case GE:
+                min = value;
+                break;
+            case EQ:
+                min = value;
+                max = value;
+                break;
+            default:
+                // not 'not =', which would match the tariffs without it
+                return or(Arrays.asList(
+                        range(columns, field, min, Math.nextDown(value)),
+                        range(columns, field, Math.nextUp(value), max)));
+        }
+
+        return range(columns, field, min, max);
+    }
+
+    /**
+     * Compile a type test.
+     *
+     * @param table the table
+     * @param type the tariff type
+     * @param negated true to match the tariffs of other types
+     * @return the condition
+     */
+    static Condition typeTest(TariffTable table, byte type,
+            boolean negated) {
+        Condition c = new Type(table, type);
+        return negated ? not(c) : c;
+    }
+
+    /**
+     * Compile a conjunction. Nested conjunctions are flattened, ranges of
+     * the same field are intersected and the operands are ordered by the
+     * fraction of the rows they reject per unit of cost.
+     *
+     * @param conditions the operands
+     * @return the condition
+     */
+    static Condition and(List<Condition> conditions) {
+        List<Condition> flat = new ArrayList<>();
+
+        for (Condition c : conditions) {
+            if (c instanceof And) {
+                for (Condition o : ((And) c).operands) {
+                    flat.add(o);
+                }
+            } else {
+                flat.add(c);
+            }
+        }
+
+        List<Condition> operands = new ArrayList<>();
+        for (Condition c : flat) {
+            if (c == Constant.FALSE) {
+                return c;
+            }
+
+            if (c == Constant.TRUE) {
+                continue;
+            }
+
+            Range merged = null;
+            if (c instanceof Range) {
+                for (int i = 0; i < operands.size(); i++) {
+                    Condition o = operands.get(i);
+
+                    if ((o instanceof Range)
+                            && (((Range) o).column == ((Range) c).column)) {
+                        merged = ((Range) o).intersect((Range) c);
+                        operands.set(i, merged);
+                        break;
+                    }
+                }
+            }
+
+            if (merged == null) {
+                operands.add(c);
+            } else if (merged.min > merged.max) {
+                return Constant.FALSE;
+            }
+        }
+
+        if (operands.isEmpty()) {
+            return Constant.TRUE;
+        }
+
+        if (operands.size() == 1) {
+            return operands.get(0);
+        }
+
+        operands.sort(Comparator.comparingDouble(
+                c -> (c.selectivity - 1) / c.cost));
+        return new And(operands.toArray(new Condition[operands.size()]));
+    }
+
+    /**
+     * Compile a disjunction. Nested disjunctions are flattened and the
+     * operands are ordered by the fraction of the rows they accept per unit
+     * of cost.
+     *
+     * @param conditions the operands
+     * @return the condition
+     */
+    static Condition or(List<Condition> conditions) {
+        List<Condition> operands = new ArrayList<>();
+
+        for (Condition c : conditions) {
+            if (c == Constant.TRUE) {
+                return c;
+            }
+
+            if (c instanceof Or) {
+                for (Condition o : ((Or) c).operands) {
+                    operands.add(o);
+                }
+            } else if (c != Constant.FALSE) {
+                operands.add(c);
+            }
+        }
+
+        if (operands.isEmpty()) {
+            return Constant.FALSE;
+        }
+
+        if (operands.size() == 1) {
+            return operands.get(0);
+        }
+
+        operands.sort(Comparator.comparingDouble(
+                c -> -c.selectivity / c.cost));
+        return new Or(operands.toArray(new Condition[operands.size()]));
+    }
+
+    /**
+     * Compile a negation.
+     *
+     * @param c the negated condition
+     * @return the condition
+     */
+    static Condition not(Condition c) {
+        if (c instanceof Constant) {
+            return (c == Constant.TRUE) ? Constant.FALSE : Constant.TRUE;
+        }
+
+        if (c instanceof Not) {
+            return ((Not) c).operand;
+        }
+
+        return new Not(c);
+    }
+
+    /**
+     * Compile a range check.
+     *
+     * @param columns the columns
+     * @param field the field name
+     * @param min the lower boundary, inclusive
+     * @param max the upper boundary, inclusive
+     * @return the condition
+     */
+    private static Condition range(TariffTable.Columns columns,
+            String field, double min, double max) {
+        if (min > max) {
+            return Constant.FALSE;
+        }
+
+        return new Range(columns, field, min, max);
+    }
+
+    /**
+     * Estimate the selectivity of a condition from a sample of the rows.
+     *
+     * @param size the number of rows
+     * @param c the condition
+     * @return the estimated selectivity
+     */
+    private static double sample(int size, Condition c) {
+        int step = Math.max(1, size / SAMPLE_SIZE);
+        int n = 0;
+        int matches = 0;
+
+        for (int r = 0; r < size; r += step) {
+            n++;
+            if (c.test(r)) {
+                matches++;
+            }
+        }
+
+        // never quite 0 or 1, since the sample may miss rows
+        return (matches + 0.5) / (n + 1);
+    }
+
+    /**
+     * A compiled condition on the rows of a table.
+     */
+    abstract static class Condition {
+
+        /** The estimated fraction of the rows matching the condition. */
+        double selectivity;
+
+        /** The estimated cost of checking a row, in column reads. */
+        double cost;
+
+        /**
+         * Check if a row matches the condition.
+         *
+         * @param row the row id
+         * @return true if the row matches
+         */
+        abstract boolean test(int row);
+    }
+
+    /**
+     * A condition which is always or never met.
+     */
+    private static final class Constant extends Condition {
+
+        /** The condition met by all rows. */
+        static final Constant TRUE = new Constant(true);
+
+        /** The condition met by no row. */
+        static final Constant FALSE = new Constant(false);
+
+        /** The result. */
+        private final boolean value;
+
+        /**
+         * Instantiates a new constant condition.
+         *
+         * @param value the result
+         */
+        private Constant(boolean value) {
+            this.value = value;
+            this.selectivity = value ? 1 : 0;
+            this.cost = Double.MIN_VALUE;
+        }
+
+        /* (non-Javadoc)
+         * @see tariffs.TariffFilter.Condition#test(int)
+         */
+        @Override
+        boolean test(int row) {
+            return value;
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return Boolean.toString(value);
+        }
+    }
+
+    /**
+     * A check that a column value is in min..max inclusively. NaN values,
+     * i. e. tariffs without the field, are never in range.
+     */
+    private static final class Range extends Condition {
+
+        /** The columns. */
+        private final TariffTable.Columns columns;
+
+        /** The field name. */
+        private final String field;
+
+        /** The column of the field. */
+        private final double[] column;
+
+        /** The index of the field, null if it is not built. */
+        private final TariffIndex index;
+
+        /** The lower boundary. */
+        private final double min;
+
+        /** The upper boundary. */
+        private final double max;
+
+        /**
+         * Instantiates a new range check.
+         *
+         * @param columns the columns
+         * @param field the field name
+         * @param min the lower boundary, inclusive
+         * @param max the upper boundary, inclusive
+         */
+        Range(TariffTable.Columns columns, String field, double min,
+                double max) {
+            this.columns = columns;
+            this.field = field;
+            this.column = columns.column(field);
+            this.index = columns.builtIndex(field);
+            this.min = min;
+            this.max = max;
+            this.cost = 1;
+            this.selectivity = (index == null)
+                    ? sample(column.length, this)
+                    : (double) index.count(min, max)
+                            / Math.max(1, column.length);
+        }
+
+        /**
+         * Intersect this range with another one of the same field.
+         *
+         * @param other the other range
+         * @return the range of the values in both ranges
+         */
+        Range intersect(Range other) {
+            return new Range(columns, field, Math.max(min, other.min),
+                    Math.min(max, other.max));
+        }
+
+        /* (non-Javadoc)
+         * @see tariffs.TariffFilter.Condition#test(int)
+         */
+        @Override
+        boolean test(int row) {
+            double v = column[row];
+            return (v >= min) && (v <= max);
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return field + " in [" + min + ", " + max + "]";
+        }
+    }
+
+    /**
+     * A check of the tariff type.
+     */
+    private static final class Type extends Condition {
+
+        /** The table. */
+        private final TariffTable table;
+
+        /** The tariff type. */
+        private final byte type;
+
+        /**
+         * Instantiates a new type check.
+         *
+         * @param table the table
+         * @param type the tariff type
+         */
+        Type(TariffTable table, byte type) {
+            this.table = table;
+            this.type = type;
+            this.cost = 1;
+            this.selectivity = sample(table.size(), this);
+        }
+
+        /* (non-Javadoc)
+         * @see tariffs.TariffFilter.Condition#test(int)
+         */
+        @Override
+        boolean test(int row) {
+            return table.getType(row) == type;
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return "type = " + FilterExpression.TypeTest.nameOf(type);
+        }
+    }
+
+    /**
+     * A conjunction, whose operands are checked in order until one fails.
+     */
+    private static final class And extends Condition {
+
+        /** The operands, in the order they are checked. */
+        private final Condition[] operands;
+
+        /**
+         * Instantiates a new conjunction.
+         *
+         * @param operands the operands in the order they are checked
+         */
+        And(Condition[] operands) {
+            double reach = 1;
+
+            this.operands = operands;
+            for (Condition c : operands) {
+                cost += reach * c.cost;
+                reach *= c.selectivity;
+            }
+            this.selectivity = reach;
+        }
+
+        /* (non-Javadoc)
+         * @see tariffs.TariffFilter.Condition#test(int)
+         */
+        @Override
+        boolean test(int row) {
+            for (Condition c : operands) {
+                if (!c.test(row)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return join(operands, " and ");
+        }
+    }
+
+    /**
+     * A disjunction, whose operands are checked in order until one holds.
+     */
+    private static final class Or extends Condition {
+
+        /** The operands, in the order they are checked. */
+        private final Condition[] operands;
+
+        /**
+         * Instantiates a new disjunction.
+         *
+         * @param operands the operands in the order they are checked
+         */
+        Or(Condition[] operands) {
+            double reach = 1;
+
+            this.operands = operands;
+            for (Condition c : operands) {
+                cost += reach * c.cost;
+                reach *= 1 - c.selectivity;
+            }
+            this.selectivity = 1 - reach;
+        }
+
+        /* (non-Javadoc)
+         * @see tariffs.TariffFilter.Condition#test(int)
+         */
+        @Override
+        boolean test(int row) {
+            for (Condition c : operands) {
+                if (c.test(row)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return join(operands, " or ");
+        }
+    }
+
+    /**
+     * A negation.
+     */
+    private static final class Not extends Condition {
+
+        /** The negated condition. */
+        private final Condition operand;
+
+        /**
+         * Instantiates a new negation.
+         *
+         * @param operand the negated condition
+         */
+        Not(Condition operand) {
+            this.operand = operand;
+            this.cost = operand.cost;
+            this.selectivity = 1 - operand.selectivity;
+        }
+
+        /* (non-Javadoc)
+         * @see tariffs.TariffFilter.Condition#test(int)
+         */
+        @Override
+        boolean test(int row) {
+            return !operand.test(row);
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return "not " + operand;
+        }
+    }
+
+    /**
+     * Join the descriptions of conditions.
+     *
+     * @param conditions the conditions
+     * @param separator the separator
+     * @return the parenthesized description
+     */
+    private static String join(Condition[] conditions, String separator) {
+        StringBuilder sb = new StringBuilder("(");
+
+        for (int i = 0; i < conditions.length; i++) {
+            if (i > 0) {
+                sb.append(separator);
+            }
+            sb.append(conditions[i]);
+        }
+
+        return sb.append(')').toString();
+    }
+}
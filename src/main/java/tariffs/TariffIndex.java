@@ -0,0 +1,169 @@
+package tariffs;
+
+import java.util.Arrays;
+
+/**
+ * A sorted secondary index of one column of a {@code TariffTable}. The row
+ * ids are kept in the order of the column values, so the rows having a value
+ * in min..max are found with two binary searches. Rows with NaN values (the
+ * tariffs that do not have the field) are not indexed.
+ */
+public class TariffIndex {
+
+    /** The indexed row ids, sorted by value. */
+    private final int[] rows;
+
+    /** The values of the indexed rows, sorted. */
+    private final double[] values;
+
+    /**
+     * Instantiates a new index of a column.
+     *
+     * @param column the column values, one per row
+     */
+    public TariffIndex(double[] column) {
+        int[] r = new int[column.length];
+        int n = 0;
+
+        for (int i = 0; i < column.length; i++) {
+            if (!Double.isNaN(column[i])) {
+                r[n++] = i;
+            }
+        }
+
+        rows = Arrays.copyOf(r, n);
+        sortByValue(rows, column);
+
+        values = new double[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = column[rows[i]];
+        }
+    }
+
+    /**
+     * Gets the number of indexed rows.
+     *
+     * @return the number of indexed rows
+     */
+    public int size() {
+        return rows.length;
+    }
+
+    /**
+     * Gets an indexed row by its position in the value order.
+     *
+     * @param position the position, 0 for the row of the smallest value
+     * @return the row id
+     */
+    public int getRow(int position) {
+        return rows[position];
+    }
+
+    /**
+     * Count the rows having a value in min..max inclusively.
+     *
+     * @param min the lower boundary
+     * @param max the upper boundary
+     * @return the number of matching rows
+     */
+    public int count(double min, double max) {
+        return Math.max(0, upperBound(max) - lowerBound(min));
+    }
+
+    /**
+     * Select the rows having a value in min..max inclusively.
+     *
+     * @param min the lower boundary
+     * @param max the upper boundary
+     * @return the ids of the matching rows in ascending order
+     */
+    public int[] select(double min, double max) {
+        int from = lowerBound(min);
+        int to = upperBound(max);
+
+        if (from >= to) {
+            return new int[0];
+        }
+
+        int[] result = Arrays.copyOfRange(rows, from, to);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Find the position of the first value not less than a given one.
+     *
+     * @param min the value
+     * @return the position
+     */
+    private int lowerBound(double min) {
+        int lo = 0;
+        int hi = values.length;
+
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] < min) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+
+        return lo;
+    }
+
+    /**
+     * Find the position of the first value greater than a given one.
+     *
+     * @param max the value
+     * @return the position
+     */
+    private int upperBound(double max) {
+        int lo = 0;
+        int hi = values.length;
+
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] <= max) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+
+        return lo;
+    }
+
+    /**
+     * Sort row ids by the column values (merge sort, stable).
+     *
+     * @param rows the row ids
+     * @param column the column values
+     */
+    private static void sortByValue(int[] rows, double[] column) {
+        int[] buf = new int[rows.length];
+
+        for (int width = 1; width < rows.length; width *= 2) {
+            for (int lo = 0; lo < rows.length - width; lo += 2 * width) {
+                int mid = lo + width;
+                int hi = Math.min(lo + 2 * width, rows.length);
+                int i = lo;
+                int j = mid;
+                int k = lo;
+
+                while ((i < mid) && (j < hi)) {
+                    buf[k++] = (column[rows[j]] < column[rows[i]])
+                            ? rows[j++] : rows[i++];
+                }
+                while (i < mid) {
+                    buf[k++] = rows[i++];
+                }
+                while (j < hi) {
+                    buf[k++] = rows[j++];
+                }
+
+                System.arraycopy(buf, lo, rows, lo, hi - lo);
+            }
+        }
+    }
+}
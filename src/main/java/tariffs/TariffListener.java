@@ -0,0 +1,16 @@
+package tariffs;
+
+/**
+ * A listener which is notified when a field of a tariff is changed through
+ * one of its setters.
+ */
+public interface TariffListener {
+
+    /**
+     * Called after a field of a tariff has been changed.
+     *
+     * @param tariff the changed tariff
+     * @param field the name of the changed field
+     */
+    void tariffChanged(Tariff tariff, String field);
+}
@@ -0,0 +1,290 @@
+package tariffs;
+
+/**
+ * A class that finds the cheapest tariffs of a {@code TariffTable} for a
+ * monthly usage profile.
+ * <br>
+ * The monthly cost of a tariff is its 'monthly' fee plus:
+ * <ul>
+ * <li>the calls charged by the 'innerCalls', 'outerCalls', 'landlines' and
+ * 'abroadCalls' rates; the 'dailyMinutes' of a contract tariff make up to
+ * 30 times as many domestic minutes free, spread evenly over the kinds of
+ * domestic calls;</li>
+ * <li>the SMS and MB above the 'smsPackage' and 'dataPackage' charged by the
+ * 'sms' and 'internet' rates;</li>
+ * <li>the 'activation' fee of a prepaid tariff spread over
+ * {@link #ACTIVATION_MONTHS} months.</li>
+ * </ul>
+ * Tariffs without an abroad calls rate are not recommended for profiles
+ * with abroad calls.
+ * <br>
+ * The costs of all tariffs are computed in one loop over the columns of the
+ * table and the cheapest ones are kept in a bounded heap, so no tariff
+ * objects are touched. The columns are those of the moment the recommender
+ * is made; make a new one to take the later changes of the tariffs into
+ * account.
+ */
+public class TariffRecommender {
+
+    /** The number of months the activation fee is spread over. */
+    public static final double ACTIVATION_MONTHS = 12;
+
+    /** The number of days in a month used for daily free minutes. */
+    public static final double DAYS_PER_MONTH = 30;
+
+    /** The table of tariffs. */
+    private final TariffTable table;
+
+    /** The version of the columns the costs are computed from. */
+    private final TariffTable.Columns columns;
+
+    /* the columns used in the cost function */
+    private final double[] monthly;
+    private final double[] inner;
+    private final double[] outer;
+    private final double[] landlines;
+    private final double[] abroad;
+    private final double[] sms;
+    private final double[] internet;
+    private final double[] smsPackage;
+    private final double[] dataPackage;
+    private final double[] activation;
+    private final double[] dailyMinutes;
+
+    /**
+     * Instantiates a new recommender of the tariffs of a table.
+     *
+     * @param table the tariffs
+     */
+    public TariffRecommender(TariffTable table) {
+        this.table = table;
+        this.columns = table.columns();
+        monthly = columns.column("monthly");
+        inner = columns.column("innerCalls");
+        outer = columns.column("outerCalls");
+        landlines = columns.column("landlines");
+        abroad = columns.column("abroadCalls");
+        sms = columns.column("sms");
+        internet = columns.column("internet");
+        smsPackage = columns.column("smsPackage");
+        dataPackage = columns.column("dataPackage");
+        activation = columns.column("activation");
+        dailyMinutes = columns.column("dailyMinutes");
+    }
+
+    /**
+     * Gets the table of tariffs.
+     *
+     * @return the table
+     */
+    public TariffTable getTable() {
+        return table;
+    }
+
+    /**
+     * Compute the monthly cost of a tariff.
+     *
+     * @param profile the usage profile
+     * @param row the row of the tariff in the table
+     * @return the cost or NaN if the tariff does not fit the profile
+     */
+    public double cost(UsageProfile profile, int row) {
+        return new CostModel(profile).cost(row);
+    }
+
+    /**
+     * Compute the monthly costs of all tariffs.
+     *
+     * @param profile the usage profile
+     * @return the costs by row, NaN for the tariffs that do not fit the
+     * profile
+     */
+    public double[] costs(UsageProfile profile) {
+        double[] result = new double[table.size()];
+
+        costs(profile, 0, result.length, result, 0);
+        return result;
+    }
+
+    /**
+     * Find the cheapest tariffs.
+     *
+     * @param profile the usage profile
+     * @param k the number of tariffs to find
+     * @return the rows of at most {@code k} cheapest tariffs, the cheapest
+     * first; tariffs of equal costs are in the row order
+     */
+    public int[] recommend(UsageProfile profile, int k) {
+        return TopK.select(costs(profile), k);
+    }
+
+    /**
+     * Find the cheapest tariff which costs less than a given bound. The
+     * tariffs are scanned in the order of their monthly fees and the scan
+     * stops at the first fee which is not below the cheapest cost found so
+     * far, since the fee is a part of the cost. With a good bound, e. g. the
+     * cost of the current tariff of a client, usually only a small part of
+     * the tariffs is evaluated. Rates and fees are assumed non-negative.
+     *
+     * @param profile the usage profile
+     * @param bound the cost to beat, may be infinite
+     * @return the row of the cheapest tariff costing less than
+     * {@code bound} or -1 if there is none; of the tariffs of equal costs
+     * the one with the lowest monthly fee is returned
+     */
+    public int cheapest(UsageProfile profile, double bound) {
+        return new CostModel(profile).cheapest(bound);
+    }
+
+    /**
+     * Create a cost model to be reused for many profiles, e. g. by a task
+     * recommending tariffs to many clients, so that nothing is allocated
+     * per profile. The model must be set to a profile before it is used.
+     *
+     * @return the cost model
+     * @see CostModel#setProfile(UsageProfile)
+     */
+    public CostModel newCostModel() {
+        return new CostModel();
+    }
+
+    /**
+     * Compute the monthly costs of a range of tariffs.
+     *
+     * @param p the usage profile
+     * @param from the first row
+     * @param to the row after the last one
+     * @param result the array receiving the costs
+     * @param offset the position in {@code result} of the cost of row
+     * {@code from}
+     */
+    void costs(UsageProfile p, int from, int to, double[] result,
+            int offset) {
+        CostModel model = new CostModel(p);
+
+        for (int r = from; r < to; r++) {
+            result[offset + r - from] = model.cost(r);
+        }
+    }
+
+    /**
+     * The cost function of a usage profile over the columns of the table of
+     * a recommender. A model is set to one profile at a time and is not
+     * thread-safe.
+     */
+    public final class CostModel {
+
+        /* the usage of the profile */
+        private double innerMinutes;
+        private double outerMinutes;
+        private double landlineMinutes;
+        private double abroadMinutes;
+        private double domesticMinutes;
+        private double smsCount;
+        private double data;
+
+        /** The cost of the tariff found by the last {@link #cheapest}. */
+        private double cheapestCost = Double.NaN;
+
+        /**
+         * Instantiates a new cost model of an empty profile.
+         */
+        private CostModel() {
+        }
+
+        /**
+         * Instantiates a new cost model.
+         *
+         * @param p the usage profile
+         */
+        private CostModel(UsageProfile p) {
+            setProfile(p);
+        }
+
+        /**
+         * Set the model to a usage profile.
+         *
+         * @param p the usage profile
+         * @return this model
+         */
+        public CostModel setProfile(UsageProfile p) {
+            innerMinutes = p.getInnerMinutes();
+            outerMinutes = p.getOuterMinutes();
+            landlineMinutes = p.getLandlineMinutes();
+            abroadMinutes = p.getAbroadMinutes();
+            domesticMinutes = innerMinutes + outerMinutes + landlineMinutes;
+            smsCount = p.getSms();
+            data = p.getData();
+            cheapestCost = Double.NaN;
+            return this;
+        }
+
+        /**
+         * Find the cheapest tariff which costs less than a given bound, as
+         * by {@link TariffRecommender#cheapest(UsageProfile, double)}. Its
+         * cost is kept, see {@link #getCheapestCost()}.
+         *
+         * @param bound the cost to beat, may be infinite
+         * @return the row of the cheapest tariff costing less than
+         * {@code bound} or -1 if there is none
+         */
+        public int cheapest(double bound) {
+            TariffIndex byMonthly = columns.index("monthly");
+            double best = bound;
+            int bestRow = -1;
+
+            for (int i = 0; i < byMonthly.size(); i++) {
+                int r = byMonthly.getRow(i);
+
+                if (!(monthly[r] < best)) {
+                    break;
+                }
+
+                double cost = cost(r);
+                if (cost < best) {
+                    best = cost;
+                    bestRow = r;
+                }
+            }
+
+            cheapestCost = (bestRow < 0) ? Double.NaN : best;
+            return bestRow;
+        }
+
+        /**
+         * Gets the cost of the tariff found by the last {@link #cheapest}.
+         *
+         * @return the cost or NaN if no tariff was found
+         */
+        public double getCheapestCost() {
+            return cheapestCost;
+        }
+
+        /**
+         * Compute the monthly cost of a tariff.
+         *
+         * @param r the row of the tariff
+         * @return the cost or NaN if the tariff does not fit the profile
+         */
+        public double cost(int r) {
+            double free = dailyMinutes[r] * DAYS_PER_MONTH;
+            double paid = ((domesticMinutes > 0) && (free > 0))
+                    ? Math.max(0, 1 - free / domesticMinutes) : 1;
+            double fee = activation[r] / ACTIVATION_MONTHS;
+            double cost = monthly[r]
+                    + paid * (innerMinutes * inner[r]
+                            + outerMinutes * outer[r]
+                            + landlineMinutes * landlines[r])
+                    + Math.max(0, smsCount - smsPackage[r]) * sms[r]
+                    + Math.max(0, data - dataPackage[r]) * internet[r]
+                    + (Double.isNaN(fee) ? 0 : fee);
+
+            // NaN rates exclude tariffs without abroad calls
+            if (abroadMinutes > 0) {
+                cost += abroadMinutes * abroad[r];
+            }
+
+            return cost;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package tariffs;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A class that orders the rows of a {@code TariffTable} by one or more
+ * fields, e. g. by 'monthly' ascending and then by 'dataPackage'
+ * descending.
+ * <br>
+ * The values of the sort keys are copied once from the current version of
+ * the table columns into primitive arrays, and a permutation of positions
+ * is sorted, so neither tariff objects nor boxed values are touched while
+ * comparing and the table is not changed. The rows without a value of a
+ * key (NaN) come after all others, whatever the direction; the rows equal
+ * by all keys keep their order in the selection.
+ * <br>
+ * {@link #top(int[], int)} only keeps the k first rows in a bounded heap
+ * ({@link TopK}), so it is cheaper than sorting when k is small.
+ * <br>
+ * The sorter keeps its state while ordering, so an instance should not be
+ * shared between threads.
+ */
+public class TariffSorter {
+
+    /** The table of tariffs. */
+    private final TariffTable table;
+
+    /** The sort keys. */
+    private final List<SortKey> keys;
+
+    /** The key values by key and position, negated for descending keys. */
+    private double[][] values;
+
+    /** The rows being ordered, by position. */
+    private int[] rows;
+
+    /**
+     * Instantiates a new sorter of the rows of a table.
+     *
+     * @param table the tariffs
+     * @param keys the sort keys, the most significant first
+     * @throws IllegalArgumentException if there are no keys or there is no
+     * column for a key field
+     */
+    public TariffSorter(TariffTable table, List<SortKey> keys) {
+        if (keys.isEmpty()) {
+            throw new IllegalArgumentException("No sort keys");
+        }
+
+        this.table = table;
+        this.keys = Collections.unmodifiableList(new ArrayList<>(keys));
+
+        for (SortKey key : keys) {
+            if (!table.hasColumn(key.getField())) {
+                throw new IllegalArgumentException("No such column: "
+                        + key.getField());
+            }
+        }
+    }
+
+    /**
+     * Parse a list of sort keys, e. g. 'monthly asc, dataPackage desc'.
+     * The direction is ascending if it is omitted.
+     *
+     * @param spec the comma separated keys
+     * @return the sort keys
+     * @throws ParseException if a key is not a field of
+     * {@link TariffTable#getFields()} followed by an optional 'asc' or
+     * 'desc'; the error offset is the position of the key
+     */
+    public static List<SortKey> parseKeys(String spec) throws ParseException {
+        List<SortKey> result = new ArrayList<>();
+        int pos = 0;
+
+        for (String part : spec.split(",", -1)) {
+            String[] words = part.trim().split("\\s+");
+            boolean descending = false;
+
+            if ((words.length > 2) || words[0].isEmpty()
+                    || !TariffTable.getFields().contains(words[0])) {
+                throw new ParseException("Invalid sort key '" + part.trim()
+                        + "' at position " + pos, pos);
+            }
+
+            if (words.length == 2) {
+                if (words[1].equalsIgnoreCase("desc")) {
+                    descending = true;
+                } else if (!words[1].equalsIgnoreCase("asc")) {
+                    throw new ParseException("Expected 'asc' or 'desc' "
+                            + "at position " + pos, pos);
+                }
+            }
+
+            result.add(new SortKey(words[0], descending));
+            pos += part.length() + 1;
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the table of tariffs.
+     *
+     * @return the table
+     */
+    public TariffTable getTable() {
+        return table;
+    }
+
+    /**
+     * Gets the sort keys.
+     *
+     * @return the unmodifiable list of the keys
+     */
+    public List<SortKey> getKeys() {
+        return keys;
+    }
+
+    /**
+     * Sort rows of the table.
+     *
+     * @param selection the ids of the rows, which are not changed
+     * @return the ids of the rows in the sort order
+     */
+    public int[] sort(int[] selection) {
+        int[] perm = prepare(selection);
+        int[] result = new int[perm.length];
+
+        mergeSort(perm, perm.clone(), 0, perm.length);
+        for (int i = 0; i < perm.length; i++) {
+            result[i] = rows[perm[i]];
+        }
+
+        release();
+        return result;
+    }
+
+    /**
+     * Find the first k rows of the table in the sort order, without
+     * sorting all of them.
+     *
+     * @param selection the ids of the rows, which are not changed
+     * @param k the number of rows to find
+     * @return the ids of at most {@code k} rows in the sort order
+     */
+    public int[] top(int[] selection, int k) {
+        int[] perm = prepare(selection);
+        TopK top = new TopK(Math.max(0, Math.min(k, perm.length)),
+                this::compare);
+
+        for (int p : perm) {
+            top.offer(p);
+        }
+
+        int[] heap = top.toSortedArray();
+        int[] result = new int[heap.length];
+
+        for (int i = 0; i < heap.length; i++) {
+            result[i] = rows[heap[i]];
+        }
+
+        release();
+        return result;
+    }
+
+    /**
+     * Copy the key values of the rows to be ordered.
+     *
+     * @param selection the ids of the rows
+     * @return the identity permutation of their positions
+     */
+    private int[] prepare(int[] selection) {
+        int[] perm = new int[selection.length];
+        TariffTable.Columns columns = table.columns();
+
+        rows = selection;
+        values = new double[keys.size()][selection.length];
+
+        for (int k = 0; k < values.length; k++) {
+            double[] col = columns.column(keys.get(k).getField());
+            double[] v = values[k];
+            double sign = keys.get(k).isDescending() ? -1 : 1;
+
+            for (int i = 0; i < selection.length; i++) {
+                v[i] = sign * col[selection[i]];
+            }
+        }
+
+        for (int i = 0; i < perm.length; i++) {
+            perm[i] = i;
+        }
+
+        return perm;
+    }
+
+    /**
+     * Drop the key values of the last ordered rows.
+     */
+    private void release() {
+        rows = null;
+        values = null;
+    }
+
+    /**
+     * Compare two positions by the key values and then by the positions.
+     *
+     * @param p1 the first position
+     * @param p2 the second position
+     * @return a negative number, zero or a positive number if the first
+     * position comes before, is the same as or comes after the second
+     */
+    private int compare(int p1, int p2) {
+        for (double[] v : values) {
+            double a = v[p1];
+            double b = v[p2];
+
+            if (a < b) {
+                return -1;
+            } else if (a > b) {
+                return 1;
+            } else if (a != b) {
+                // NaN comes last
+                if (Double.isNaN(a) != Double.isNaN(b)) {
+                    return Double.isNaN(a) ? 1 : -1;
+                }
+            }
+        }
+
+        return Integer.compare(p1, p2);
+    }
+
+    /**
+     * Sort a range of positions. The range of {@code src} must be a copy of
+     * the range of {@code dst}.
+     *
+     * @param src the positions to sort, used as a buffer
+     * @param dst the positions, sorted on return
+     * @param from the start of the range, inclusive
+     * @param to the end of the range, exclusive
+     */
+    private void mergeSort(int[] dst, int[] src, int from, int to) {
+        if (to - from < 8) {
+            for (int i = from + 1; i < to; i++) {
+                int p = dst[i];
+                int j = i;
+
+                while ((j > from) && (compare(p, dst[j - 1]) < 0)) {
+                    dst[j] = dst[j - 1];
+                    j--;
+                }
+
+                dst[j] = p;
+            }
+
+            return;
+        }
+
+        int mid = (from + to) >>> 1;
+
+        // sort the halves of src using dst as the buffer, then merge them
+        mergeSort(src, dst, from, mid);
+        mergeSort(src, dst, mid, to);
+
+        if (compare(src[mid - 1], src[mid]) <= 0) {
+            System.arraycopy(src, from, dst, from, to - from);
+            return;
+        }
+
+        for (int i = from, l = from, r = mid; i < to; i++) {
+            if ((r >= to) || ((l < mid) && (compare(src[l], src[r]) <= 0))) {
+                dst[i] = src[l++];
+            } else {
+                dst[i] = src[r++];
+            }
+        }
+    }
+
+    /**
+     * A field to sort by and the direction.
+     */
+    public static final class SortKey {
+
+        /** The field name. */
+        private final String field;
+
+        /** Whether the larger values come first. */
+        private final boolean descending;
+
+        /**
+         * Instantiates a new sort key.
+         *
+         * @param field the field name, one of {@link TariffTable#getFields()}
+         * @param descending true to put the larger values first
+         */
+        public SortKey(String field, boolean descending) {
+            this.field = field;
+            this.descending = descending;
+        }
+
+        /**
+         * Gets the field name.
+         *
+         * @return the field name
+         */
+        public String getField() {
+            return field;
+        }
+
+        /**
+         * Checks if the larger values come first.
+         *
+         * @return true if the direction is descending
+         */
+        public boolean isDescending() {
+            return descending;
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return field + (descending ? " desc" : " asc");
+        }
+    }
+}
@@ -0,0 +1,701 @@
+package tariffs;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * A columnar (struct-of-arrays) view of a list of tariffs. Each numeric field
+ * is stored in its own primitive array, with one row per tariff, and there is
+ * a type column telling prepaid and contract tariffs apart. Range predicates
+ * are evaluated as tight loops over a single column and produce selections
+ * of row ids; {@code Tariff} objects are only touched for the rows which are
+ * actually returned.
+ * <br>
+ * Integer fields are stored as doubles, which represent them exactly. Fields
+ * that a tariff does not have (e. g. 'activation' of a contract tariff) are
+ * stored as NaN, so no range predicate matches them.
+ * <br>
+ * Sorted indexes of the columns can be built to answer range queries with
+ * binary searches instead of scans.
+ * <br>
+ * The table listens to the changes of its tariffs and keeps its columns up
+ * to date; the index of a changed column is rebuilt when it is used next
+ * time. The tariffs refer to the table weakly, so a table which is no
+ * longer used is collected and stops listening by itself; {@link #detach()}
+ * stops it at once.
+ * <br>
+ * The columns are copied on write: the changes of the tariffs are
+ * collected, and the next reader copies each changed column once for all
+ * of them and publishes a new {@link Columns} version through a volatile
+ * field. The published values are never changed. Readers take no locks
+ * unless there are changes to publish; a reader which needs several
+ * columns, or several passes over one column, gets them from one
+ * {@link #columns()} version and so never sees a change half made. The
+ * tariff objects and types never change.
+ */
+public class TariffTable {
+
+    /** The type of a tariff which is neither prepaid nor contract. */
+    public static final byte GENERIC = 0;
+
+    /** The type of a prepaid tariff. */
+    public static final byte PREPAID = 1;
+
+    /** The type of a contract tariff. */
+    public static final byte CONTRACT = 2;
+
+    /** The names of the numeric fields stored in columns. */
+    private static final String[] FIELDS = {
+        "id", "monthly", "innerCalls", "outerCalls", "landlines", "sms",
+        "internet", "smsPackage", "dataPackage", "activation", "abroadCalls",
+        "dailyMinutes"
+    };
+
+    /** The accessors of the fields, in the order of {@link #FIELDS}. */
+    private static final List<ToDoubleFunction<Tariff>> ACCESSORS =
+            accessors();
+
+    /** The listeners of the tables which have been collected. */
+    private static final ReferenceQueue<TariffTable> COLLECTED =
+            new ReferenceQueue<>();
+
+    /** The tariffs, one per row. */
+    private final Tariff[] tariffs;
+
+    /** The type column. */
+    private final byte[] types;
+
+    /** The row of each tariff. */
+    private final Map<Tariff, Integer> rows;
+
+    /** The current version of the numeric columns. */
+    private volatile Columns columns;
+
+    /** The changed rows of each column which are not published yet. */
+    private final BitSet[] changes = new BitSet[FIELDS.length];
+
+    /** True if there are changes which are not published yet. */
+    private volatile boolean changed;
+
+    /** The listener of the tariffs. */
+    private final Tracker tracker;
+
+    /**
+     * Instantiates a new tariff table.
+     *
+     * @param list the tariffs, one per row in the list order
+     */
+    public TariffTable(List<? extends Tariff> list) {
+        int size = list.size();
+
+        tariffs = list.toArray(new Tariff[size]);
+        types = new byte[size];
+        rows = new IdentityHashMap<>(size);
+
+        double[][] values = new double[FIELDS.length][size];
+
+        for (int r = 0; r < size; r++) {
+            Tariff t = tariffs[r];
+
+            types[r] = typeOf(t);
+            for (int c = 0; c < FIELDS.length; c++) {
+                values[c][r] = valueOf(t, c);
+            }
+
+            rows.put(t, r);
+        }
+
+        // published before the listeners can see the table
+        columns = new Columns(this, values, new TariffIndex[FIELDS.length],
+                0);
+
+        expunge();
+        tracker = new Tracker(this);
+        for (Tariff t : tariffs) {
+            t.addListener(tracker);
+        }
+    }
+
+    /**
+     * Remove the listeners of the collected tables from their tariffs.
+     */
+    private static void expunge() {
+        Reference<? extends TariffTable> ref;
+
+        while ((ref = COLLECTED.poll()) != null) {
+            ((Tracker) ref).detach();
+        }
+    }
+
+    /**
+     * Get the accessors of the fields stored in columns.
+     *
+     * @return the accessors in the order of {@link #FIELDS}
+     */
+    private static List<ToDoubleFunction<Tariff>> accessors() {
+        List<ToDoubleFunction<Tariff>> result = new ArrayList<>();
+
+        for (String field : FIELDS) {
+            result.add(TariffAccessors.get(field));
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the names of the fields stored in columns.
+     *
+     * @return the field names
+     */
+    public static List<String> getFields() {
+        return Collections.unmodifiableList(Arrays.asList(FIELDS));
+    }
+
+    /**
+     * Gets the number of rows.
+     *
+     * @return the number of rows
+     */
+    public int size() {
+        return tariffs.length;
+    }
+
+    /**
+     * Gets the version of the column values, which changes whenever a
+     * tariff of the table is changed. Results computed from the columns
+     * are outdated once the version changes.
+     *
+     * @return the version
+     */
+    public long getVersion() {
+        return columns().version;
+    }
+
+    /**
+     * Gets the current version of the columns. It does not change when the
+     * tariffs change later.
+     *
+     * @return the columns
+     */
+    public Columns columns() {
+        return changed ? publish() : columns;
+    }
+
+    /**
+     * Publish the changes of the tariffs in a new version of the columns.
+     *
+     * @return the new version
+     */
+    private synchronized Columns publish() {
+        if (changed) {
+            columns = columns.with(changes, tariffs);
+            changed = false;
+        }
+
+        return columns;
+    }
+
+    /**
+     * Gets the index of the column of a field.
+     *
+     * @param field the field name
+     * @return the column index or -1 if the field is not stored in a column
+     */
+    public int columnIndex(String field) {
+        return indexOf(field);
+    }
+
+    /**
+     * Gets the index of the column of a field.
+     *
+     * @param field the field name
+     * @return the column index or -1 if the field is not stored in a column
+     */
+    private static int indexOf(String field) {
+        for (int c = 0; c < FIELDS.length; c++) {
+            if (FIELDS[c].equals(field)) {
+                return c;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Checks if a field is stored in a column.
+     *
+     * @param field the field name
+     * @return true if there is a column for {@code field}
+     */
+    public boolean hasColumn(String field) {
+        return columnIndex(field) >= 0;
+    }
+
+    /**
+     * Gets a value of a column.
+     *
+     * @param column the column index
+     * @param row the row id
+     * @return the value, NaN if the tariff has no such field
+     */
+    public double getValue(int column, int row) {
+        return columns().getValue(column, row);
+    }
+
+    /**
+     * Gets the type of a tariff.
+     *
+     * @param row the row id
+     * @return one of {@link #GENERIC}, {@link #PREPAID}, {@link #CONTRACT}
+     */
+    public byte getType(int row) {
+        return types[row];
+    }
+
+    /**
+     * Gets the tariff of a row.
+     *
+     * @param row the row id
+     * @return the tariff
+     */
+    public Tariff get(int row) {
+        return tariffs[row];
+    }
+
+    /**
+     * Gets the ids of all rows.
+     *
+     * @return the ids of all rows in ascending order
+     */
+    public int[] allRows() {
+        int[] result = new int[tariffs.length];
+
+        for (int r = 0; r < result.length; r++) {
+            result[r] = r;
+        }
+
+        return result;
+    }
+
+    /**
+     * Select all rows having a field value in min..max inclusively.
+     *
+     * @param field the field name
+     * @param min the lower boundary
+     * @param max the upper boundary
+     * @return the ids of the matching rows in ascending order
+     * @throws IllegalArgumentException if there is no column for the field
+     */
+    public int[] select(String field, double min, double max) {
+        double[] col = columns().column(field);
+        int[] result = new int[col.length];
+        int n = 0;
+
+        for (int r = 0; r < col.length; r++) {
+            if ((col[r] >= min) && (col[r] <= max)) {
+                result[n++] = r;
+            }
+        }
+
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Select rows of a given selection having a field value in min..max
+     * inclusively.
+     *
+     * @param field the field name
+     * @param min the lower boundary
+     * @param max the upper boundary
+     * @param selection the ids of the rows to select from
+     * @return the ids of the matching rows in the order of {@code selection}
+     * @throws IllegalArgumentException if there is no column for the field
+     */
+    public int[] select(String field, double min, double max,
+            int[] selection) {
+        double[] col = columns().column(field);
+        int[] result = new int[selection.length];
+        int n = 0;
+        double v;
+
+        for (int r : selection) {
+            v = col[r];
+            if ((v >= min) && (v <= max)) {
+                result[n++] = r;
+            }
+        }
+
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Build the sorted indexes of all columns.
+     */
+    public void buildIndexes() {
+        Columns cols = columns();
+
+        for (String field : FIELDS) {
+            cols.index(field);
+        }
+    }
+
+    /**
+     * Gets the sorted index of a column, building it if it has not been
+     * built yet or is outdated.
+     *
+     * @param field the field name
+     * @return the index
+     * @throws IllegalArgumentException if there is no column for the field
+     */
+    public TariffIndex getIndex(String field) {
+        return columns().index(field);
+    }
+
+    /**
+     * Select rows of a given selection having a given tariff type.
+     *
+     * @param type the tariff type
+     * @param selection the ids of the rows to select from
+     * @return the ids of the matching rows in the order of {@code selection}
+     */
+    public int[] select(byte type, int[] selection) {
+        int[] result = new int[selection.length];
+        int n = 0;
+
+        for (int r : selection) {
+            if (types[r] == type) {
+                result[n++] = r;
+            }
+        }
+
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Select rows of a given selection whose tariffs match a predicate. This
+     * is a fallback for conditions that cannot be checked on columns.
+     *
+     * @param predicate the predicate
+     * @param selection the ids of the rows to select from
+     * @return the ids of the matching rows in the order of {@code selection}
+     */
+    public int[] select(Predicate<? super Tariff> predicate, int[] selection) {
+        int[] result = new int[selection.length];
+        int n = 0;
+
+        for (int r : selection) {
+            if (predicate.test(tariffs[r])) {
+                result[n++] = r;
+            }
+        }
+
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Get the tariffs of selected rows.
+     *
+     * @param selection the row ids
+     * @return a new list of the tariffs in the order of {@code selection}
+     */
+    public List<Tariff> toTariffs(int[] selection) {
+        List<Tariff> result = new ArrayList<>(selection.length);
+
+        for (int r : selection) {
+            result.add(tariffs[r]);
+        }
+
+        return result;
+    }
+
+    /**
+     * Get the tariffs of the rows set in a bitmap.
+     *
+     * @param selection the bitmap of rows
+     * @return a new list of the tariffs in the row order
+     */
+    public List<Tariff> toTariffs(RowBitmap selection) {
+        List<Tariff> result = new ArrayList<>(selection.cardinality());
+
+        selection.forEach(r -> result.add(tariffs[r]));
+        return result;
+    }
+
+    /**
+     * Stop listening to the changes of the tariffs. The columns are not kept
+     * up to date afterwards.
+     */
+    public void detach() {
+        tracker.detach();
+    }
+
+    /**
+     * Record a change of a tariff, to be published by the next reader.
+     *
+     * @param tariff the changed tariff
+     * @param field the name of the changed field
+     */
+    private void tariffChanged(Tariff tariff, String field) {
+        Integer row = rows.get(tariff);
+        int c = columnIndex(field);
+
+        if ((row != null) && (c >= 0)) {
+            synchronized (this) {
+                if (changes[c] == null) {
+                    changes[c] = new BitSet(tariffs.length);
+                }
+
+                changes[c].set(row);
+                changed = true;
+            }
+        }
+    }
+
+    /**
+     * Get the index of the column of a field.
+     *
+     * @param field the field name
+     * @return the column index
+     * @throws IllegalArgumentException if there is no column for the field
+     */
+    private static int checkedIndexOf(String field) {
+        int c = indexOf(field);
+
+        if (c < 0) {
+            throw new IllegalArgumentException("No such column: " + field);
+        }
+
+        return c;
+    }
+
+    /**
+     * Get the type of a tariff.
+     *
+     * @param t the tariff
+     * @return the tariff type
+     */
+    private static byte typeOf(Tariff t) {
+        if (t instanceof PrepaidTariff) {
+            return PREPAID;
+        }
+
+        if (t instanceof ContractTariff) {
+            return CONTRACT;
+        }
+
+        return GENERIC;
+    }
+
+    /**
+     * Get a field value of a tariff.
+     *
+     * @param t the tariff
+     * @param column the column index of the field
+     * @return the value or NaN if the tariff has no such field
+     */
+    private static double valueOf(Tariff t, int column) {
+        return ACCESSORS.get(column).applyAsDouble(t);
+    }
+
+    /**
+     * One version of the numeric columns of a table, with the sorted indexes
+     * built from it. The values of a version never change; the changes of
+     * the tariffs make a new version sharing the unchanged columns and their
+     * indexes.
+     */
+    public static final class Columns {
+
+        /** The table. */
+        private final TariffTable table;
+
+        /** The numeric columns, in the order of {@link #getFields()}. */
+        private final double[][] values;
+
+        /** The sorted indexes of the columns, null if not built yet. */
+        private final TariffIndex[] indexes;
+
+        /** The number of published changes before this version. */
+        private final long version;
+
+        /**
+         * Instantiates a new version of the columns.
+         *
+         * @param table the table
+         * @param values the columns
+         * @param indexes the indexes built from the columns
+         * @param version the number of published changes before this
+         * version
+         */
+        private Columns(TariffTable table, double[][] values,
+                TariffIndex[] indexes, long version) {
+            this.table = table;
+            this.values = values;
+            this.indexes = indexes;
+            this.version = version;
+        }
+
+        /**
+         * Gets the table.
+         *
+         * @return the table
+         */
+        public TariffTable getTable() {
+            return table;
+        }
+
+        /**
+         * Gets the version, the number of published changes of the values
+         * before it.
+         *
+         * @return the version
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * Gets a value of a column.
+         *
+         * @param column the column index
+         * @param row the row id
+         * @return the value, NaN if the tariff has no such field
+         */
+        public double getValue(int column, int row) {
+            return values[column][row];
+        }
+
+        /**
+         * Get the column of a field. The array must not be changed.
+         *
+         * @param field the field name
+         * @return the column
+         * @throws IllegalArgumentException if there is no column for the
+         * field
+         */
+        double[] column(String field) {
+            return values[checkedIndexOf(field)];
+        }
+
+        /**
+         * Gets the sorted index of a column, building it if it has not been
+         * built yet.
+         *
+         * @param field the field name
+         * @return the index
+         * @throws IllegalArgumentException if there is no column for the
+         * field
+         */
+        synchronized TariffIndex index(String field) {
+            int c = checkedIndexOf(field);
+
+            if (indexes[c] == null) {
+                indexes[c] = new TariffIndex(values[c]);
+            }
+
+            return indexes[c];
+        }
+
+        /**
+         * Gets the sorted index of a column if it is built, without
+         * building it.
+         *
+         * @param field the field name
+         * @return the index or null if it is not built
+         * @throws IllegalArgumentException if there is no column for the
+         * field
+         */
+        synchronized TariffIndex builtIndex(String field) {
+            return indexes[checkedIndexOf(field)];
+        }
+
+        /**
+         * Make the next version with the changed values read again from
+         * the tariffs. Each changed column is copied once, and the changes
+         * are cleared.
+         *
+         * @param changes the changed rows of each column, null if none
+         * @param tariffs the tariffs of the rows
+         * @return the new version
+         */
+        synchronized Columns with(BitSet[] changes, Tariff[] tariffs) {
+            double[][] v = values.clone();
+            TariffIndex[] ix = indexes.clone();
+
+            for (int c = 0; c < changes.length; c++) {
+                BitSet rows = changes[c];
+
+                if ((rows == null) || rows.isEmpty()) {
+                    continue;
+                }
+
+                v[c] = values[c].clone();
+                for (int r = rows.nextSetBit(0); r >= 0;
+                        r = rows.nextSetBit(r + 1)) {
+                    v[c][r] = valueOf(tariffs[r], c);
+                }
+
+                ix[c] = null;
+                rows.clear();
+            }
+
+            return new Columns(table, v, ix, version + 1);
+        }
+    }
+
+    /**
+     * The listener of the tariffs of a table. It refers to the table
+     * weakly, so that the listeners of the tariffs do not keep the table
+     * alive; once the table is collected, the listener is removed from the
+     * tariffs by the next table made or by the next change of a tariff.
+     */
+    private static final class Tracker extends WeakReference<TariffTable>
+            implements TariffListener {
+
+        /** The tariffs listened to. */
+        private final Tariff[] tariffs;
+
+        /**
+         * Instantiates a new listener of the tariffs of a table.
+         *
+         * @param table the table
+         */
+        Tracker(TariffTable table) {
+            super(table, COLLECTED);
+            tariffs = table.tariffs;
+        }
+
+        /* (non-Javadoc)
+         * @see tariffs.TariffListener#tariffChanged(tariffs.Tariff,
+         * java.lang.String)
+         */
+        @Override
+        public void tariffChanged(Tariff tariff, String field) {
+            TariffTable table = get();
+
+            if (table == null) {
+                tariff.removeListener(this);
+            } else {
+                table.tariffChanged(tariff, field);
+            }
+        }
+
+        /**
+         * Stop listening to the tariffs.
+         */
+        void detach() {
+            for (Tariff t : tariffs) {
+                t.removeListener(this);
+            }
+        }
+    }
+}
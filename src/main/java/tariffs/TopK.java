@@ -0,0 +1,185 @@
+package tariffs;
+
+import java.util.Arrays;
+
+/**
+ * A bounded heap which keeps the k smallest ids seen so far in a given
+ * order, e. g. the rows of the smallest keys or the first positions of a
+ * sort. The root of the heap is the largest of the kept ids, so a new id
+ * only has to be compared with it to be rejected.
+ */
+class TopK {
+
+    /** The kept ids, a max-heap in the order. */
+    private final int[] heap;
+
+    /** The order of the ids. */
+    private final Order order;
+
+    /** The number of kept ids. */
+    private int size;
+
+    /**
+     * Instantiates a new bounded heap.
+     *
+     * @param k the number of ids to keep
+     * @param order the order of the ids, which must be total
+     */
+    TopK(int k, Order order) {
+        heap = new int[k];
+        this.order = order;
+    }
+
+    /**
+     * Select the rows of the k smallest keys. Ties are broken by the row
+     * ids, the smaller id being the smaller row.
+     *
+     * @param keys the keys by row, NaN keys are skipped
+     * @param k the number of rows to select
+     * @return the selected rows, ordered by key
+     */
+    static int[] select(double[] keys, int k) {
+        TopK top = new TopK(Math.max(0, Math.min(k, keys.length)),
+                (r1, r2) -> (keys[r1] < keys[r2]) ? -1
+                        : (keys[r1] > keys[r2]) ? 1
+                        : Integer.compare(r1, r2));
+
+        for (int r = 0; r < keys.length; r++) {
+            if (!Double.isNaN(keys[r])) {
+                top.offer(r);
+            }
+        }
+
+        return top.toSortedArray();
+    }
+
+    /**
+     * Offer an id.
+     *
+     * @param id the id
+     */
+    void offer(int id) {
+        if (heap.length == 0) {
+            return;
+        }
+
+        if (size < heap.length) {
+            heap[size] = id;
+            siftUp(size++);
+        } else if (order.compare(id, heap[0]) < 0) {
+            heap[0] = id;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Get the kept ids in the order. The heap is emptied.
+     *
+     * @return the ids, the smallest first
+     */
+    int[] toSortedArray() {
+        int[] result = new int[size];
+
+        for (int i = size - 1; i >= 0; i--) {
+            result[i] = heap[0];
+            heap[0] = heap[--size];
+            siftDown(0);
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the number of kept ids.
+     *
+     * @return the number of kept ids
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Move a heap entry up to its place.
+     *
+     * @param i the entry position
+     */
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+
+            if (order.compare(heap[parent], heap[i]) >= 0) {
+                return;
+            }
+
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    /**
+     * Move a heap entry down to its place.
+     *
+     * @param i the entry position
+     */
+    private void siftDown(int i) {
+        while (true) {
+            int largest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+
+            if ((left < size)
+                    && (order.compare(heap[left], heap[largest]) > 0)) {
+                largest = left;
+            }
+
+            if ((right < size)
+                    && (order.compare(heap[right], heap[largest]) > 0)) {
+                largest = right;
+            }
+
+            if (largest == i) {
+                return;
+            }
+
+            swap(i, largest);
+            i = largest;
+        }
+    }
+
+    /**
+     * Swap two heap entries.
+     *
+     * @param i the first position
+     * @param j the second position
+     */
+    private void swap(int i, int j) {
+        int id = heap[i];
+
+        heap[i] = heap[j];
+        heap[j] = id;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "TopK" + Arrays.toString(Arrays.copyOf(heap, size));
+    }
+
+    /**
+     * A total order of int ids, compared without boxing them.
+     */
+    interface Order {
+
+        /**
+         * Compare two ids.
+         *
+         * @param id1 the first id
+         * @param id2 the second id
+         * @return a negative number, zero or a positive number if the first
+         * id comes before, is the same as or comes after the second
+         */
+        int compare(int id1, int id2);
+    }
+}
@@ -0,0 +1,156 @@
+package tariffs;
+
+/**
+ * A monthly usage profile of a client: the minutes of calls of each kind,
+ * the number of SMS and the MB of data used in a month. Profiles are
+ * immutable and created with {@link Builder}.
+ */
+public class UsageProfile {
+
+    /** The minutes of inner network calls. */
+    private final double innerMinutes;
+
+    /** The minutes of outer network calls. */
+    private final double outerMinutes;
+
+    /** The minutes of landline calls. */
+    private final double landlineMinutes;
+
+    /** The minutes of abroad calls. */
+    private final double abroadMinutes;
+
+    /** The number of SMS. */
+    private final double sms;
+
+    /** The MB of data. */
+    private final double data;
+
+    /**
+     * Instantiates a new usage profile.
+     *
+     * @param b the builder
+     */
+    private UsageProfile(Builder b) {
+        this.innerMinutes = b.innerMinutes;
+        this.outerMinutes = b.outerMinutes;
+        this.landlineMinutes = b.landlineMinutes;
+        this.abroadMinutes = b.abroadMinutes;
+        this.sms = b.sms;
+        this.data = b.data;
+    }
+
+    /**
+     * Gets the minutes of inner network calls.
+     *
+     * @return the minutes of inner network calls
+     */
+    public double getInnerMinutes() {
+        return innerMinutes;
+    }
+
+    /**
+     * Gets the minutes of outer network calls.
+     *
+     * @return the minutes of outer network calls
+     */
+    public double getOuterMinutes() {
+        return outerMinutes;
+    }
+
+    /**
+     * Gets the minutes of landline calls.
+     *
+     * @return the minutes of landline calls
+     */
+    public double getLandlineMinutes() {
+        return landlineMinutes;
+    }
+
+    /**
+     * Gets the minutes of abroad calls.
+     *
+     * @return the minutes of abroad calls
+     */
+    public double getAbroadMinutes() {
+        return abroadMinutes;
+    }
+
+    /**
+     * Gets the number of SMS.
+     *
+     * @return the number of SMS
+     */
+    public double getSms() {
+        return sms;
+    }
+
+    /**
+     * Gets the MB of data.
+     *
+     * @return the MB of data
+     */
+    public double getData() {
+        return data;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "Usage [inner: " + innerMinutes + " min, outer: "
+                + outerMinutes + " min, landline: " + landlineMinutes
+                + " min, abroad: " + abroadMinutes + " min, sms: " + sms
+                + ", data: " + data + " MB]";
+    }
+
+    /**
+     * A builder class for usage profiles. All quantities are zero unless
+     * set.
+     */
+    public static class Builder {
+
+        private double innerMinutes;
+        private double outerMinutes;
+        private double landlineMinutes;
+        private double abroadMinutes;
+        private double sms;
+        private double data;
+
+        public Builder() {}
+
+        public Builder innerMinutes(double innerMinutes) {
+            this.innerMinutes = innerMinutes;
+            return this;
+        }
+
+        public Builder outerMinutes(double outerMinutes) {
+            this.outerMinutes = outerMinutes;
+            return this;
+        }
+
+        public Builder landlineMinutes(double landlineMinutes) {
+            this.landlineMinutes = landlineMinutes;
+            return this;
+        }
+
+        public Builder abroadMinutes(double abroadMinutes) {
+            this.abroadMinutes = abroadMinutes;
+            return this;
+        }
+
+        public Builder sms(double sms) {
+            this.sms = sms;
+            return this;
+        }
+
+        public Builder data(double data) {
+            this.data = data;
+            return this;
+        }
+
+        public UsageProfile build() {
+            return new UsageProfile(this);
+        }
+    }
+}
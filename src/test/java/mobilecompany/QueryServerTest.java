@@ -0,0 +1,250 @@
+package mobilecompany;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the query server and of the executors of its sessions.
+ */
+public class QueryServerTest {
+
+    /** The prompt of a session. */
+    private static final String PROMPT = ">> ";
+
+    /** The time in milliseconds a client waits for the server. */
+    private static final int CLIENT_TIMEOUT = 10000;
+
+    /** The idle timeout of the sessions in milliseconds. */
+    private static final int IDLE_TIMEOUT = 300;
+
+    /** The server under test. */
+    private QueryServer server;
+
+    /**
+     * Start a server on the demo data.
+     *
+     * @throws IOException if the server cannot start
+     */
+    @Before
+    public void setUp() throws IOException {
+        MobileCompany company = new MobileCompany("Test");
+
+        company.setTariffsFile("data/tariffs.txt");
+        company.setClientsFile("data/clients.txt");
+        company.load();
+        server = new QueryServer(company, 0, IDLE_TIMEOUT);
+        server.start();
+    }
+
+    /**
+     * Stop the server.
+     *
+     * @throws IOException if the server cannot be closed
+     */
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    /**
+     * A session answers commands and ends with 'exit'.
+     *
+     * @throws IOException if the connection fails
+     */
+    @Test
+    public void sessionRunsCommands() throws IOException {
+        try (Socket s = connect()) {
+            Reader in = reader(s);
+            Writer out = writer(s);
+
+            assertTrue(readPrompt(in).contains("Number of tariffs: "));
+            send(out, "ls all");
+            assertTrue(readPrompt(in).contains("(id: 1)"));
+            send(out, "exit");
+            assertEquals(-1, in.read());
+        }
+    }
+
+    /**
+     * A command line longer than the limit is skipped and the session goes
+     * on.
+     *
+     * @throws IOException if the connection fails
+     */
+    @Test
+    public void longLineIsSkipped() throws IOException {
+        StringBuilder line = new StringBuilder();
+
+        while (line.length() <= 10 * ConsoleSession.MAX_LINE_LENGTH) {
+            line.append("ls all ");
+        }
+
+        try (Socket s = connect()) {
+            Reader in = reader(s);
+            Writer out = writer(s);
+
+            readPrompt(in);
+            send(out, line.toString());
+            assertTrue(readPrompt(in).contains(
+                    "The command line is too long"));
+            send(out, "clear");
+            readPrompt(in);
+        }
+    }
+
+    /**
+     * A session sending no command for the idle timeout is closed.
+     *
+     * @throws IOException if the connection fails
+     */
+    @Test
+    public void idleSessionIsClosed() throws IOException {
+        try (Socket s = connect()) {
+            Reader in = reader(s);
+
+            readPrompt(in);
+            assertEquals(-1, in.read());
+        }
+    }
+
+    /**
+     * The fallback executor runs the sessions on daemon threads.
+     *
+     * @throws Exception if the task fails
+     */
+    @Test
+    public void daemonPoolRunsTasks() throws Exception {
+        ExecutorService pool = QueryServer.newDaemonPool("test-");
+
+        try {
+            Thread t = pool.submit(Thread::currentThread).get();
+
+            assertTrue(t.isDaemon());
+            assertTrue(t.getName().startsWith("test-"));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * The session executor runs the sessions on virtual threads if the JVM
+     * has them; the test is skipped before Java 21.
+     *
+     * @throws Exception if the task fails
+     */
+    @Test
+    public void sessionExecutorUsesVirtualThreads() throws Exception {
+        Method isVirtual;
+
+        try {
+            isVirtual = Thread.class.getMethod("isVirtual");
+        } catch (NoSuchMethodException e) {
+            isVirtual = null;
+        }
+
+        Assume.assumeTrue(isVirtual != null);
+
+        ExecutorService sessions = QueryServer.newSessionExecutor("test-");
+
+        try {
+            Future<Thread> f = sessions.submit(Thread::currentThread);
+
+            assertEquals(Boolean.TRUE,
+                    isVirtual.invoke(f.get(CLIENT_TIMEOUT,
+                            TimeUnit.MILLISECONDS)));
+        } finally {
+            sessions.shutdown();
+        }
+    }
+
+    /**
+     * Connect to the server.
+     *
+     * @return the socket
+     * @throws IOException if the connection fails
+     */
+    private Socket connect() throws IOException {
+        Socket s = new Socket(InetAddress.getLoopbackAddress(),
+                server.getPort());
+
+        s.setSoTimeout(CLIENT_TIMEOUT);
+        return s;
+    }
+
+    /**
+     * Gets the reader of a connection.
+     *
+     * @param s the socket
+     * @return the reader
+     * @throws IOException if the connection fails
+     */
+    private static Reader reader(Socket s) throws IOException {
+        return new InputStreamReader(s.getInputStream(),
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the writer of a connection.
+     *
+     * @param s the socket
+     * @return the writer
+     * @throws IOException if the connection fails
+     */
+    private static Writer writer(Socket s) throws IOException {
+        return new OutputStreamWriter(s.getOutputStream(),
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Send a command line.
+     *
+     * @param out the writer of the connection
+     * @param line the command line
+     * @throws IOException if the connection fails
+     */
+    private static void send(Writer out, String line) throws IOException {
+        out.write(line + "\n");
+        out.flush();
+    }
+
+    /**
+     * Read the output up to the next prompt.
+     *
+     * @param in the reader of the connection
+     * @return the output before the prompt
+     * @throws IOException if the connection fails or ends before a prompt
+     */
+    private static String readPrompt(Reader in) throws IOException {
+        StringBuilder text = new StringBuilder();
+
+        while (text.indexOf(PROMPT, Math.max(0,
+                text.length() - PROMPT.length())) < 0) {
+            int c = in.read();
+
+            if (c < 0) {
+                throw new IOException("The session ended: " + text);
+            }
+            text.append((char) c);
+        }
+
+        return text.substring(0, text.length() - PROMPT.length());
+    }
+}
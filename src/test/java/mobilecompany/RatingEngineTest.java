@@ -0,0 +1,200 @@
+package mobilecompany;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import tariffs.ContractTariff;
+import tariffs.PrepaidTariff;
+import tariffs.Tariff;
+import tariffs.TariffTable;
+
+/**
+ * Tests of the rules of the rating engine: the monthly packages, the free
+ * daily minutes, the start of a new month and the activation fee.
+ */
+public class RatingEngineTest {
+
+    /** The tolerance of the charges compared. */
+    private static final double DELTA = 1e-9;
+
+    /** The id of the client on the generic tariff. */
+    private static final int GENERIC = 1;
+
+    /** The id of the client on the prepaid tariff. */
+    private static final int PREPAID = 2;
+
+    /** The id of the client on the contract tariff. */
+    private static final int CONTRACT = 3;
+
+    /** The engine under test. */
+    private RatingEngine engine;
+
+    /**
+     * Make an engine with one client on each of a generic, a prepaid and a
+     * contract tariff.
+     */
+    @Before
+    public void setUp() {
+        Tariff generic = new Tariff.Builder<>().id(10).name("Generic")
+                .innerCalls(1).outerCalls(2).landlines(3).sms(0.5)
+                .internet(0.1).smsPackage(10).dataPackage(100).build();
+        Tariff prepaid = new PrepaidTariff.Builder().id(20).name("Prepaid")
+                .innerCalls(1).sms(1).activation(5).build();
+        Tariff contract = new ContractTariff.Builder().id(30)
+                .name("Contract").innerCalls(1).outerCalls(2).landlines(3)
+                .abroadCalls(4).dailyMinutes(10).build();
+
+        engine = new RatingEngine(new TariffTable(
+                Arrays.asList(generic, prepaid, contract)));
+        assertTrue(engine.setClient(GENERIC, 10));
+        assertTrue(engine.setClient(PREPAID, 20));
+        assertTrue(engine.setClient(CONTRACT, 30));
+    }
+
+    /**
+     * The SMS and data of the monthly packages are free and the rest is
+     * charged, including the part of an event beyond the package.
+     */
+    @Test
+    public void packagesAreFreeThenCharged() {
+        long t = at(2024, 3, 10, 12);
+
+        assertEquals(0, engine.rate(GENERIC, RatingEngine.SMS, 8, t), DELTA);
+        assertEquals(1, engine.rate(GENERIC, RatingEngine.SMS, 4, t), DELTA);
+        assertEquals(1.5, engine.rate(GENERIC, RatingEngine.SMS, 3, t),
+                DELTA);
+        assertEquals(0, engine.rate(GENERIC, RatingEngine.DATA, 100, t),
+                DELTA);
+        assertEquals(5, engine.rate(GENERIC, RatingEngine.DATA, 50, t),
+                DELTA);
+        assertEquals(7.5, engine.getCharge(GENERIC), DELTA);
+    }
+
+    /**
+     * The daily minutes are shared by all domestic calls and renewed every
+     * day; abroad calls are always charged.
+     */
+    @Test
+    public void dailyMinutesAreFreeEachDay() {
+        long day = at(2024, 3, 10, 9);
+
+        assertEquals(0, engine.rate(CONTRACT, RatingEngine.INNER_CALL, 6,
+                day), DELTA);
+        assertEquals(4, engine.rate(CONTRACT, RatingEngine.OUTER_CALL, 6,
+                day), DELTA);
+        assertEquals(3, engine.rate(CONTRACT, RatingEngine.LANDLINE_CALL, 1,
+                day + 60000), DELTA);
+        assertEquals(8, engine.rate(CONTRACT, RatingEngine.ABROAD_CALL, 2,
+                day), DELTA);
+
+        long nextDay = at(2024, 3, 11, 0);
+
+        assertEquals(0, engine.rate(CONTRACT, RatingEngine.LANDLINE_CALL, 10,
+                nextDay), DELTA);
+        assertEquals(1, engine.rate(CONTRACT, RatingEngine.INNER_CALL, 1,
+                nextDay), DELTA);
+
+        // a tariff without daily minutes charges every minute
+        assertEquals(2, engine.rate(GENERIC, RatingEngine.INNER_CALL, 2,
+                day), DELTA);
+    }
+
+    /**
+     * The packages are renewed when a new calendar month starts in UTC,
+     * and a late event is counted in the current month.
+     */
+    @Test
+    public void packagesAreRenewedMonthly() {
+        assertEquals(0, engine.rate(GENERIC, RatingEngine.SMS, 10,
+                at(2024, 1, 31, 23)), DELTA);
+        assertEquals(0.5, engine.rate(GENERIC, RatingEngine.SMS, 1,
+                at(2024, 1, 31, 23)), DELTA);
+        assertEquals(0, engine.rate(GENERIC, RatingEngine.SMS, 10,
+                at(2024, 2, 1, 0)), DELTA);
+        assertEquals(0.5, engine.rate(GENERIC, RatingEngine.SMS, 1,
+                at(2024, 1, 31, 22)), DELTA);
+        assertEquals(0, engine.rate(GENERIC, RatingEngine.SMS, 10,
+                at(2025, 2, 1, 0)), DELTA);
+    }
+
+    /**
+     * The activation fee of a prepaid tariff is charged with the first
+     * rated event only, and not with a rejected one.
+     */
+    @Test
+    public void activationIsChargedOnce() {
+        long t = at(2024, 3, 10, 12);
+
+        assertTrue(Double.isNaN(engine.rate(PREPAID,
+                RatingEngine.ABROAD_CALL, 1, t)));
+        assertEquals(6, engine.rate(PREPAID, RatingEngine.SMS, 1, t), DELTA);
+        assertEquals(1, engine.rate(PREPAID, RatingEngine.SMS, 1, t), DELTA);
+        assertEquals(2, engine.rate(PREPAID, RatingEngine.INNER_CALL, 2,
+                at(2024, 4, 1, 0)), DELTA);
+        assertEquals(9, engine.getCharge(PREPAID), DELTA);
+    }
+
+    /**
+     * Events of unknown clients or types and events with a negative, NaN
+     * or infinite quantity are rejected and change no charge.
+     */
+    @Test
+    public void invalidEventsAreRejected() {
+        long t = at(2024, 3, 10, 12);
+        double[] quantities = {
+            -1, Double.NaN, Double.POSITIVE_INFINITY,
+            Double.NEGATIVE_INFINITY
+        };
+
+        for (double q : quantities) {
+            assertTrue(Double.isNaN(engine.rate(GENERIC, RatingEngine.DATA,
+                    q, t)));
+        }
+
+        assertTrue(Double.isNaN(engine.rate(99, RatingEngine.SMS, 1, t)));
+        assertTrue(Double.isNaN(engine.rate(GENERIC, -1, 1, t)));
+        assertTrue(Double.isNaN(engine.rate(GENERIC, 6, 1, t)));
+        assertEquals(7, engine.getRejectedEvents());
+        assertEquals(0, engine.getRatedEvents());
+        assertEquals(0, engine.getCharge(GENERIC), DELTA);
+        assertEquals(0, engine.rate(GENERIC, RatingEngine.DATA, 1, t), DELTA);
+    }
+
+    /**
+     * The months of the days agree with the calendar of {@code java.time}.
+     */
+    @Test
+    public void monthsMatchCalendar() {
+        LocalDate start = LocalDate.of(1600, 1, 1);
+
+        for (long day = start.toEpochDay(); day < 200000; day += 7) {
+            LocalDate date = LocalDate.ofEpochDay(day);
+
+            assertEquals(date.toString(),
+                    date.getYear() * 12 + date.getMonthValue() - 1,
+                    RatingEngine.monthOf(day));
+        }
+    }
+
+    /**
+     * Get the time of an hour in UTC.
+     *
+     * @param year the year
+     * @param month the month, from 1
+     * @param day the day of the month
+     * @param hour the hour
+     * @return the time in milliseconds since the epoch
+     */
+    private static long at(int year, int month, int day, int hour) {
+        return LocalDateTime.of(year, month, day, hour, 0)
+                .toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+}
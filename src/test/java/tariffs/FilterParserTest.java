@@ -0,0 +1,350 @@
+package tariffs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the filter parser and of the filters compiled from its
+ * expressions, checked against predicates on the tariff objects.
+ */
+public class FilterParserTest {
+
+    /** The number of random expressions checked. */
+    private static final int EXPRESSIONS = 3000;
+
+    /** The number of tariffs of the table. */
+    private static final int TARIFFS = 500;
+
+    /** The deepest nesting of the random expressions. */
+    private static final int MAX_DEPTH = 4;
+
+    /** The fields compared by the random expressions. */
+    private static final String[] FIELDS = {
+        "monthly", "sms", "smsPackage", "dataPackage", "activation",
+        "dailyMinutes", "innerCalls", "internet", "abroadCalls"
+    };
+
+    /** The comparison operators. */
+    private static final String[] OPERATORS = {
+        "<", "<=", ">", ">=", "=", "!="
+    };
+
+    /** The type names, by type. */
+    private static final String[] TYPES = {"generic", "prepaid", "contract"};
+
+    /** The random numbers, seeded so that a failure can be repeated. */
+    private final Random random = new Random(7);
+
+    /** The table of the tariffs. */
+    private TariffTable table;
+
+    /** The parser under test. */
+    private final FilterParser parser = new FilterParser();
+
+    /**
+     * Make a table of random tariffs of all types.
+     */
+    @Before
+    public void setUp() {
+        List<Tariff> tariffs = new ArrayList<>();
+
+        for (int id = 0; id < TARIFFS; id++) {
+            switch (random.nextInt(3)) {
+            case 0:
+                tariffs.add(fill(new Tariff.Builder<>(), id).build());
+                break;
+            case 1:
+                tariffs.add(fill(new PrepaidTariff.Builder(), id)
+                        .activation(random.nextInt(5) / 2.0).build());
+                break;
+            default:
+                tariffs.add(fill(new ContractTariff.Builder(), id)
+                        .abroadCalls(random.nextInt(5) / 2.0)
+                        .dailyMinutes(random.nextInt(5)).build());
+            }
+        }
+
+        table = new TariffTable(tariffs);
+    }
+
+    /**
+     * Set the common fields of a tariff to random values.
+     *
+     * @param <T> the type of the builder
+     * @param b the builder
+     * @param id the tariff id
+     * @return the builder
+     */
+    private <T extends Tariff.Builder<?>> T fill(T b, int id) {
+        b.id(id).name("Tariff " + id).monthly(random.nextInt(60))
+                .innerCalls(random.nextInt(5) / 2.0)
+                .outerCalls(random.nextInt(5) / 2.0)
+                .landlines(random.nextInt(5) / 2.0)
+                .sms(random.nextInt(5) / 2.0)
+                .internet(random.nextInt(5) / 2.0)
+                .smsPackage(random.nextInt(2000))
+                .dataPackage(random.nextInt(2000));
+        return b;
+    }
+
+    /**
+     * The filters of random expressions select the same rows as the
+     * predicates the expressions stand for, from all rows and from a part
+     * of them.
+     *
+     * @throws ParseException if an expression is not valid
+     */
+    @Test
+    public void randomExpressionsMatchPredicates() throws ParseException {
+        for (int i = 0; i < EXPRESSIONS; i++) {
+            List<Predicate<Tariff>> predicates = new ArrayList<>();
+            String expression = generate(0, predicates);
+            TariffFilter filter = TariffFilter.compile(
+                    parser.parse(expression), table);
+            int[] expected = matching(predicates.get(0));
+
+            assertArrayEquals(expression, expected,
+                    filter.select().toArray());
+
+            int[] half = new int[expected.length / 2];
+
+            System.arraycopy(expected, 0, half, 0, half.length);
+            assertArrayEquals(expression, half,
+                    filter.select(RowBitmap.of(half)).toArray());
+        }
+    }
+
+    /**
+     * Field names, type names and keywords are case-insensitive.
+     *
+     * @throws ParseException if an expression is not valid
+     */
+    @Test
+    public void namesAreCaseInsensitive() throws ParseException {
+        assertSame("type = contract and monthly < 30",
+                "Type = Contract AND MONTHLY < 30");
+        assertSame("smsPackage >= 100 or dailyMinutes > 1",
+                "smspackage >= 100 Or DailyMinutes > 1");
+    }
+
+    /**
+     * Numbers may have exponents.
+     *
+     * @throws ParseException if an expression is not valid
+     */
+    @Test
+    public void numbersMayHaveExponents() throws ParseException {
+        assertSame("smsPackage >= 1000", "smsPackage >= 1e3");
+        assertSame("smsPackage < 1500", "smsPackage < 1.5E+3");
+        assertSame("sms <= 0.5", "sms <= 5e-1");
+        assertEquals(1000.0, ((FilterExpression.Comparison) parser
+                .parse("monthly > 1e3")).getValue(), 0);
+    }
+
+    /**
+     * Invalid expressions are rejected.
+     */
+    @Test
+    public void invalidExpressionsAreRejected() {
+        String[] invalid = {
+            "", "monthly <", "foo < 3", "monthly < 3 and", "(monthly < 3",
+            "type = x", "type < prepaid", "monthly < 3 xor sms > 1",
+            "monthly < 1e", "monthly < e3", "monthly < 1e3e3"
+        };
+
+        for (String expression : invalid) {
+            try {
+                parser.parse(expression);
+                fail("Parsed '" + expression + "'");
+            } catch (ParseException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Check that two expressions select the same rows.
+     *
+     * @param expected the reference expression
+     * @param actual the expression checked
+     * @throws ParseException if an expression is not valid
+     */
+    private void assertSame(String expected, String actual)
+            throws ParseException {
+        assertArrayEquals(actual,
+                TariffFilter.compile(parser.parse(expected), table).select()
+                        .toArray(),
+                TariffFilter.compile(parser.parse(actual), table).select()
+                        .toArray());
+    }
+
+    /**
+     * Get the rows of the tariffs matching a predicate.
+     *
+     * @param predicate the predicate
+     * @return the rows in ascending order
+     */
+    private int[] matching(Predicate<Tariff> predicate) {
+        return table.select(predicate, table.allRows());
+    }
+
+    /**
+     * Generate a random expression and the predicates it stands for.
+     *
+     * @param depth the nesting depth of the expression
+     * @param predicates the list receiving the predicate of the expression
+     * and then the predicate of its negation
+     * @return the expression
+     */
+    private String generate(int depth, List<Predicate<Tariff>> predicates) {
+        int kind = random.nextInt((depth < MAX_DEPTH) ? 5 : 2);
+
+        if (kind >= 3) {
+            return junction(depth, kind == 3, predicates);
+        }
+
+        if (kind == 2) {
+            List<Predicate<Tariff>> negated = new ArrayList<>();
+            String expression = "not " + generate(depth + 1, negated);
+
+            predicates.add(negated.get(1));
+            predicates.add(negated.get(0));
+            return expression;
+        }
+
+        return (random.nextInt(5) == 0) ? typeTest(predicates)
+                : comparison(predicates);
+    }
+
+    /**
+     * Generate a random conjunction or disjunction.
+     *
+     * @param depth the nesting depth of the expression
+     * @param and true for a conjunction, false for a disjunction
+     * @param predicates the list receiving the predicate of the expression
+     * and then the predicate of its negation
+     * @return the expression
+     */
+    private String junction(int depth, boolean and,
+            List<Predicate<Tariff>> predicates) {
+        int n = 2 + random.nextInt(2);
+        StringBuilder expression = new StringBuilder("(");
+        Predicate<Tariff> positive = null;
+        Predicate<Tariff> negative = null;
+
+        for (int i = 0; i < n; i++) {
+            List<Predicate<Tariff>> operand = new ArrayList<>();
+
+            if (i > 0) {
+                expression.append(and ? " and " : " or ");
+            }
+            expression.append(generate(depth + 1, operand));
+
+            if (i == 0) {
+                positive = operand.get(0);
+                negative = operand.get(1);
+            } else if (and) {
+                positive = positive.and(operand.get(0));
+                negative = negative.or(operand.get(1));
+            } else {
+                positive = positive.or(operand.get(0));
+                negative = negative.and(operand.get(1));
+            }
+        }
+
+        predicates.add(positive);
+        predicates.add(negative);
+        return expression.append(')').toString();
+    }
+
+    /**
+     * Generate a random type test.
+     *
+     * @param predicates the list receiving the predicate of the expression
+     * and then the predicate of its negation
+     * @return the expression
+     */
+    private String typeTest(List<Predicate<Tariff>> predicates) {
+        int type = random.nextInt(TYPES.length);
+        boolean not = random.nextBoolean();
+        Predicate<Tariff> test = t -> (typeOf(t) == type) != not;
+
+        predicates.add(test);
+        predicates.add(test.negate());
+        return "type " + (not ? "!=" : "=") + " " + TYPES[type];
+    }
+
+    /**
+     * Generate a random comparison. Neither the comparison nor its negation
+     * match the tariffs without the field.
+     *
+     * @param predicates the list receiving the predicate of the expression
+     * and then the predicate of its negation
+     * @return the expression
+     */
+    private String comparison(List<Predicate<Tariff>> predicates) {
+        String field = FIELDS[random.nextInt(FIELDS.length)];
+        String op = OPERATORS[random.nextInt(OPERATORS.length)];
+        ToDoubleFunction<Tariff> accessor = TariffAccessors.get(field);
+        double value = field.equals("monthly") ? random.nextInt(60)
+                : field.endsWith("Package") ? random.nextInt(2000)
+                        : random.nextInt(5) / 2.0;
+        Predicate<Tariff> has = t -> !Double.isNaN(accessor.applyAsDouble(t));
+        Predicate<Tariff> test = has.and(t -> compare(
+                accessor.applyAsDouble(t), op, value));
+
+        predicates.add(test);
+        predicates.add(has.and(test.negate()));
+        return field + " " + op + " " + value;
+    }
+
+    /**
+     * Compare two values.
+     *
+     * @param a the left value
+     * @param op the operator
+     * @param b the right value
+     * @return the result of the comparison
+     */
+    private static boolean compare(double a, String op, double b) {
+        switch (op) {
+        case "<":
+            return a < b;
+        case "<=":
+            return a <= b;
+        case ">":
+            return a > b;
+        case ">=":
+            return a >= b;
+        case "=":
+            return a == b;
+        default:
+            return a != b;
+        }
+    }
+
+    /**
+     * Get the type of a tariff, an index of {@link #TYPES}.
+     *
+     * @param t the tariff
+     * @return the type
+     */
+    private static int typeOf(Tariff t) {
+        if (t instanceof PrepaidTariff) {
+            return 1;
+        }
+
+        return (t instanceof ContractTariff) ? 2 : 0;
+    }
+}